@@ -4,6 +4,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 public class ClJAnnotations {
     /**
@@ -72,6 +73,11 @@ public class ClJAnnotations {
      * argument types would itself become unwieldy.  That is the use-case this annotation
      * is intended to address.</p>
      *
+     * <p>If a {@link java.nio.ByteBuffer} or {@link com.bradsdeals.clj.wrappers.MappedFile} is passed
+     * to a parameter whose Pt types do not accept it, but do accept an InputStream or Reader, ClJ
+     * passes Clojure a stream or reader that reads the buffer in place.  This lets Clojure functions
+     * consume direct or memory-mapped buffers without copying them onto the heap.</p>
+     *
      * <p>E.g.:</p>
      *
      * <code>
@@ -97,4 +103,123 @@ public class ClJAnnotations {
         public Class<?>[] value() default {};
     }
 
+    /**
+     * <p>Cache the results of a method in a Clojure interface.  Use this for pure functions
+     * (lookups, rule tables) that are called repeatedly with the same arguments.  Unlike
+     * <code>clojure.core/memoize</code>, the cache is bounded: once it holds maxSize entries
+     * (or maxWeight total weight) the least recently used entries are evicted.</p>
+     *
+     * <p>Arguments are compared with {@link java.util.Arrays#deepEquals(Object[], Object[])}, so
+     * array arguments are compared by content.  Calls that throw are not cached, and cached results
+     * are discarded when the function's namespace is reloaded with {@link IClJ#reload(String...)}.
+     * Array arguments and results, and mutable List, Set and Map ones, are copied in and out of
+     * the cache, so callers may change them.  Other mutable results are shared between callers,
+     * so they must not be mutated.  Hit, miss and eviction counts are available from
+     * {@link IClJMetrics#memoStats()}.</p>
+     *
+     * <p>E.g.:</p>
+     *
+     * <code>
+     *   \@Require({"com.example.tax :as tax"})
+     *   interface TaxRules {
+     *       \@Ns("tax") \@Memoize(maxSize=10000, ttlMillis=60000)
+     *       BigDecimal rate(String region, String category);
+     *   }
+     * </code>
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public @interface Memoize {
+        /**
+         * @return The maximum number of cached results.
+         */
+        public int maxSize() default 1000;
+
+        /**
+         * @return How long a result stays cached, in milliseconds, or 0 to cache until evicted.
+         */
+        public long ttlMillis() default 0;
+
+        /**
+         * @return The maximum total weight of the cached results, or 0 to bound by maxSize only.
+         */
+        public long maxWeight() default 0;
+
+        /**
+         * @return The {@link Weigher} used with maxWeight.  It must have a public no-argument
+         *         constructor.  The default weighs every entry as 1.
+         */
+        public Class<? extends Weigher> weigher() default Weigher.class;
+    }
+
+    /**
+     * <p>Limit how long a call to a method in a Clojure interface may take.  If the Clojure function
+     * has not returned within the timeout, the call throws {@link ClJTimeoutException} and the
+     * thread running the function is interrupted.  See
+     * {@link IClojure#invokeWithTimeout(long, java.util.concurrent.TimeUnit, Object, Object...)}.</p>
+     *
+     * <p>E.g.:</p>
+     *
+     * <code>
+     *   \@Require({"com.example.pricing :as pricing"})
+     *   interface Pricing {
+     *       \@Ns("pricing") \@Timeout(250)
+     *       BigDecimal quote(String sku);
+     *   }
+     * </code>
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public @interface Timeout {
+        /**
+         * @return The timeout.
+         */
+        public long value();
+
+        /**
+         * @return The timeout's unit.
+         */
+        public TimeUnit unit() default TimeUnit.MILLISECONDS;
+    }
+
+    /**
+     * <p>Declare the ex-info error types a method in a Clojure interface signals as part of its
+     * normal operation, e.g.: validation rejections.  When the Clojure function throws
+     * <code>ex-info</code> whose ex-data <code>:type</code> is one of these, the resulting
+     * {@link ClJException} is created without capturing a stack trace.  Types are written without
+     * the leading colon.  Other errors are reported with full stack traces.</p>
+     *
+     * <p>E.g.:</p>
+     *
+     * <code>
+     *   \@Require({"com.example.orders :as orders"})
+     *   interface Orders {
+     *       \@Ns("orders") \@ExpectedErrors({"validation/rejected", "inventory/sold-out"})
+     *       Receipt place(Order order);
+     *   }
+     * </code>
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public @interface ExpectedErrors {
+        /**
+         * @return The expected error types, e.g.: "validation/rejected".
+         */
+        public String[] value();
+    }
+
+    /**
+     * Computes the weight of a {@link Memoize} cache entry, e.g.: its approximate size in bytes.
+     */
+    public interface Weigher {
+        /**
+         * Return the weight of a cache entry.
+         *
+         * @param args The arguments the function was called with.
+         * @param result The function's result.
+         * @return The entry's weight; must not be negative.
+         */
+        long weigh(Object[] args, Object result);
+    }
+
 }
@@ -0,0 +1,470 @@
+package com.bradsdeals.clj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A classloader for private Clojure runtimes that indexes every class and resource name on its
+ * classpath once, when it is constructed.<p>
+ *
+ * Loading a Clojure namespace probes several names (<code>ns__init.class</code>, <code>ns.clj</code>,
+ * <code>ns.cljc</code>), and a {@link java.net.URLClassLoader} answers each probe by searching every
+ * jar in turn.  This classloader answers from a hash index instead, so each probe costs one lookup
+ * regardless of how many jars there are, and it remembers the names its parent failed to find so
+ * the parent is only asked once per name.<p>
+ *
+ * The classpath may contain jars and directories.  Jars nested inside a jar are extracted to a
+ * temporary directory and indexed too: those named in the outer jar's <code>Bundle-ClassPath</code>
+ * manifest header if it has one, otherwise every nested <code>.jar</code> entry.  Directories are
+ * indexed when the loader is created, so files added to them later are not seen.<p>
+ *
+ * Like any parent-first classloader, names the parent can load are loaded by the parent; Clojure
+ * and the ClJ runtime must therefore not be visible to the parent.  Call {@link #close()} when the
+ * runtime is closed to release the jars and delete extracted nested jars.
+ *
+ * @see ClJLoader#clj(File...)
+ */
+public class ClJClassLoader extends ClassLoader implements Closeable {
+    static {
+        registerAsParallelCapable();
+    }
+
+    /*
+     * Extraction directories not yet deleted by close().  File.deleteOnExit never forgets a
+     * registration, so every loader ever created would leave its files in that list; these are
+     * forgotten again on close.
+     */
+    private static final Set<File> openExtractions = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private static final AtomicBoolean cleanupRegistered = new AtomicBoolean();
+
+    private final List<Root> roots = new ArrayList<Root>();
+    private final Map<String, Location> index = new HashMap<String, Location>();
+    private final Set<String> parentMisses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger definedClasses = new AtomicInteger();
+    private File extractedJars;
+
+    /**
+     * Construct a ClJClassLoader and index its classpath.
+     *
+     * @param parent The parent classloader.  It should see the ClJ API but not Clojure or the ClJ runtime.
+     * @param classpath The jars and directories to load from, in classpath order.
+     * @throws IOException if a jar cannot be read.  Jars opened so far are closed first.
+     */
+    public ClJClassLoader(ClassLoader parent, File... classpath) throws IOException {
+        super(parent);
+        boolean indexed = false;
+        try {
+            for (File entry : classpath) {
+                if (entry.isDirectory()) {
+                    addDirectory(entry);
+                } else {
+                    addJar(entry, true);
+                }
+            }
+            indexed = true;
+        } finally {
+            if (!indexed) {
+                closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Return the number of distinct class and resource names in the index.
+     * @return the number of indexed names.
+     */
+    public int indexedNames() {
+        return index.size();
+    }
+
+    /**
+     * Return the number of classes this classloader has defined.
+     * @return the number of defined classes.
+     */
+    public int definedClasses() {
+        return definedClasses.get();
+    }
+
+    /*
+     * Indexing
+     */
+
+    private void addDirectory(File directory) throws MalformedURLException {
+        Root root = new Root(directory, null);
+        roots.add(root);
+        indexDirectory(root, directory, "");
+    }
+
+    private void indexDirectory(Root root, File directory, String prefix) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                add(name + "/", root);
+                indexDirectory(root, file, name + "/");
+            } else {
+                add(name, root);
+            }
+        }
+    }
+
+    private void addJar(File file, boolean outer) throws IOException {
+        JarFile jar = new JarFile(file);
+        Root root = new Root(file, jar);
+        roots.add(root);
+        List<String> nestedJars = new ArrayList<String>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            add(name, root);
+            if (outer && name.endsWith(".jar")) {
+                nestedJars.add(name);
+            }
+        }
+        if (outer && !nestedJars.isEmpty()) {
+            List<String> bundleClassPath = bundleClassPath(jar);
+            for (String nestedJar : bundleClassPath != null ? bundleClassPath : nestedJars) {
+                JarEntry entry = jar.getJarEntry(nestedJar);
+                if (entry != null) {
+                    addJar(extract(jar, entry), false);
+                }
+            }
+        }
+    }
+
+    private static List<String> bundleClassPath(JarFile jar) throws IOException {
+        Manifest manifest = jar.getManifest();
+        String header = manifest == null ? null : manifest.getMainAttributes().getValue("Bundle-ClassPath");
+        if (header == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        for (String entry : header.split(",")) {
+            entry = entry.trim();
+            if (entry.endsWith(".jar")) {
+                result.add(entry.startsWith("/") ? entry.substring(1) : entry);
+            }
+        }
+        return result;
+    }
+
+    private File extract(JarFile jar, JarEntry entry) throws IOException {
+        if (extractedJars == null) {
+            extractedJars = File.createTempFile("clj-classpath", "");
+            extractedJars.delete();
+            extractedJars.mkdirs();
+            deleteOnExit(extractedJars);
+        }
+        File target = new File(extractedJars, roots.size() + "-" + new File(entry.getName()).getName());
+        InputStream in = jar.getInputStream(entry);
+        try {
+            OutputStream out = new FileOutputStream(target);
+            try {
+                copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        return target;
+    }
+
+    /*
+     * The first root to contain a name wins, as on any classpath; later ones are kept for getResources.
+     */
+    private void add(String name, Root root) {
+        Location first = index.get(name);
+        if (first == null) {
+            index.put(name, new Location(root));
+        } else {
+            Location last = first;
+            while (last.next != null) {
+                last = last.next;
+            }
+            last.next = new Location(root);
+        }
+    }
+
+    /*
+     * ClassLoader
+     */
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> result = findLoadedClass(name);
+            if (result == null && !parentMisses.contains(name)) {
+                try {
+                    result = getParent().loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    parentMisses.add(name);
+                }
+            }
+            if (result == null) {
+                result = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(result);
+            }
+            return result;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        Location location = index.get(path);
+        if (location == null) {
+            throw new ClassNotFoundException(name);
+        }
+        try {
+            byte[] bytes = location.root.read(path);
+            definePackageFor(name, location.root);
+            Class<?> result = defineClass(name, bytes, 0, bytes.length, location.root.protectionDomain(this));
+            definedClasses.incrementAndGet();
+            return result;
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private void definePackageFor(String className, Root root) throws IOException {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot < 0) {
+            return;
+        }
+        String packageName = className.substring(0, lastDot);
+        if (getDefinedPackage(packageName) != null) {
+            return;
+        }
+        Manifest manifest = root.jar == null ? null : root.jar.getManifest();
+        try {
+            if (manifest == null) {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            } else {
+                Attributes main = manifest.getMainAttributes();
+                definePackage(packageName,
+                        main.getValue(Attributes.Name.SPECIFICATION_TITLE),
+                        main.getValue(Attributes.Name.SPECIFICATION_VERSION),
+                        main.getValue(Attributes.Name.SPECIFICATION_VENDOR),
+                        main.getValue(Attributes.Name.IMPLEMENTATION_TITLE),
+                        main.getValue(Attributes.Name.IMPLEMENTATION_VERSION),
+                        main.getValue(Attributes.Name.IMPLEMENTATION_VENDOR),
+                        null);
+            }
+        } catch (IllegalArgumentException e) {
+            // Another thread defined it first
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL result = null;
+        if (!parentMisses.contains(name)) {
+            result = getParent().getResource(name);
+            if (result == null) {
+                parentMisses.add(name);
+            }
+        }
+        return result != null ? result : findResource(name);
+    }
+
+    /*
+     * Clojure reads namespace sources through getResourceAsStream, so read them straight from the
+     * index rather than through a jar: URL connection.
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        if (!parentMisses.contains(name)) {
+            InputStream result = getParent().getResourceAsStream(name);
+            if (result != null) {
+                return result;
+            }
+            parentMisses.add(name);
+        }
+        Location location = index.get(name);
+        if (location == null) {
+            return null;
+        }
+        try {
+            return location.root.open(name);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        Location location = index.get(name);
+        return location == null ? null : location.root.url(name);
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<URL> result = new ArrayList<URL>();
+        for (Location location = index.get(name); location != null; location = location.next) {
+            URL url = location.root.url(name);
+            if (url != null) {
+                result.add(url);
+            }
+        }
+        return Collections.enumeration(result);
+    }
+
+    /**
+     * Close every jar and delete the nested jars that were extracted.  Classes already loaded stay
+     * usable, but no more classes or resources can be loaded.
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Root root : roots) {
+            if (root.jar != null) {
+                try {
+                    root.jar.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (extractedJars != null) {
+            delete(extractedJars);
+            openExtractions.remove(extractedJars);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Reporting the failure that got us here matters more
+        }
+    }
+
+    private static void deleteOnExit(File directory) {
+        openExtractions.add(directory);
+        if (cleanupRegistered.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread("clj-classpath-cleanup") {
+                public void run() {
+                    for (File extraction : openExtractions) {
+                        delete(extraction);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /*
+     * Index entries
+     */
+
+    private static final class Location {
+        final Root root;
+        Location next;
+
+        Location(Root root) {
+            this.root = root;
+        }
+    }
+
+    private static final class Root {
+        final File file;
+        final JarFile jar;
+        final String baseUrl;
+        private volatile ProtectionDomain protectionDomain;
+
+        Root(File file, JarFile jar) throws MalformedURLException {
+            this.file = file;
+            this.jar = jar;
+            String fileUrl = file.toURI().toURL().toString();
+            this.baseUrl = jar == null ? fileUrl : "jar:" + fileUrl + "!/";
+        }
+
+        InputStream open(String name) throws IOException {
+            if (jar == null) {
+                return new FileInputStream(new File(file, name));
+            }
+            JarEntry entry = jar.getJarEntry(name);
+            if (entry == null) {
+                throw new IOException(name + " not found in " + file);
+            }
+            return jar.getInputStream(entry);
+        }
+
+        byte[] read(String name) throws IOException {
+            InputStream in = open(name);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                copy(in, out);
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+
+        URL url(String name) {
+            try {
+                return new URL(baseUrl + name);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        ProtectionDomain protectionDomain(ClassLoader loader) throws MalformedURLException {
+            if (protectionDomain == null) {
+                CodeSource codeSource = new CodeSource(file.toURI().toURL(), (Certificate[]) null);
+                protectionDomain = new ProtectionDomain(codeSource, null, loader, null);
+            }
+            return protectionDomain;
+        }
+    }
+}
@@ -2,14 +2,22 @@ package com.bradsdeals.clj;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
+import com.bradsdeals.clj.internal.dsl.ClojureArg;
 import com.bradsdeals.clj.internal.dsl.ClojureFn;
 import com.bradsdeals.clj.internal.dsl.ClojureFnInvocation;
 import com.bradsdeals.clj.internal.dsl.ClojureFnLiteral;
+import com.bradsdeals.clj.internal.dsl.ClojureFormCompiler;
 import com.bradsdeals.clj.internal.dsl.ClojureLet;
+import com.bradsdeals.clj.internal.dsl.ClojurePar;
+import com.bradsdeals.clj.internal.dsl.ClojurePlan;
 import com.bradsdeals.clj.internal.dsl.ClojureVar;
+import com.bradsdeals.clj.internal.dsl.DslContext;
 
 /**
  * A dynamic Clojure DSL mimicking Clojure's "do" form, and that allows specifying require
@@ -20,6 +28,33 @@ import com.bradsdeals.clj.internal.dsl.ClojureVar;
  */
 public class ClJDSL {
 
+    private static volatile Executor defaultExecutor = ForkJoinPool.commonPool();
+
+    /**
+     * Set the executor used by {@link #par(ClojureVar[], ClojureFn...)} and
+     * {@link #doAllAsync(IClojure, String[], ClojureFn...)} when no executor is specified.  The default
+     * is {@link ForkJoinPool#commonPool()}; if your Clojure functions block on I/O, supply a
+     * dedicated executor instead.
+     *
+     * @param executor The new default executor.
+     */
+    public static void setDefaultExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Return the executor used by {@link #par(ClojureVar[], ClojureFn...)} and
+     * {@link #doAllAsync(IClojure, String[], ClojureFn...)} when no executor is specified.
+     *
+     * @return The current default executor.
+     */
+    public static Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
     /**
      * A "do" block for Java that dynamically calls Clojure code.  e.g.:
      * <code>
@@ -30,6 +65,9 @@ public class ClJDSL {
      *     $("io/copy", "/tmp/sourcefile", "/tmp/outputfile"));
      * </code>
      *
+     * DSL blocks are immutable, so a block may be built once, stored in a static final field
+     * and passed to doAll concurrently from many threads, against one or more runtimes.
+     *
      * @param clojure An {@link IClojure} instance that can make the actual calls into Clojure.
      * @param aliases A string array of Clojure package aliases.  A helper {@link #require(String...)}
      * function can easily provide this array.
@@ -41,17 +79,98 @@ public class ClJDSL {
      * @return The result of the last function call.
      */    @SuppressWarnings("unchecked")
     public static <T> T doAll(IClojure clojure, String[] aliases, ClojureFn...block) {
-        Map<String, String> nsAliases = computeNsAliases(aliases);
+        DslContext context = new DslContext(clojure, computeNsAliases(aliases));
         Object result = null;
         for (ClojureFn fn : block) {
-            if (fn instanceof IClojureCaller) {
-                ((IClojureCaller)fn).setClojure(clojure);
-            }
-            result = fn.invoke(nsAliases, new LinkedList<HashMap<String,Object>>());
+            result = fn.invoke(context);
         }
         return (T)result;
     }
 
+    /**
+     * Run a "do" block asynchronously on the default executor.  See {@link #doAll(IClojure, String[], ClojureFn...)}.
+     *
+     * @param clojure An {@link IClojure} instance that can make the actual calls into Clojure.
+     * @param aliases A string array of Clojure package aliases, normally from {@link #require(String...)}.
+     * @param block The function invocations to run.
+     * @param <T> The result type.
+     * @return A CompletableFuture completed with the result of the last function call.
+     */
+    public static <T> CompletableFuture<T> doAllAsync(IClojure clojure, String[] aliases, ClojureFn...block) {
+        return doAllAsync(defaultExecutor, clojure, aliases, block);
+    }
+
+    /**
+     * Run a "do" block asynchronously on the specified executor.  See {@link #doAll(IClojure, String[], ClojureFn...)}.
+     *
+     * @param executor The executor to run the block on.
+     * @param clojure An {@link IClojure} instance that can make the actual calls into Clojure.
+     * @param aliases A string array of Clojure package aliases, normally from {@link #require(String...)}.
+     * @param block The function invocations to run.
+     * @param <T> The result type.
+     * @return A CompletableFuture completed with the result of the last function call.
+     */
+    public static <T> CompletableFuture<T> doAllAsync(Executor executor, final IClojure clojure, final String[] aliases,
+            final ClojureFn...block) {
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            public T get() {
+                return doAll(clojure, aliases, block);
+            }
+        }, executor);
+    }
+
+    /**
+     * Like {@link #doAll(IClojure, String[], ClojureFn...)}, but translates the whole block into a
+     * single Clojure function and compiles it with the Clojure compiler, so the JIT can optimize the
+     * block as one unit.  Java values in the block are passed to the compiled function as parameters,
+     * and compiled functions are cached per runtime by the block's structure, so only the first
+     * execution of a given block shape pays for compilation.<p>
+     *
+     * Intermediate results are passed between Clojure functions unwrapped; only the final result is
+     * converted for Java.
+     *
+     * @param clojure An {@link IClojure} instance that compiles and runs the block.
+     * @param aliases A string array of Clojure package aliases, normally from {@link #require(String...)}.
+     * @param block The function invocations to run.
+     * @param <T> The result type.
+     * @return The result of the last function call.
+     */
+    public static <T> T doAllCompiled(IClojure clojure, String[] aliases, ClojureFn...block) {
+        return ClojureFormCompiler.invoke(clojure, computeNsAliases(aliases), block);
+    }
+
+    /**
+     * Compile a "do" block into an immutable, reusable {@link ClojurePlan}.  Namespace aliases,
+     * function names and let variable references are resolved once, here, so each
+     * {@link ClojurePlan#execute(Object...)} only evaluates the pre-resolved expressions.  Use
+     * {@link #arg(int)} to mark the values that change between executions.  e.g.:
+     * <code>
+     * ClojurePlan replaceC = compile(c, require("clojure.string :as str"),
+     *     $("str/replace", arg(0), Pattern.compile("C"), "see"));
+     *
+     * String result = replaceC.execute("I see because I C");
+     * </code>
+     *
+     * @param clojure An {@link IClojure} instance used to resolve and later call the functions.
+     * @param aliases A string array of Clojure package aliases, normally from {@link #require(String...)}.
+     * @param block The function invocations to run.
+     * @return A ClojurePlan that can be executed repeatedly with new inputs.
+     */
+    public static ClojurePlan compile(IClojure clojure, String[] aliases, ClojureFn...block) {
+        return ClojurePlan.compile(clojure, computeNsAliases(aliases), block);
+    }
+
+    /**
+     * Return a placeholder for the index'th input of a compiled {@link ClojurePlan}.  See
+     * {@link #compile(IClojure, String[], ClojureFn...)}.
+     *
+     * @param index The 0-based index of the input passed to {@link ClojurePlan#execute(Object...)}.
+     * @return A ClojureArg placeholder.
+     */
+    public static ClojureArg arg(int index) {
+        return new ClojureArg(index);
+    }
+
      /**
       * Let expression.  Vars are lexically scoped to the let expression's block.  Let expressions
       * can be nested, in which case inner let expressions can redeclare the same variable names and
@@ -67,6 +186,39 @@ public class ClJDSL {
         return new ClojureLet(vars, block);
     }
 
+    /**
+     * Parallel let expression.  Like {@link #let(ClojureVar[], ClojureFn...)}, but the variables'
+     * values are computed concurrently on the default executor in effect when the block runs, so
+     * blocks built once and kept in fields follow {@link #setDefaultExecutor(Executor)}.  Since each value is evaluated in
+     * the enclosing scope, values are independent of each other; use par for independent lookups
+     * whose results later steps combine.  e.g.:
+     * <code>
+     * doAll(c, require("my.lookups :as l", "clojure.core :as core"),
+     *     par(vars("customer", $("l/customer", id),
+     *              "orders", $("l/orders", id)),
+     *         $("core/merge", "customer", "orders")));
+     * </code>
+     *
+     * @param vars An array of ClojureVar objects, normally created using the {@link #vars(Object...)} function.
+     * @param block 0-n Clojure expressions to execute once all vars are bound.
+     * @return The result of evaluating the last expression in block or null if block is empty.
+     */
+    public static ClojurePar par(ClojureVar[] vars, ClojureFn...block) {
+        return new ClojurePar(null, vars, block);
+    }
+
+    /**
+     * Parallel let expression using the specified executor.  See {@link #par(ClojureVar[], ClojureFn...)}.
+     *
+     * @param executor The executor used to compute the variables' values.
+     * @param vars An array of ClojureVar objects, normally created using the {@link #vars(Object...)} function.
+     * @param block 0-n Clojure expressions to execute once all vars are bound.
+     * @return The result of evaluating the last expression in block or null if block is empty.
+     */
+    public static ClojurePar par(Executor executor, ClojureVar[] vars, ClojureFn...block) {
+        return new ClojurePar(executor, vars, block);
+    }
+
     /**
      * Declare an array of ClojureVar objects to be used as the initial parameter to a let expression.
      * There must be an even number of arguments, alternating between String and Clojure expression
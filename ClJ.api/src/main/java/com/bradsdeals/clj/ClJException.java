@@ -0,0 +1,69 @@
+package com.bradsdeals.clj;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Thrown when a Clojure function signals an error with <code>ex-info</code>, or throws a checked
+ * exception.  Unchecked exceptions thrown by Clojure reach the caller unchanged.<p>
+ *
+ * For ex-info errors, {@link #getData()} holds the <code>ex-data</code> map and {@link #getType()}
+ * its <code>:type</code> entry, e.g.:
+ * <code>
+ *   (throw (ex-info "Invalid email" {:type :validation/rejected :field "email"}))
+ * </code>
+ * arrives as a ClJException whose type is "validation/rejected" and whose data maps "field" to
+ * "email".  The original ExceptionInfo is the cause.<p>
+ *
+ * ClJExceptions for the types a method declares with {@link ClJAnnotations.ExpectedErrors} have
+ * no stack trace of their own, which makes them cheap enough to use for routine rejections.
+ */
+public class ClJException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String type;
+    private final Map<String, Object> data;
+
+    /**
+     * Construct a ClJException wrapping a checked exception.
+     *
+     * @param message The detail message.
+     * @param cause The exception Clojure threw.
+     */
+    public ClJException(String message, Throwable cause) {
+        this(message, cause, null, Collections.<String, Object>emptyMap(), true);
+    }
+
+    /**
+     * Construct a ClJException for an ex-info error.
+     *
+     * @param message The ex-info message.
+     * @param cause The ExceptionInfo Clojure threw.
+     * @param type The ex-data's :type, or null if it has none.
+     * @param data The ex-data, with keys converted to Strings.
+     * @param stackTrace false to skip capturing this exception's stack trace.
+     */
+    public ClJException(String message, Throwable cause, String type, Map<String, Object> data, boolean stackTrace) {
+        super(message, cause, true, stackTrace);
+        this.type = type;
+        this.data = Collections.unmodifiableMap(data);
+    }
+
+    /**
+     * Return the ex-data's :type as a String without the leading colon, e.g.: "validation/rejected".
+     * @return the error's type, or null if it has none.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Return the ex-data map.  Keys are converted to Strings, with keywords converted to their
+     * names without the leading colon.  Keyword values are converted the same way, and Clojure
+     * collections are wrapped as {@link IClojure#invoke(Object, Object...)} wraps its results.
+     * @return the ex-data, or an empty map if the error was not an ex-info.
+     */
+    public Map<String, Object> getData() {
+        return data;
+    }
+}
@@ -1,8 +1,12 @@
 package com.bradsdeals.clj;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.URLClassLoader;
 
+import com.bradsdeals.clj.remote.RemoteClJ;
+
 
 /**
  * A factory for IClJ instances.<p>
@@ -40,6 +44,66 @@ public class ClJLoader {
         }
     }
 
+    /**
+     * Create a classloader-private instance of the ClJ Clojure-Java bridge running in a new
+     * {@link ClJClassLoader} over the specified classpath.  The classpath must include the ClJ
+     * runtime jar and a Clojure jar; the new classloader's parent is the classloader that loaded
+     * this class.  The runtime's {@link IClJ#close()} also closes the classloader.
+     *
+     * @param classpath The jars and directories holding ClJ, Clojure and your Clojure code.
+     * @return IClJ an IClJ instance for executing Clojure code from Java.
+     */
+    public static IClJ clj(File... classpath) {
+        ClJClassLoader context;
+        try {
+            context = new ClJClassLoader(ClJLoader.class.getClassLoader(), classpath);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot index private Clojure classpath", e);
+        }
+        boolean started = false;
+        try {
+            IClJ clj = clj(context);
+            started = true;
+            return clj;
+        } finally {
+            if (!started) {
+                // No runtime owns the classloader yet, so release its jars and extractions here
+                try {
+                    context.close();
+                } catch (IOException e) {
+                    // Report the failure to start instead
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a Clojure runtime in a child JVM over the specified classpath, behind the same
+     * {@link IClJ} API.  The child has its own heap, so a runtime that runs out of memory exits
+     * without affecting this JVM.  Calls are exchanged over shared memory; only data crosses the
+     * process boundary.  See {@link RemoteClJ} for what that means for arguments and results.<p>
+     *
+     * The runtime's {@link IClJ#close()} stops the child.
+     *
+     * @param jvmOptions Options for the child JVM, e.g.: "-Xmx512m".
+     * @param classpath The jars and directories holding ClJ.api, ClJ, Clojure and your Clojure code.
+     * @return IClJ an IClJ instance for executing Clojure code in the child JVM.
+     */
+    public static IClJ remoteClj(String[] jvmOptions, File... classpath) {
+        return RemoteClJ.start(jvmOptions, classpath);
+    }
+
+    /**
+     * Create a Clojure runtime in a child JVM with default JVM options.
+     *
+     * @param classpath The jars and directories holding ClJ.api, ClJ, Clojure and your Clojure code.
+     * @return IClJ an IClJ instance for executing Clojure code in the child JVM.
+     * @see #remoteClj(String[], File...)
+     */
+    public static IClJ remoteClj(File... classpath) {
+        return remoteClj(new String[0], classpath);
+    }
+
     /**
      * Dynamically load an IClJ instance using Class.forName and the current classloader.
      *
@@ -47,9 +111,9 @@ public class ClJLoader {
      */
     @SuppressWarnings({ "unchecked" })
     public static IClJ clj() {
+        // If our Clojure implementation is not set, see if we can find it using the current classloader.
+        final ClassLoader cl = ClJLoader.class.getClassLoader();
         try {
-            // If our Clojure implementation is not set, see if we can find it using the current classloader.
-            final ClassLoader cl = ClJLoader.class.getClassLoader();
             Class<IClJ> cljBridgeClass = (Class<IClJ>) Class.forName(CLJ_SUPPORT_CLASS, true, cl);
             final Constructor<IClJ> constructor = cljBridgeClass.getConstructor(ClassLoader.class);
             return constructor.newInstance(cl);
@@ -58,4 +122,15 @@ public class ClJLoader {
         }
     }
 
+    /**
+     * Return the name that identifies the runtime hosted by the specified classloader in
+     * JMX and JDK Flight Recorder data.
+     *
+     * @param context The classloader hosting the runtime.
+     * @return The runtime's name.
+     */
+    public static String runtimeName(ClassLoader context) {
+        return context.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(context));
+    }
+
 }
@@ -0,0 +1,42 @@
+package com.bradsdeals.clj;
+
+/**
+ * Thrown when a Clojure call does not return within its timeout.
+ *
+ * @see IClojure#invokeWithTimeout(long, java.util.concurrent.TimeUnit, Object, Object...)
+ * @see ClJAnnotations.Timeout
+ */
+public class ClJTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String functionName;
+    private final long timeoutNanos;
+
+    /**
+     * Construct a ClJTimeoutException.
+     *
+     * @param functionName The name of the function that timed out.
+     * @param timeoutNanos The timeout that expired, in nanoseconds.
+     */
+    public ClJTimeoutException(String functionName, long timeoutNanos) {
+        super(functionName + " did not return within " + (timeoutNanos / 1000000) + "ms");
+        this.functionName = functionName;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Return the name of the function that timed out.
+     * @return the name of the function that timed out.
+     */
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    /**
+     * Return the timeout that expired, in nanoseconds.
+     * @return the timeout that expired.
+     */
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+}
@@ -0,0 +1,16 @@
+package com.bradsdeals.clj;
+
+/**
+ * A reusable set of dynamic Var bindings prepared by {@link IClojure#bindings(java.util.Map)}.
+ * Preparing the set once resolves and validates the Vars and builds the binding map up front,
+ * so each {@link IClojure#withBindings(ClojureBindings, java.util.concurrent.Callable)} only has
+ * to push it.  Instances are immutable, may be shared between threads, and can only be used with
+ * the runtime that prepared them.
+ */
+public interface ClojureBindings {
+    /**
+     * Return the number of Vars this set binds.
+     * @return the number of Vars this set binds.
+     */
+    int size();
+}
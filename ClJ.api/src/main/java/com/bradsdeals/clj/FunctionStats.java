@@ -0,0 +1,133 @@
+package com.bradsdeals.clj;
+
+/**
+ * An immutable snapshot of the call statistics ClJ has recorded for one Clojure function.
+ * Latency percentiles come from a log-linear histogram and are accurate to within 12.5%.
+ *
+ * @see IClJMetrics
+ */
+public final class FunctionStats {
+    private final String name;
+    private final long calls;
+    private final long errors;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+
+    /**
+     * Construct a FunctionStats snapshot.
+     *
+     * @param name The function's fully-qualified name.
+     * @param calls The number of calls.
+     * @param errors The number of calls that threw.
+     * @param totalNanos The total time spent in calls.
+     * @param maxNanos The slowest call.
+     * @param p50Nanos The median latency.
+     * @param p90Nanos The 90th percentile latency.
+     * @param p99Nanos The 99th percentile latency.
+     * @param p999Nanos The 99.9th percentile latency.
+     */
+    public FunctionStats(String name, long calls, long errors, long totalNanos, long maxNanos,
+            long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos) {
+        this.name = name;
+        this.calls = calls;
+        this.errors = errors;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+    }
+
+    /**
+     * Return the function's fully-qualified name.
+     * @return the function's fully-qualified name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the number of calls, including calls that threw.
+     * @return the number of calls.
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Return the number of calls that threw an exception.
+     * @return the number of calls that threw an exception.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Return the total time spent in calls, in nanoseconds.
+     * @return the total time spent in calls.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Return the mean call latency in nanoseconds, or 0 if there were no calls.
+     * @return the mean call latency.
+     */
+    public long getMeanNanos() {
+        return calls == 0 ? 0 : totalNanos / calls;
+    }
+
+    /**
+     * Return the slowest call's latency in nanoseconds.
+     * @return the slowest call's latency.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Return the median call latency in nanoseconds.
+     * @return the median call latency.
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Return the 90th percentile call latency in nanoseconds.
+     * @return the 90th percentile call latency.
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * Return the 99th percentile call latency in nanoseconds.
+     * @return the 99th percentile call latency.
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Return the 99.9th percentile call latency in nanoseconds.
+     * @return the 99.9th percentile call latency.
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return name + " calls=" + calls + " errors=" + errors + " mean=" + getMeanNanos() + "ns p99="
+                + p99Nanos + "ns max=" + maxNanos + "ns";
+    }
+}
@@ -1,8 +1,15 @@
 package com.bradsdeals.clj;
 
+import java.util.concurrent.ExecutorService;
+
 import com.bradsdeals.clj.ClJAnnotations.Ns;
 import com.bradsdeals.clj.ClJAnnotations.Pt;
 import com.bradsdeals.clj.ClJAnnotations.Require;
+import com.bradsdeals.clj.transfer.BinaryDataReader;
+import com.bradsdeals.clj.transfer.BinaryDataWriter;
+import com.bradsdeals.clj.transfer.DataBuilder;
+import com.bradsdeals.clj.transfer.DataVisitor;
+import com.bradsdeals.clj.wrappers.IClojureIterable;
 
 /**
  * An Interface defining helpers for calling Clojure code from Java. This defines
@@ -56,4 +63,120 @@ public interface IClJ extends IClojure {
      */
     <T> T define(Class<T> clojureInterface, String...loadPackages);
 
+    /**
+     * Load the specified namespaces, and every namespace they depend on that is not loaded yet,
+     * loading independent namespaces in parallel.  Dependencies are found by reading each
+     * namespace's ns form; every namespace is loaded after the namespaces it requires.  Namespaces
+     * that are already loaded are skipped.<p>
+     *
+     * {@link #define(Class, String...)} loads its loadPackages the same way.  The namespaces named
+     * in the interface's {@link Require} annotation are still resolved when a method first needs
+     * them.
+     *
+     * @param namespaces The fully-qualified names of the namespaces to load.
+     * @return A report of the load times and of what parallel loading saved.
+     */
+    NamespaceLoadReport require(String...namespaces);
+
+    /**
+     * Reload the specified namespaces from the classpath and then publish their new definitions to
+     * every interface created by {@link #define(Class, String...)} in one step.<p>
+     *
+     * Defined interfaces keep calling the previous definitions until the reload has finished, and
+     * calls already in flight complete on the version they started with.  The call path takes no
+     * locks; concurrent reloads of the same runtime run one at a time.<p>
+     *
+     * Vars obtained from {@link #var(String)} always see the current root binding, so callers
+     * holding them observe each function as soon as it is redefined.
+     *
+     * @param namespaces The fully-qualified names of the namespaces to reload.
+     */
+    void reload(String...namespaces);
+
+    /**
+     * Return an executor whose threads are pinned to this runtime.  For a private runtime, the
+     * threads permanently keep the runtime's classloader as their context classloader along with
+     * their Clojure thread state, so calls made from tasks running on them skip the per-call
+     * classloader switch and call-depth bookkeeping that calls from other threads pay.<p>
+     *
+     * The executor has a fixed number of threads (see the <code>clj.pinned.threads</code> system
+     * property) fed by an unbounded queue.  It is owned by the runtime and shut down by
+     * {@link #close()}; do not shut it down directly.
+     *
+     * @return an executor whose threads are pinned to this runtime.
+     */
+    ExecutorService pinnedExecutor();
+
+    /**
+     * Return this runtime's call, namespace loading and function resolution metrics.  The same
+     * metrics are published through JMX.
+     *
+     * @return this runtime's metrics.
+     */
+    IClJMetrics metrics();
+
+    /**
+     * Return this runtime's slow-call sampler.  It is off until enabled.
+     *
+     * @return this runtime's slow-call sampler.
+     */
+    ISlowCallSampler slowCalls();
+
+    /**
+     * Measure the classes, namespaces, Vars, namespace heap and thread state this runtime holds.
+     * Measuring walks the runtime's namespaces and the values of their Vars, up to a fixed
+     * number of objects, so it is cheap enough to poll every minute or so but not on every call.
+     *
+     * @return a snapshot of this runtime's footprint.
+     */
+    RuntimeFootprint footprint();
+
+    /**
+     * Copy a Clojure value from this runtime into another runtime.  Each private runtime has its
+     * own Clojure classes, so a map from one fails <code>(map? m)</code> in another.  The value is
+     * walked here and rebuilt in target with transients.  Strings, numbers and other Java objects
+     * are shared rather than copied; keywords and symbols are interned in target.<p>
+     *
+     * Maps (including records), vectors, sets and sequences are copied; lazy sequences are
+     * realized, sorted collections arrive unsorted and metadata is dropped.  Functions, reference
+     * types and other runtime-defined objects cannot be copied.
+     *
+     * @param value The value, possibly wrapped as an {@link IClojureIterable}.
+     * @param target The runtime receiving the value.
+     * @param <T> The type of the result.
+     * @return The target runtime's copy of value, unwrapped and ready to pass to its functions.
+     * @throws IllegalArgumentException if value contains something that cannot be copied.
+     */
+    <T> T transfer(Object value, IClJ target);
+
+    /**
+     * Return a builder that constructs a value of this runtime from a {@link DataVisitor} event
+     * stream.  {@link #transfer(Object, IClJ)} walks its value into the target's builder, and
+     * {@link BinaryDataReader} can replay an encoded value into one.
+     *
+     * @return a new builder for a single value.
+     */
+    DataBuilder dataBuilder();
+
+    /**
+     * Encode a Clojure value of this runtime in the compact binary format described by
+     * {@link BinaryDataWriter}.  The value must be data: see {@link #transfer(Object, IClJ)}.
+     *
+     * @param value The value, possibly wrapped as an {@link IClojureIterable}.
+     * @return The encoded value.
+     * @throws IllegalArgumentException if value contains something that cannot be encoded.
+     */
+    byte[] encode(Object value);
+
+    /**
+     * Decode a value written by {@link #encode(Object)}, in this or any other runtime, into a
+     * value of this runtime.
+     *
+     * @param bytes The encoded value.
+     * @param <T> The type of the result.
+     * @return The decoded value, unwrapped and ready to pass to this runtime's functions.
+     * @throws IllegalArgumentException if bytes is not a supported encoding.
+     */
+    <T> T decode(byte[] bytes);
+
 }
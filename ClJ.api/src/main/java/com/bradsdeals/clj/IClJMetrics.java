@@ -0,0 +1,90 @@
+package com.bradsdeals.clj;
+
+import java.util.Map;
+
+/**
+ * Pull-based access to the instrumentation a ClJ runtime records.  The same data is published
+ * through JMX under <code>com.bradsdeals.clj:type=ClJ,name=&lt;runtime&gt;</code>.<p>
+ *
+ * Recording is on by default.  Start the JVM with <code>-Dclj.metrics=false</code> to turn it off
+ * completely (nothing is recorded and no MBean is registered), or call {@link #setEnabled(boolean)}
+ * to pause and resume recording at runtime.
+ */
+public interface IClJMetrics {
+    /**
+     * Return true if calls are currently being recorded.
+     * @return true if calls are currently being recorded.
+     */
+    boolean isEnabled();
+
+    /**
+     * Pause or resume recording.
+     * @param enabled true to record calls.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Return a snapshot of the per-function statistics, keyed by fully-qualified function name.
+     * Calls to anonymous functions are aggregated under "&lt;anonymous&gt;".
+     *
+     * @return a snapshot of the per-function statistics.
+     */
+    Map<String, FunctionStats> functionStats();
+
+    /**
+     * Return the most recent load time of each namespace ClJ loaded, in nanoseconds.
+     * @return the most recent load time of each namespace.
+     */
+    Map<String, Long> namespaceLoadTimesNanos();
+
+    /**
+     * Return the report from the most recent namespace loading pass (a {@link IClJ#require(String...)}
+     * or a {@link IClJ#define(Class, String...)} that loaded namespaces), or null if there has been none.
+     *
+     * @return the most recent namespace load report, or null.
+     */
+    NamespaceLoadReport lastNamespaceLoadReport();
+
+    /**
+     * Return the number of defined-interface calls whose function was already resolved.
+     * @return the number of function resolution cache hits.
+     */
+    long varCacheHits();
+
+    /**
+     * Return the number of defined-interface calls that had to resolve their function.
+     * @return the number of function resolution cache misses.
+     */
+    long varCacheMisses();
+
+    /**
+     * Return a snapshot of each {@link ClJAnnotations.Memoize} cache's statistics, keyed by
+     * "interface#method".  Memo caches are shared by every proxy of an interface in a runtime, and
+     * their statistics are kept even while recording is paused.
+     *
+     * @return a snapshot of the memo cache statistics.
+     */
+    Map<String, MemoStats> memoStats();
+
+    /**
+     * Return the number of calls with a timeout that gave up on a function that was still
+     * running.  The function keeps its worker thread until it notices the interrupt or returns.
+     * Counted even while recording is paused.
+     *
+     * @return the number of abandoned calls since the runtime started or was last reset.
+     */
+    long abandonedCalls();
+
+    /**
+     * Return the number of abandoned calls whose function is still running, each holding one of
+     * the runtime's timeout threads.
+     *
+     * @return the number of abandoned calls still running.
+     */
+    int runningAbandonedCalls();
+
+    /**
+     * Discard everything recorded so far.
+     */
+    void reset();
+}
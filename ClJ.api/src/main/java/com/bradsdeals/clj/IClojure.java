@@ -1,5 +1,11 @@
 package com.bradsdeals.clj;
 
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Interface to the Clojure runtime that allows for classloader-private Clojure runtime instances.
  *
@@ -11,7 +17,14 @@ public interface IClojure {
      * Shutdown the current private Clojure instance.  Only call this method if you initialized a private
      * Clojure instance using a constructor accepting a ClassLoader and the module containing this Clojure instance
      * is being unloaded by its container.  Otherwise, (e.g.: if Clojure and ClJ are on a globally-accessible
-     * classpath) you can safely ignore this method.
+     * classpath) you can safely ignore this method.<p>
+     *
+     * Closing shuts down the runtime's agents and executors and waits briefly for their threads to
+     * exit, then clears the runtime's thread-binding state and context classloader from every other
+     * thread it can reach, so the classloader can be collected once callers drop their references
+     * to this object and to interfaces it defined.  Clearing other threads' binding state requires
+     * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code> on Java 16 and later; without it,
+     * threads that evaluated Clojure code outside ClJ's calls keep the runtime until they exit.
      */
     void close();
 
@@ -53,4 +66,96 @@ public interface IClojure {
      */
     <T> T invoke(final Object fn, final Object...args);
 
+    /**
+     * Execute the Clojure function identified by fn, passing args as arguments, with Clojure's
+     * *out* and *err* bound to the specified writers for the duration of this call only.  Global
+     * bindings and other threads are unaffected.<p>
+     *
+     * The writers are bound as-is, so a sink reused across calls costs no extra allocation.  To
+     * capture into an OutputStream, use {@link #invokeWithOutput(OutputStream, OutputStream, Object, Object...)}.
+     *
+     * @param <T> The return type
+     * @param out The Writer to bind to *out*, or null to leave *out* unchanged.
+     * @param err The Writer to bind to *err*, or null to leave *err* unchanged.
+     * @param fn The Clojure function to call.
+     * @param args The arguments to pass.
+     * @return the value the Clojure function returned.
+     */
+    <T> T invokeWithOutput(Writer out, Writer err, Object fn, Object...args);
+
+    /**
+     * Execute the Clojure function identified by fn, passing args as arguments, with Clojure's
+     * *out* and *err* encoding UTF-8 into the specified streams for the duration of this call only.
+     * Global bindings and other threads are unaffected.<p>
+     *
+     * The writers wrapping the streams are reused across calls on the same thread.  Output is
+     * written to the streams by the time the call returns or throws, but the streams are only
+     * flushed when the function flushes *out* or *err*, e.g.: via println, and are never closed.
+     *
+     * @param <T> The return type
+     * @param out The OutputStream to send *out* to, or null to leave *out* unchanged.
+     * @param err The OutputStream to send *err* to, or null to leave *err* unchanged.
+     * @param fn The Clojure function to call.
+     * @param args The arguments to pass.
+     * @return the value the Clojure function returned.
+     */
+    <T> T invokeWithOutput(OutputStream out, OutputStream err, Object fn, Object...args);
+
+    /**
+     * Prepare a reusable set of dynamic Var bindings, e.g.: request context, *print-length* or
+     * feature flags.
+     *
+     * @param bindings A map from dynamic Vars (as returned by {@link #var(String)}) or their
+     *        fully-qualified names to the values to bind them to.
+     * @return The prepared bindings.
+     * @throws IllegalArgumentException if a Var is not dynamic.
+     */
+    ClojureBindings bindings(Map<?, ?> bindings);
+
+    /**
+     * Run call with the prepared bindings pushed as one thread binding frame.  Every Clojure call
+     * made by call on this thread sees the bindings; the frame is popped when call returns.
+     * Calls nest, so withBindings may be used inside another withBindings.
+     *
+     * @param <T> The return type
+     * @param bindings Bindings prepared by this runtime's {@link #bindings(Map)}.
+     * @param call The code to run with the bindings in effect.
+     * @return the value call returned.
+     */
+    <T> T withBindings(ClojureBindings bindings, Callable<T> call);
+
+    /**
+     * Run call with the specified dynamic Var bindings in effect.  Equivalent to
+     * <code>withBindings(bindings(bindings), call)</code>; prepare the bindings once with
+     * {@link #bindings(Map)} when the same set is used repeatedly.
+     *
+     * @param <T> The return type
+     * @param bindings A map from dynamic Vars or their fully-qualified names to values.
+     * @param call The code to run with the bindings in effect.
+     * @return the value call returned.
+     */
+    <T> T withBindings(Map<?, ?> bindings, Callable<T> call);
+
+    /**
+     * Execute the Clojure function identified by fn, passing args as arguments, giving up if it has
+     * not returned within the specified timeout.<p>
+     *
+     * The call runs on one of this runtime's worker threads with the caller's dynamic bindings, so
+     * the calling thread is released on time even if the Clojure code never yields.  On timeout the
+     * worker is interrupted; long-running Clojure code can cooperate by checking
+     * <code>(.isInterrupted (Thread/currentThread))</code> or by using interruptible blocking calls.
+     * Code that ignores the interrupt keeps its worker until it returns; the number of workers is
+     * bounded, and {@link IClJMetrics#runningAbandonedCalls()} reports how many are held this way.
+     *
+     * @param <T> The return type
+     * @param timeout The longest time to wait for the result.
+     * @param unit The timeout's unit.
+     * @param fn The Clojure function to call.
+     * @param args The arguments to pass.
+     * @return the value the Clojure function returned.
+     * @throws ClJTimeoutException if the function did not return in time.
+     * @throws java.util.concurrent.RejectedExecutionException if every worker thread is busy.
+     */
+    <T> T invokeWithTimeout(long timeout, TimeUnit unit, Object fn, Object...args);
+
 }
@@ -3,7 +3,11 @@ package com.bradsdeals.clj;
 /**
  * An interface for objects that call Clojure and therefore need an instance
  * of IClojure injected.
+ *
+ * @deprecated DSL nodes no longer hold a runtime; it is passed to them in a
+ * {@link com.bradsdeals.clj.internal.dsl.DslContext} instead, so they can be shared safely.
  */
+@Deprecated
 public interface IClojureCaller {
     /**
      * Set the Clojure instance to run against.
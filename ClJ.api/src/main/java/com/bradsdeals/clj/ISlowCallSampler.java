@@ -0,0 +1,57 @@
+package com.bradsdeals.clj;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures calls into Clojure that take longer than a threshold, so the inputs behind tail
+ * latency can be found.  Samples are kept in a bounded ring buffer; once it is full the oldest
+ * samples are overwritten.<p>
+ *
+ * The sampler is off by default.  While it is off the invoke path only reads one volatile flag.
+ */
+public interface ISlowCallSampler {
+    /**
+     * Start sampling calls that take at least threshold.
+     *
+     * @param threshold The minimum latency of a sampled call.
+     * @param unit The threshold's unit.
+     * @param maxSamplesPerSecond The most samples to record in any one second; slow calls beyond
+     *        this are counted in {@link #droppedSamples()} but not recorded.
+     */
+    void enable(long threshold, TimeUnit unit, int maxSamplesPerSecond);
+
+    /**
+     * Stop sampling.  Samples recorded so far are kept.
+     */
+    void disable();
+
+    /**
+     * Return true if calls are currently being sampled.
+     * @return true if calls are currently being sampled.
+     */
+    boolean isEnabled();
+
+    /**
+     * Return the samples currently in the ring buffer, oldest first.
+     * @return the samples currently in the ring buffer.
+     */
+    List<SlowCall> samples();
+
+    /**
+     * Return the number of slow calls that were not recorded because of the rate limit.
+     * @return the number of slow calls dropped by the rate limit.
+     */
+    long droppedSamples();
+
+    /**
+     * Return the maximum number of samples kept.
+     * @return the ring buffer's capacity.
+     */
+    int capacity();
+
+    /**
+     * Discard all samples and reset the dropped sample count.
+     */
+    void clear();
+}
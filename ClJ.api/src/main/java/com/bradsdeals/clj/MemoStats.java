@@ -0,0 +1,108 @@
+package com.bradsdeals.clj;
+
+/**
+ * An immutable snapshot of one {@link ClJAnnotations.Memoize} cache's statistics.
+ *
+ * @see IClJMetrics#memoStats()
+ */
+public final class MemoStats {
+    private final String name;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long size;
+    private final long weight;
+
+    /**
+     * Construct a MemoStats snapshot.
+     *
+     * @param name The memoized method, as "interface#method".
+     * @param hits The number of calls served from the cache.
+     * @param misses The number of calls that had to call Clojure.
+     * @param evictions The number of entries evicted to stay within maxSize or maxWeight.
+     * @param expirations The number of entries discarded because their TTL passed.
+     * @param size The number of entries currently cached.
+     * @param weight The total weight of the entries currently cached.
+     */
+    public MemoStats(String name, long hits, long misses, long evictions, long expirations, long size, long weight) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     * Return the memoized method, as "interface#method".
+     * @return the memoized method's name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the number of calls served from the cache.
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Return the number of calls that had to call Clojure.
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Return the fraction of calls served from the cache, or 0 if there have been no calls.
+     * @return the cache hit rate.
+     */
+    public double getHitRate() {
+        long calls = hits + misses;
+        return calls == 0 ? 0.0 : (double) hits / calls;
+    }
+
+    /**
+     * Return the number of entries evicted to stay within maxSize or maxWeight.
+     * @return the number of evictions.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Return the number of entries discarded because their TTL passed.
+     * @return the number of expirations.
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * Return the number of entries currently cached.
+     * @return the number of entries currently cached.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return the total weight of the entries currently cached.
+     * @return the total weight of the entries currently cached.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return name + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                + " expirations=" + expirations + " size=" + size;
+    }
+}
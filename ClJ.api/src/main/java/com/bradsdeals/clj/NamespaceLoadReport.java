@@ -0,0 +1,98 @@
+package com.bradsdeals.clj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable summary of one namespace loading pass: how long each namespace took to load,
+ * how long the whole pass took and how much loading independent namespaces in parallel saved.
+ *
+ * @see IClJ#require(String...)
+ * @see IClJMetrics#lastNamespaceLoadReport()
+ */
+public final class NamespaceLoadReport {
+    private final Map<String, Long> loadTimesNanos;
+    private final long wallNanos;
+    private final int threads;
+
+    /**
+     * Construct a NamespaceLoadReport.
+     *
+     * @param loadTimesNanos Each namespace's load time, in the order the loads finished.
+     * @param wallNanos The elapsed time of the whole pass.
+     * @param threads The number of threads that loaded namespaces.
+     */
+    public NamespaceLoadReport(Map<String, Long> loadTimesNanos, long wallNanos, int threads) {
+        this.loadTimesNanos = Collections.unmodifiableMap(new LinkedHashMap<String, Long>(loadTimesNanos));
+        this.wallNanos = wallNanos;
+        this.threads = threads;
+    }
+
+    /**
+     * Return each namespace's load time in nanoseconds, in the order the loads finished.  A
+     * namespace's time excludes the dependencies loaded before it.
+     * @return each namespace's load time.
+     */
+    public Map<String, Long> getLoadTimesNanos() {
+        return loadTimesNanos;
+    }
+
+    /**
+     * Return the elapsed time of the whole pass, including reading ns forms.
+     * @return the elapsed time of the whole pass.
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Return the sum of the individual load times: roughly what loading the same namespaces one
+     * after another would have taken.
+     * @return the sum of the individual load times.
+     */
+    public long getCumulativeNanos() {
+        long total = 0;
+        for (Long nanos : loadTimesNanos.values()) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * Return the number of threads that loaded namespaces; 1 if the pass ran sequentially.
+     * @return the number of loading threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Return how many times faster the pass was than loading sequentially, estimated as
+     * cumulative time divided by wall time.
+     * @return the estimated speedup from parallel loading.
+     */
+    public double getSpeedup() {
+        return wallNanos == 0 ? 1.0 : (double) getCumulativeNanos() / wallNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Loaded %d namespaces in %.1fms on %d threads (%.1fms sequential, %.2fx)%n",
+                loadTimesNanos.size(), wallNanos / 1e6, threads, getCumulativeNanos() / 1e6, getSpeedup()));
+        List<Map.Entry<String, Long>> slowestFirst = new ArrayList<Map.Entry<String, Long>>(loadTimesNanos.entrySet());
+        Collections.sort(slowestFirst, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        for (Map.Entry<String, Long> load : slowestFirst) {
+            result.append(String.format("  %8.1fms  %s%n", load.getValue() / 1e6, load.getKey()));
+        }
+        return result.toString();
+    }
+}
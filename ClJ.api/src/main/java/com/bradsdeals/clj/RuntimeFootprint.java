@@ -0,0 +1,142 @@
+package com.bradsdeals.clj;
+
+/**
+ * An immutable snapshot of how many classes, namespaces, Vars, heap and threads one Clojure
+ * runtime is holding.  Compare snapshots taken over time to find runtimes that grow.<p>
+ *
+ * Counts that the JVM does not let ClJ observe are reported as -1.
+ *
+ * @see IClJ#footprint()
+ */
+public final class RuntimeFootprint {
+    private final String runtimeName;
+    private final int definedClasses;
+    private final int dynamicClasses;
+    private final int namespaces;
+    private final int vars;
+    private final long namespaceHeapBytes;
+    private final boolean namespaceHeapComplete;
+    private final int threadsWithBindings;
+    private final long measureNanos;
+
+    /**
+     * Construct a RuntimeFootprint.
+     *
+     * @param runtimeName The runtime's name.
+     * @param definedClasses The number of classes the runtime's classloader defined, or -1 if unknown.
+     * @param dynamicClasses The number of live classes Clojure generated at runtime.
+     * @param namespaces The number of namespaces.
+     * @param vars The number of Vars interned in those namespaces.
+     * @param namespaceHeapBytes The estimated heap held by the Vars' root values.
+     * @param namespaceHeapComplete false if the estimate stopped at its object limit.
+     * @param threadsWithBindings The number of threads holding Clojure thread-binding state, or -1 if unknown.
+     * @param measureNanos How long taking this snapshot took.
+     */
+    public RuntimeFootprint(String runtimeName, int definedClasses, int dynamicClasses, int namespaces, int vars,
+            long namespaceHeapBytes, boolean namespaceHeapComplete, int threadsWithBindings, long measureNanos) {
+        this.runtimeName = runtimeName;
+        this.definedClasses = definedClasses;
+        this.dynamicClasses = dynamicClasses;
+        this.namespaces = namespaces;
+        this.vars = vars;
+        this.namespaceHeapBytes = namespaceHeapBytes;
+        this.namespaceHeapComplete = namespaceHeapComplete;
+        this.threadsWithBindings = threadsWithBindings;
+        this.measureNanos = measureNanos;
+    }
+
+    /**
+     * Return the name that identifies the runtime in JMX and JDK Flight Recorder data.
+     * @return the runtime's name.
+     */
+    public String getRuntimeName() {
+        return runtimeName;
+    }
+
+    /**
+     * Return the number of classes the runtime's classloader has defined: Clojure itself, ClJ and
+     * any AOT-compiled code.  Only known for runtimes hosted by a {@link ClJClassLoader}.
+     * @return the number of defined classes, or -1 if unknown.
+     */
+    public int getDefinedClasses() {
+        return definedClasses;
+    }
+
+    /**
+     * Return the number of classes Clojure compiled at runtime, e.g.: when loading namespaces
+     * from source, that have not been unloaded.
+     * @return the number of live runtime-generated classes.
+     */
+    public int getDynamicClasses() {
+        return dynamicClasses;
+    }
+
+    /**
+     * Return the total number of classes the runtime holds in metaspace, where known.
+     * @return the number of defined plus runtime-generated classes, or -1 if unknown.
+     */
+    public int getLoadedClasses() {
+        return definedClasses < 0 ? -1 : definedClasses + dynamicClasses;
+    }
+
+    /**
+     * Return the number of namespaces in the runtime.
+     * @return the number of namespaces.
+     */
+    public int getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * Return the number of Vars interned in the runtime's namespaces.  Referred Vars are counted
+     * once, in the namespace that interns them.
+     * @return the number of Vars.
+     */
+    public int getVars() {
+        return vars;
+    }
+
+    /**
+     * Return an estimate of the heap reachable from the root values of the runtime's Vars,
+     * including the contents of atoms, refs and agents they hold.  Classes, classloaders, threads
+     * and other Vars are not counted, and objects shared by several Vars are counted once.
+     * @return the estimated namespace heap in bytes.
+     */
+    public long getNamespaceHeapBytes() {
+        return namespaceHeapBytes;
+    }
+
+    /**
+     * Return false if the heap estimate visited its maximum number of objects before finishing, in
+     * which case {@link #getNamespaceHeapBytes()} is a lower bound.
+     * @return true if the heap estimate covers every reachable object.
+     */
+    public boolean isNamespaceHeapComplete() {
+        return namespaceHeapComplete;
+    }
+
+    /**
+     * Return the number of live threads that hold Clojure thread-binding state for this runtime.
+     * Such threads keep the runtime reachable until they exit.  Counting them requires
+     * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code> on Java 16 and later.
+     * @return the number of threads with binding state, or -1 if unknown.
+     */
+    public int getThreadsWithBindings() {
+        return threadsWithBindings;
+    }
+
+    /**
+     * Return how long taking this snapshot took.
+     * @return the measurement time in nanoseconds.
+     */
+    public long getMeasureNanos() {
+        return measureNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d classes (%d dynamic), %d namespaces, %d vars, %s%.1fKB namespace heap, %d threads with bindings (%.1fms)",
+                runtimeName, getLoadedClasses(), dynamicClasses, namespaces, vars, namespaceHeapComplete ? "" : ">",
+                namespaceHeapBytes / 1024.0, threadsWithBindings, measureNanos / 1e6);
+    }
+}
@@ -0,0 +1,95 @@
+package com.bradsdeals.clj;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable record of one call into Clojure that exceeded the slow-call threshold.  Only
+ * the shape of each argument is kept (its type plus its length or element count), never its value.
+ *
+ * @see ISlowCallSampler
+ */
+public final class SlowCall {
+    private final String functionName;
+    private final List<String> argumentShapes;
+    private final String threadName;
+    private final long elapsedNanos;
+    private final long timestampMillis;
+    private final boolean failed;
+
+    /**
+     * Construct a SlowCall record.
+     *
+     * @param functionName The function's fully-qualified name, or its class name if it is anonymous.
+     * @param argumentShapes The shape of each argument, e.g.: "PersistentVector[12]" or "String(80)".
+     * @param threadName The name of the calling thread.
+     * @param elapsedNanos How long the call took.
+     * @param timestampMillis When the call finished, in milliseconds since the epoch.
+     * @param failed true if the call threw.
+     */
+    public SlowCall(String functionName, String[] argumentShapes, String threadName, long elapsedNanos,
+            long timestampMillis, boolean failed) {
+        this.functionName = functionName;
+        this.argumentShapes = Collections.unmodifiableList(Arrays.asList(argumentShapes.clone()));
+        this.threadName = threadName;
+        this.elapsedNanos = elapsedNanos;
+        this.timestampMillis = timestampMillis;
+        this.failed = failed;
+    }
+
+    /**
+     * Return the function's fully-qualified name, or its class name if it is anonymous.
+     * @return the function's name.
+     */
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    /**
+     * Return the shape of each argument: its type plus, for strings, arrays and counted
+     * collections, its length or element count.
+     * @return the shape of each argument.
+     */
+    public List<String> getArgumentShapes() {
+        return argumentShapes;
+    }
+
+    /**
+     * Return the name of the calling thread.
+     * @return the name of the calling thread.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Return how long the call took in nanoseconds.
+     * @return how long the call took.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Return when the call finished, in milliseconds since the epoch.
+     * @return when the call finished.
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Return true if the call threw.
+     * @return true if the call threw.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return functionName + argumentShapes + " took " + elapsedNanos + "ns on " + threadName
+                + (failed ? " (failed)" : "");
+    }
+}
@@ -0,0 +1,20 @@
+package com.bradsdeals.clj.internal.dsl;
+
+/**
+ * A placeholder for an input value supplied each time a {@link ClojurePlan} is executed.
+ */
+public class ClojureArg extends ClojureFn {
+    protected final int index;
+
+    public ClojureArg(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Argument index must not be negative: " + index);
+        }
+        this.index = index;
+    }
+
+    @Override
+    public <T> T invoke(DslContext context) {
+        throw new IllegalStateException("arg(" + index + ") can only be used in a compiled plan");
+    }
+}
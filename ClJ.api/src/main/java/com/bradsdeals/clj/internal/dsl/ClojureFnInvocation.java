@@ -1,31 +1,26 @@
 package com.bradsdeals.clj.internal.dsl;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-
-import com.bradsdeals.clj.IClojureCaller;
-
 public class ClojureFnInvocation extends ClojureFnLiteral {
-    private Object[] args;
+    private final Object[] args;
 
     public ClojureFnInvocation(String name, Object... args) {
         super(name);
-        this.args = args;
+        this.args = args.clone();
+    }
+
+    Object[] args() {
+        return args;
     }
 
     @Override
-    public <T> T invoke(Map<String,String> nsAliases, LinkedList<HashMap<String, Object>> vars) {
+    public <T> T invoke(DslContext context) {
         Object[] resolvedArgs = new Object[args.length];
         for (int i = 0; i < args.length; i++) {
             Object arg = args[i];
-            if (arg instanceof IClojureCaller) {
-                ((IClojureCaller)arg).setClojure(clojure);
-            }
             if (arg instanceof ClojureFn) {
-                resolvedArgs[i] = ((ClojureFn)arg).invoke(nsAliases, vars);
+                resolvedArgs[i] = ((ClojureFn)arg).invoke(context);
             } else if (arg instanceof String) {
-                resolvedArgs[i] = findVar((String) arg, vars);
+                resolvedArgs[i] = context.findVar((String) arg);
                 if (resolvedArgs[i] == null) {
                     resolvedArgs[i] = arg;
                 }
@@ -34,10 +29,10 @@ public class ClojureFnInvocation extends ClojureFnLiteral {
             }
         }
 
-        Object fn = resolve(name, "/", nsAliases, vars);
+        Object fn = resolve(name, context);
         if (fn == null) {
             throw new IllegalArgumentException("Could not find function: " + name);
         }
-        return clojure.invoke(fn, resolvedArgs);
+        return context.clojure().invoke(fn, resolvedArgs);
     }
 }
@@ -0,0 +1,183 @@
+package com.bradsdeals.clj.internal.dsl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.bradsdeals.clj.IClojure;
+
+/**
+ * Translates a ClJDSL block into the equivalent Clojure source, a single
+ * <code>(fn [^objects p] ...)</code>, and compiles it with the Clojure compiler.  Every Java
+ * value in the block (including literal strings) becomes an element of p, so the generated
+ * source depends only on the block's structure and serves as the cache key: blocks with the
+ * same shape share one compiled function regardless of the values passed.<p>
+ *
+ * Unlike the interpreted DSL, intermediate results are passed between Clojure functions as-is,
+ * without being wrapped for Java; only the block's final result is.
+ */
+public final class ClojureFormCompiler {
+    private final IClojure clojure;
+    private final Map<String, String> nsAliases;
+    private final LinkedList<Map<String, String>> scopes = new LinkedList<Map<String, String>>();
+    private final List<Object> params = new ArrayList<Object>();
+    private final List<String> fnNames = new ArrayList<String>();
+    private final StringBuilder source = new StringBuilder();
+    private int symbolCount = 0;
+
+    private ClojureFormCompiler(IClojure clojure, Map<String, String> nsAliases) {
+        this.clojure = clojure;
+        this.nsAliases = nsAliases;
+    }
+
+    /**
+     * Compile block (or fetch it from the runtime's cache) and invoke it.
+     *
+     * @param clojure The runtime to compile and run in.
+     * @param nsAliases A map from namespace alias to namespace.
+     * @param block The block to run.
+     * @param <T> The result type.
+     * @return The result of the last expression in the block.
+     */
+    public static <T> T invoke(IClojure clojure, Map<String, String> nsAliases, ClojureFn[] block) {
+        ClojureFormCompiler compiler = new ClojureFormCompiler(clojure, nsAliases);
+        String key = compiler.emitFn(block);
+
+        DslCache cache = DslCache.forRuntime(clojure);
+        Object fn = cache.compiledFns.get(key);
+        if (fn == null) {
+            compiler.resolveFns();
+            fn = clojure.invoke("clojure.core/load-string", key);
+            Object existing = cache.compiledFns.putIfAbsent(key, fn);
+            if (existing != null) {
+                fn = existing;
+            }
+        }
+        return clojure.invoke(fn, (Object) compiler.params.toArray());
+    }
+
+    private String emitFn(ClojureFn[] block) {
+        source.append("(fn [^objects p] (do");
+        for (ClojureFn node : block) {
+            source.append(' ');
+            emit(node);
+        }
+        source.append("))");
+        return source.toString();
+    }
+
+    private void emit(ClojureFn node) {
+        if (node instanceof ClojureFnInvocation) {
+            ClojureFnInvocation invocation = (ClojureFnInvocation) node;
+            source.append('(');
+            String local = findSymbol(invocation.name);
+            source.append(local != null ? local : qualify(invocation.name));
+            for (Object arg : invocation.args()) {
+                source.append(' ');
+                emitArg(arg);
+            }
+            source.append(')');
+        } else if (node instanceof ClojureFnLiteral) {
+            String name = ((ClojureFnLiteral) node).name;
+            String local = findSymbol(name);
+            if (local != null) {
+                source.append(local);
+            } else {
+                source.append("(var ").append(qualify(name)).append(')');
+            }
+        } else if (node instanceof ClojureLet) {
+            emitLet((ClojureLet) node);
+        } else {
+            throw new IllegalArgumentException("Cannot compile " + node.getClass().getName());
+        }
+    }
+
+    private void emitArg(Object arg) {
+        if (arg instanceof ClojureFn) {
+            emit((ClojureFn) arg);
+            return;
+        } else if (arg instanceof String) {
+            String local = findSymbol((String) arg);
+            if (local != null) {
+                source.append(local);
+                return;
+            }
+        }
+        emitParam(arg);
+    }
+
+    private void emitParam(Object value) {
+        source.append("(aget p ").append(params.size()).append(')');
+        params.add(value);
+    }
+
+    private void emitLet(ClojureLet let) {
+        ClojureVar[] vars = let.vars();
+        Map<String, String> scope = new HashMap<String, String>();
+        source.append("(let [");
+        // Like the interpreted let, values are evaluated in the enclosing scope
+        for (ClojureVar var : vars) {
+            if (scope.containsKey(var.name)) {
+                throw new IllegalStateException("Cannot modify an existing var: " + var.name);
+            }
+            String symbol = "v" + symbolCount++;
+            source.append(symbol).append(' ');
+            if (var.value instanceof ClojureFn) {
+                emit((ClojureFn) var.value);
+            } else {
+                emitParam(var.value);
+            }
+            source.append(' ');
+            scope.put(var.name, symbol);
+        }
+        source.append(']');
+        scopes.addFirst(scope);
+        try {
+            for (ClojureFn node : let.block()) {
+                source.append(' ');
+                emit(node);
+            }
+        } finally {
+            scopes.removeFirst();
+        }
+        source.append(')');
+    }
+
+    private String qualify(String name) {
+        String qualified = name;
+        if (name.contains("/")) {
+            String[] parts = name.split("/");
+            String namespace = nsAliases.get(parts[0]);
+            if (namespace == null) {
+                throw new IllegalArgumentException(parts[0] + " is not aliased to any namespace in: " + name);
+            }
+            qualified = namespace + "/" + parts[1];
+        }
+        fnNames.add(qualified);
+        return qualified;
+    }
+
+    /*
+     * Before compiling, make sure every referenced function exists; private runtimes also
+     * require the function's namespace as a side effect.
+     */
+    private void resolveFns() {
+        for (String name : fnNames) {
+            if (clojure.var(name) == null) {
+                throw new IllegalArgumentException("Could not find function: " + name);
+            }
+        }
+    }
+
+    private String findSymbol(String name) {
+        for (Map<String, String> scope : scopes) {
+            String symbol = scope.get(name);
+            if (symbol != null) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+}
@@ -1,40 +1,36 @@
 package com.bradsdeals.clj.internal.dsl;
 
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
 
-import com.bradsdeals.clj.IClojureCaller;
-
-public class ClojureLet extends ClojureFn implements IClojureCaller {
+public class ClojureLet extends ClojureFn {
     private final ClojureVar[] newVars;
     private final ClojureFn[] block;
 
     public ClojureLet(ClojureVar[] vars, ClojureFn...block) {
-        this.newVars = vars;
-        this.block = block;
+        this.newVars = vars.clone();
+        this.block = block.clone();
+    }
+
+    ClojureVar[] vars() {
+        return newVars;
+    }
+
+    ClojureFn[] block() {
+        return block;
     }
 
     @SuppressWarnings("unchecked")
     @Override
-    public <T> T invoke(Map<String, String> nsAliases, LinkedList<HashMap<String, Object>> vars) {
+    public <T> T invoke(DslContext context) {
         Object result = null;
-        try {
-            HashMap<String,Object> resolvedVars = resolveVars(nsAliases, vars, newVars);
-            vars.addFirst(resolvedVars);
-            for (ClojureFn fn : block) {
-                if (fn instanceof IClojureCaller) {
-                    ((IClojureCaller)fn).setClojure(clojure);
-                }
-                result = fn.invoke(nsAliases, vars);
-            }
-        } finally {
-            vars.removeFirst();
+        DslContext scope = context.withVars(resolveVars(context, newVars));
+        for (ClojureFn fn : block) {
+            result = fn.invoke(scope);
         }
         return (T) result;
     }
 
-    protected HashMap<String,Object> resolveVars(Map<String, String> nsAliases, LinkedList<HashMap<String, Object>> vars, ClojureVar[] newVars) {
+    protected HashMap<String,Object> resolveVars(DslContext context, ClojureVar[] newVars) {
         HashMap<String,Object> result = new HashMap<String,Object>();
         for (ClojureVar clojureVar : newVars) {
             if (result.containsKey(clojureVar.name)) {
@@ -43,8 +39,7 @@ public class ClojureLet extends ClojureFn implements IClojureCaller {
             Object invocationResult = null;
             if (clojureVar.value instanceof ClojureFn) {
                 ClojureFn fn = (ClojureFn) clojureVar.value;
-                fn.setClojure(clojure);
-                invocationResult = fn.invoke(nsAliases, vars);
+                invocationResult = fn.invoke(context);
             } else {
                 invocationResult = clojureVar.value;
             }
@@ -53,4 +48,3 @@ public class ClojureLet extends ClojureFn implements IClojureCaller {
         return result;
     }
 }
-
@@ -0,0 +1,88 @@
+package com.bradsdeals.clj.internal.dsl;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import com.bradsdeals.clj.ClJDSL;
+
+/**
+ * A let expression whose variable values are computed concurrently.  Like {@link ClojureLet},
+ * each value is evaluated in the enclosing scope, so values cannot depend on each other; this
+ * is what makes it safe to compute them in parallel.  The block runs once all values are bound.<p>
+ *
+ * Values are evaluated on the configured executor, or on {@link ClJDSL#getDefaultExecutor()} as
+ * of each run if none was configured, except the last one, which runs on the calling thread.  Clojure dynamic bindings are not conveyed to the executor's threads.
+ * Compiled forms (ClJDSL.compile, ClJDSL.doAllCompiled) evaluate par bindings sequentially.
+ */
+public class ClojurePar extends ClojureLet {
+    private final Executor executor;
+
+    /**
+     * @param executor The executor computing the values, or null for the default at run time.
+     * @param vars The variables to bind.
+     * @param block The expressions to evaluate once the variables are bound.
+     */
+    public ClojurePar(Executor executor, ClojureVar[] vars, ClojureFn...block) {
+        super(vars, block);
+        this.executor = executor;
+    }
+
+    @Override
+    protected HashMap<String,Object> resolveVars(final DslContext context, ClojureVar[] newVars) {
+        HashMap<String,Object> result = new HashMap<String,Object>();
+        Executor executor = this.executor != null ? this.executor : ClJDSL.getDefaultExecutor();
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[newVars.length];
+        int last = lastFnIndex(newVars);
+        for (int i = 0; i < newVars.length; i++) {
+            ClojureVar clojureVar = newVars[i];
+            if (result.containsKey(clojureVar.name)) {
+                throw new IllegalStateException("Cannot modify an existing var: " + clojureVar.name);
+            }
+            if (clojureVar.value instanceof ClojureFn && i != last) {
+                final ClojureFn fn = (ClojureFn) clojureVar.value;
+                pending[i] = CompletableFuture.supplyAsync(new Supplier<Object>() {
+                    public Object get() {
+                        return fn.invoke(context);
+                    }
+                }, executor);
+            }
+            result.put(clojureVar.name, clojureVar.value);
+        }
+
+        if (last >= 0) {
+            result.put(newVars[last].name, ((ClojureFn) newVars[last].value).invoke(context));
+        }
+        for (int i = 0; i < newVars.length; i++) {
+            if (pending[i] != null) {
+                result.put(newVars[i].name, await(pending[i]));
+            }
+        }
+        return result;
+    }
+
+    private int lastFnIndex(ClojureVar[] newVars) {
+        for (int i = newVars.length - 1; i >= 0; i--) {
+            if (newVars[i].value instanceof ClojureFn) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object await(CompletableFuture<?> value) {
+        try {
+            return value.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
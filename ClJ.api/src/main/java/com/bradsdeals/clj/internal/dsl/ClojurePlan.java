@@ -0,0 +1,63 @@
+package com.bradsdeals.clj.internal.dsl;
+
+import java.util.Map;
+
+import com.bradsdeals.clj.IClojure;
+
+/**
+ * An immutable, pre-resolved form of a ClJDSL block.  All namespace aliases and function names
+ * are resolved once when the plan is compiled and let variables are assigned fixed slots, so
+ * executing a plan performs no string handling or map lookups.  A plan may be executed any number
+ * of times, concurrently, with different inputs.
+ */
+public final class ClojurePlan {
+    private final PlanCompiler.Expr[] block;
+    private final int slotCount;
+    private final int arity;
+
+    ClojurePlan(PlanCompiler.Expr[] block, int slotCount, int arity) {
+        this.block = block;
+        this.slotCount = slotCount;
+        this.arity = arity;
+    }
+
+    /**
+     * Compile block into a plan.  Clients should use ClJDSL.compile.
+     *
+     * @param clojure The IClojure instance used to resolve and call functions.
+     * @param nsAliases A map from namespace alias to namespace.
+     * @param block The expressions to compile.
+     * @return The compiled plan.
+     */
+    public static ClojurePlan compile(IClojure clojure, Map<String, String> nsAliases, ClojureFn[] block) {
+        return new PlanCompiler(clojure, nsAliases).compile(block);
+    }
+
+    /**
+     * Return the number of inputs this plan expects.
+     * @return the number of inputs this plan expects.
+     */
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * Execute the plan.
+     *
+     * @param inputs The values referenced by arg(0), arg(1), ... in the original block.
+     * @param <T> The result type.
+     * @return The result of the last expression in the block.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object...inputs) {
+        if (inputs.length < arity) {
+            throw new IllegalArgumentException("Expected " + arity + " inputs but got " + inputs.length);
+        }
+        Object[] slots = new Object[slotCount];
+        Object result = null;
+        for (PlanCompiler.Expr expr : block) {
+            result = expr.eval(slots, inputs);
+        }
+        return (T) result;
+    }
+}
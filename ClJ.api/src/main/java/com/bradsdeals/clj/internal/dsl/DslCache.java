@@ -0,0 +1,80 @@
+package com.bradsdeals.clj.internal.dsl;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.bradsdeals.clj.IClojure;
+
+/**
+ * Per-runtime caches used by the DSL.  Runtimes implementing {@link Owner} keep their cache
+ * themselves, so looking it up takes no lock and concurrent DSL blocks never contend.  Caches for
+ * other runtimes are keyed weakly by their {@link IClojure} instance, so a runtime's cached
+ * functions are released along with the runtime.
+ */
+public final class DslCache {
+    private static final Map<IClojure, DslCache> caches = new WeakHashMap<IClojure, DslCache>();
+
+    final ConcurrentMap<String, Object> resolvedFns = new ConcurrentHashMap<String, Object>();
+    final ConcurrentMap<String, Object> compiledFns = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * A runtime that holds its own DslCache.  Private implementation detail.  Not for use by
+     * clients.
+     */
+    public interface Owner {
+        /**
+         * @return The DslCache this runtime created with {@link DslCache#create()}.
+         */
+        DslCache dslCache();
+    }
+
+    private DslCache() {
+        // Obtain instances via create or forRuntime
+    }
+
+    /**
+     * @return A new, empty DslCache for an {@link Owner} to keep.
+     */
+    public static DslCache create() {
+        return new DslCache();
+    }
+
+    /**
+     * Return the cache for the specified runtime, creating it if necessary.
+     *
+     * @param clojure The runtime.
+     * @return The runtime's DslCache.
+     */
+    public static DslCache forRuntime(IClojure clojure) {
+        if (clojure instanceof Owner) {
+            return ((Owner) clojure).dslCache();
+        }
+        synchronized (caches) {
+            DslCache cache = caches.get(clojure);
+            if (cache == null) {
+                cache = new DslCache();
+                caches.put(clojure, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Discard everything cached for the specified runtime.
+     *
+     * @param clojure The runtime.
+     */
+    public static void evict(IClojure clojure) {
+        if (clojure instanceof Owner) {
+            DslCache cache = ((Owner) clojure).dslCache();
+            cache.resolvedFns.clear();
+            cache.compiledFns.clear();
+            return;
+        }
+        synchronized (caches) {
+            caches.remove(clojure);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.bradsdeals.clj.internal.dsl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.bradsdeals.clj.IClojure;
+
+/**
+ * The state needed to execute a DSL block: the runtime to call, the block's namespace aliases,
+ * the runtime's function resolution cache and the let variables currently in scope.<p>
+ *
+ * DSL nodes are immutable and keep no per-execution state; everything they need is passed to
+ * them in a DslContext.  Contexts are immutable too: entering a let creates a new context whose
+ * scope points back to the enclosing one, so a single DSL block can be executed concurrently
+ * from many threads and against many runtimes.
+ */
+public final class DslContext {
+    private final IClojure clojure;
+    private final Map<String, String> nsAliases;
+    private final ConcurrentMap<String, Object> resolvedFns;
+    private final Map<String, Object> vars;
+    private final DslContext enclosing;
+
+    /**
+     * Construct a top-level DslContext with no variables in scope.
+     *
+     * @param clojure The runtime to execute against.
+     * @param nsAliases A map from namespace alias to namespace.
+     */
+    public DslContext(IClojure clojure, Map<String, String> nsAliases) {
+        this(clojure, nsAliases, DslCache.forRuntime(clojure).resolvedFns, null, null);
+    }
+
+    private DslContext(IClojure clojure, Map<String, String> nsAliases, ConcurrentMap<String, Object> resolvedFns,
+            Map<String, Object> vars, DslContext enclosing) {
+        this.clojure = clojure;
+        this.nsAliases = nsAliases;
+        this.resolvedFns = resolvedFns;
+        this.vars = vars;
+        this.enclosing = enclosing;
+    }
+
+    /**
+     * Return the runtime to execute against.
+     * @return the runtime to execute against.
+     */
+    public IClojure clojure() {
+        return clojure;
+    }
+
+    /**
+     * Return a new context with vars in scope, shadowing any enclosing variables with the same names.
+     *
+     * @param newVars The variables to add.  The map must not be modified afterwards.
+     * @return A new DslContext.
+     */
+    public DslContext withVars(Map<String, Object> newVars) {
+        return new DslContext(clojure, nsAliases, resolvedFns, newVars, this);
+    }
+
+    /**
+     * Return the value of the innermost variable named name, or null if no such variable is in scope.
+     *
+     * @param name The variable name.
+     * @return The variable's value or null.
+     */
+    public Object findVar(String name) {
+        for (DslContext scope = this; scope != null; scope = scope.enclosing) {
+            if (scope.vars != null && scope.vars.containsKey(name)) {
+                return scope.vars.get(name);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolve an alias-qualified (e.g. "str/replace") or unqualified function name to its Clojure
+     * Var.  Results are cached per runtime.
+     *
+     * @param name The function name.
+     * @return The function's Var or null if it cannot be resolved.
+     */
+    public Object resolveFn(String name) {
+        String qualified = name;
+        if (name.contains("/")) {
+            String[] parts = name.split("/");
+            String namespace = nsAliases.get(parts[0]);
+            if (namespace == null) {
+                throw new IllegalArgumentException(parts[0] + " is not aliased to any namespace in: " + name);
+            }
+            qualified = namespace + "/" + parts[1];
+        }
+        Object fn = resolvedFns.get(qualified);
+        if (fn == null) {
+            fn = clojure.var(qualified);
+            if (fn != null) {
+                resolvedFns.putIfAbsent(qualified, fn);
+            }
+        }
+        return fn;
+    }
+}
@@ -0,0 +1,212 @@
+package com.bradsdeals.clj.internal.dsl;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.bradsdeals.clj.IClojure;
+
+/**
+ * Compiles a ClJDSL block into a {@link ClojurePlan}.  Resolution follows the interpreted
+ * DSL's rules exactly, but happens once, at compile time.
+ */
+final class PlanCompiler {
+    private final IClojure clojure;
+    private final Map<String, String> nsAliases;
+    private final LinkedList<Map<String, Integer>> scopes = new LinkedList<Map<String, Integer>>();
+    private int slotCount = 0;
+    private int arity = 0;
+
+    PlanCompiler(IClojure clojure, Map<String, String> nsAliases) {
+        this.clojure = clojure;
+        this.nsAliases = nsAliases;
+    }
+
+    ClojurePlan compile(ClojureFn[] block) {
+        return new ClojurePlan(compileBlock(block), slotCount, arity);
+    }
+
+    private Expr[] compileBlock(ClojureFn[] block) {
+        Expr[] result = new Expr[block.length];
+        for (int i = 0; i < block.length; i++) {
+            result[i] = compile(block[i]);
+        }
+        return result;
+    }
+
+    private Expr compile(ClojureFn node) {
+        if (node instanceof ClojureFnInvocation) {
+            ClojureFnInvocation invocation = (ClojureFnInvocation) node;
+            Object[] args = invocation.args();
+            Expr[] argExprs = new Expr[args.length];
+            for (int i = 0; i < args.length; i++) {
+                argExprs[i] = compileArg(args[i]);
+            }
+            return new Invocation(clojure, compileFnName(invocation.name), argExprs);
+        } else if (node instanceof ClojureFnLiteral) {
+            return compileFnName(((ClojureFnLiteral) node).name);
+        } else if (node instanceof ClojureLet) {
+            return compileLet((ClojureLet) node);
+        } else if (node instanceof ClojureArg) {
+            int index = ((ClojureArg) node).index;
+            arity = Math.max(arity, index + 1);
+            return new Input(index);
+        }
+        throw new IllegalArgumentException("Cannot compile " + node.getClass().getName());
+    }
+
+    private Expr compileArg(Object arg) {
+        if (arg instanceof ClojureFn) {
+            return compile((ClojureFn) arg);
+        } else if (arg instanceof String) {
+            Integer slot = findSlot((String) arg);
+            if (slot != null) {
+                return new Slot(slot);
+            }
+        }
+        return new Constant(arg);
+    }
+
+    private Expr compileFnName(String name) {
+        Integer slot = findSlot(name);
+        if (slot != null) {
+            return new Slot(slot);
+        }
+        Object fn;
+        if (name.contains("/")) {
+            String[] parts = name.split("/");
+            String namespace = nsAliases.get(parts[0]);
+            if (namespace == null) {
+                throw new IllegalArgumentException(parts[0] + " is not aliased to any namespace in: " + name);
+            }
+            fn = clojure.var(namespace, parts[1]);
+        } else {
+            fn = clojure.var(name);
+        }
+        if (fn == null) {
+            throw new IllegalArgumentException("Could not find function: " + name);
+        }
+        return new Constant(fn);
+    }
+
+    private Expr compileLet(ClojureLet let) {
+        ClojureVar[] vars = let.vars();
+        Map<String, Integer> scope = new HashMap<String, Integer>();
+        int[] slots = new int[vars.length];
+        Expr[] values = new Expr[vars.length];
+        // Like the interpreted let, values are evaluated in the enclosing scope
+        for (int i = 0; i < vars.length; i++) {
+            if (scope.containsKey(vars[i].name)) {
+                throw new IllegalStateException("Cannot modify an existing var: " + vars[i].name);
+            }
+            values[i] = vars[i].value instanceof ClojureFn
+                    ? compile((ClojureFn) vars[i].value)
+                    : new Constant(vars[i].value);
+            slots[i] = slotCount++;
+            scope.put(vars[i].name, slots[i]);
+        }
+        scopes.addFirst(scope);
+        try {
+            return new Let(slots, values, compileBlock(let.block()));
+        } finally {
+            scopes.removeFirst();
+        }
+    }
+
+    private Integer findSlot(String name) {
+        for (Map<String, Integer> scope : scopes) {
+            Integer slot = scope.get(name);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Compiled expression nodes
+     */
+
+    abstract static class Expr {
+        abstract Object eval(Object[] slots, Object[] inputs);
+    }
+
+    private static final class Constant extends Expr {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        Object eval(Object[] slots, Object[] inputs) {
+            return value;
+        }
+    }
+
+    private static final class Slot extends Expr {
+        private final int slot;
+
+        Slot(int slot) {
+            this.slot = slot;
+        }
+
+        Object eval(Object[] slots, Object[] inputs) {
+            return slots[slot];
+        }
+    }
+
+    private static final class Input extends Expr {
+        private final int index;
+
+        Input(int index) {
+            this.index = index;
+        }
+
+        Object eval(Object[] slots, Object[] inputs) {
+            return inputs[index];
+        }
+    }
+
+    private static final class Invocation extends Expr {
+        private final IClojure clojure;
+        private final Expr fn;
+        private final Expr[] args;
+
+        Invocation(IClojure clojure, Expr fn, Expr[] args) {
+            this.clojure = clojure;
+            this.fn = fn;
+            this.args = args;
+        }
+
+        Object eval(Object[] slots, Object[] inputs) {
+            Object[] resolvedArgs = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                resolvedArgs[i] = args[i].eval(slots, inputs);
+            }
+            return clojure.invoke(fn.eval(slots, inputs), resolvedArgs);
+        }
+    }
+
+    private static final class Let extends Expr {
+        private final int[] slots;
+        private final Expr[] values;
+        private final Expr[] block;
+
+        Let(int[] slots, Expr[] values, Expr[] block) {
+            this.slots = slots;
+            this.values = values;
+            this.block = block;
+        }
+
+        Object eval(Object[] slotValues, Object[] inputs) {
+            for (int i = 0; i < slots.length; i++) {
+                slotValues[slots[i]] = values[i].eval(slotValues, inputs);
+            }
+            Object result = null;
+            for (Expr expr : block) {
+                result = expr.eval(slotValues, inputs);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.bradsdeals.clj.remote;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * A single-producer, single-consumer ring of length-prefixed messages in a shared memory mapping.
+ * The producer and consumer may be in different processes.  head and tail are ever-increasing
+ * byte counts in their own cache lines; each side publishes its counter with a release store and
+ * reads the other's with an acquire load, which orders the message bytes around them.<p>
+ *
+ * Records are an int header followed by the payload, padded to 8 bytes.  A record that would
+ * cross the end of the ring is preceded by a PADDING header filling the rest of the ring.  A
+ * message larger than half the ring is split into records flagged MORE, so any size fits.  Once
+ * the first record of a message is written or read the rest must follow, so interrupts and
+ * timeouts only apply before it.
+ */
+final class MappedRing {
+    static final int CONTROL_SIZE = 128;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int HEAD = 0;
+    private static final int TAIL = 64;
+    private static final int RECORD_HEADER = 4;
+    private static final int PADDING = -1;
+    private static final int MORE = 0x40000000;
+
+    private final ByteBuffer control;
+    private final int controlOffset;
+    private final ByteBuffer data;
+    private final int capacity;
+    private final int maxChunk;
+    private byte[] received = new byte[256];
+
+    /**
+     * @param mapping The shared mapping.
+     * @param controlOffset The offset of this ring's CONTROL_SIZE control block.
+     * @param dataOffset The offset of this ring's data.
+     * @param capacity The data size, a power of two of at least 64 bytes.
+     */
+    MappedRing(ByteBuffer mapping, int controlOffset, int dataOffset, int capacity) {
+        this.control = mapping;
+        this.controlOffset = controlOffset;
+        ByteBuffer region = mapping.duplicate();
+        region.position(dataOffset);
+        region.limit(dataOffset + capacity);
+        this.data = region.slice();
+        this.capacity = capacity;
+        this.maxChunk = capacity / 2 - RECORD_HEADER - 8;
+    }
+
+    /*
+     * Producer side.
+     */
+    void write(byte[] message, int length, SharedMemoryChannel.Peer peer) throws InterruptedException {
+        long head = (long) LONGS.getOpaque(control, controlOffset + HEAD);
+        int offset = 0;
+        boolean interrupted = false;
+        do {
+            int chunk = Math.min(length - offset, maxChunk);
+            boolean more = offset + chunk < length;
+            int recordSize = align(RECORD_HEADER + chunk);
+            int position = (int) (head & (capacity - 1));
+            int toEnd = capacity - position;
+            int needed = recordSize <= toEnd ? recordSize : toEnd + recordSize;
+            for (int attempt = 0; capacity - (head - (long) LONGS.getAcquire(control, controlOffset + TAIL)) < needed; attempt++) {
+                try {
+                    SharedMemoryChannel.pause(attempt, peer);
+                } catch (InterruptedException e) {
+                    if (offset == 0) {
+                        throw e;
+                    }
+                    interrupted = true;
+                }
+            }
+            if (recordSize > toEnd) {
+                data.putInt(position, PADDING);
+                head += toEnd;
+                position = 0;
+            }
+            data.putInt(position, more ? chunk | MORE : chunk);
+            ByteBuffer payload = data.duplicate();
+            payload.position(position + RECORD_HEADER);
+            payload.put(message, offset, chunk);
+            head += recordSize;
+            LONGS.setRelease(control, controlOffset + HEAD, head);
+            offset += chunk;
+        } while (offset < length);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Consumer side.  Waits for at most timeoutNanos, or without limit if it is negative, for a
+     * message to start arriving and returns null if none did.  The returned buffer is only valid
+     * until the next read.
+     */
+    ByteBuffer read(SharedMemoryChannel.Peer peer, long timeoutNanos) throws InterruptedException {
+        long tail = (long) LONGS.getOpaque(control, controlOffset + TAIL);
+        long deadline = System.nanoTime() + timeoutNanos;
+        boolean started = false;
+        boolean interrupted = false;
+        int size = 0;
+        while (true) {
+            for (int attempt = 0; (long) LONGS.getAcquire(control, controlOffset + HEAD) == tail; attempt++) {
+                if (!started && timeoutNanos >= 0 && System.nanoTime() - deadline >= 0) {
+                    return null;
+                }
+                try {
+                    SharedMemoryChannel.pause(attempt, peer);
+                } catch (InterruptedException e) {
+                    if (!started) {
+                        throw e;
+                    }
+                    interrupted = true;
+                }
+            }
+            int position = (int) (tail & (capacity - 1));
+            int header = data.getInt(position);
+            if (header == PADDING) {
+                tail += capacity - position;
+                LONGS.setRelease(control, controlOffset + TAIL, tail);
+                continue;
+            }
+            started = true;
+            int chunk = header & ~MORE;
+            if (size + chunk > received.length) {
+                received = Arrays.copyOf(received, Math.max(received.length * 2, size + chunk));
+            }
+            ByteBuffer payload = data.duplicate();
+            payload.position(position + RECORD_HEADER);
+            payload.get(received, size, chunk);
+            size += chunk;
+            tail += align(RECORD_HEADER + chunk);
+            LONGS.setRelease(control, controlOffset + TAIL, tail);
+            if ((header & MORE) == 0) {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return ByteBuffer.wrap(received, 0, size);
+            }
+        }
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,714 @@
+package com.bradsdeals.clj.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.bradsdeals.clj.ClJAnnotations.Require;
+import com.bradsdeals.clj.ClJException;
+import com.bradsdeals.clj.ClJTimeoutException;
+import com.bradsdeals.clj.ClojureBindings;
+import com.bradsdeals.clj.IClJ;
+import com.bradsdeals.clj.IClJMetrics;
+import com.bradsdeals.clj.ISlowCallSampler;
+import com.bradsdeals.clj.NamespaceLoadReport;
+import com.bradsdeals.clj.RuntimeFootprint;
+import com.bradsdeals.clj.transfer.BinaryDataReader;
+import com.bradsdeals.clj.transfer.BinaryDataWriter;
+import com.bradsdeals.clj.transfer.DataBuilder;
+import com.bradsdeals.clj.transfer.JavaDataBuilder;
+import com.bradsdeals.clj.transfer.JavaDataWalker;
+
+/**
+ * A Clojure runtime hosted in a child JVM, so a runaway tenant can exhaust its own heap or
+ * threads without taking down the caller.  Calls travel over a {@link SharedMemoryChannel} in
+ * the compact format of {@link BinaryDataWriter} rather than over a socket.  Create one with
+ * {@link com.bradsdeals.clj.ClJLoader#remoteClj(String[], File...)}.<p>
+ *
+ * Only data crosses the process boundary.  Arguments must be nil, Strings, numbers, Booleans,
+ * Characters, Maps, Sets, Collections or arrays of these; results arrive as the plain, unmodifiable
+ * Java data built by {@link JavaDataBuilder}, so keywords arrive as Strings.  Functions cannot be
+ * passed, so {@link #var(String)} returns the Var's name and {@link #invoke(Object, Object...)}
+ * accepts only names.  Dynamic bindings are kept per thread here and sent with each call.  The
+ * metrics and the slow-call sampler are the child's, read over the channel.  The pinned executor
+ * runs its tasks in this JVM.<p>
+ *
+ * One call is in flight per runtime at a time; concurrent callers queue.  If the child exits,
+ * every later call throws IllegalStateException.  A caller interrupted while waiting gives up on
+ * its call; the child still finishes it.  A child that does not answer within the deadline set by
+ * {@link #DEADLINE_PROPERTY} is stopped.  The child's output goes to a log file, see
+ * {@link #getLogFile()}, and the child is stopped if this JVM exits without closing it.
+ */
+public final class RemoteClJ implements IClJ {
+    /**
+     * The system property that sets how many seconds a call waits for the child to answer before
+     * the child is considered hung and stopped.  Calls with a timeout wait that much longer.
+     * Defaults to 600; zero or less waits forever.
+     */
+    public static final String DEADLINE_PROPERTY = "clj.remote.deadline.seconds";
+
+    // The same property sizes an in-process runtime's pinned executor
+    private static final String PINNED_THREADS_PROPERTY = "clj.pinned.threads";
+
+    private static final long START_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    private static final File SHARED_MEMORY = new File("/dev/shm");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Channel files still to delete when this JVM exits, by one shared shutdown hook
+    private static final Set<File> openChannels = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private static final AtomicBoolean cleanupRegistered = new AtomicBoolean();
+
+    private final Process process;
+    private final SharedMemoryChannel channel;
+    private final File logFile;
+    private final Thread shutdownHook;
+    private final String runtimeName;
+    private final long deadlineNanos = TimeUnit.SECONDS.toNanos(Long.getLong(DEADLINE_PROPERTY, 600L));
+    private final ReentrantLock callLock = new ReentrantLock();
+    // When each call a caller gave up on must be answered by; guarded by callLock
+    private final Deque<Long> abandonedDeadlines = new ArrayDeque<Long>();
+    private final ThreadLocal<Map<String, Object>> bindings = new ThreadLocal<Map<String, Object>>();
+    private final IClJMetrics metrics = new RemoteMetrics(this);
+    private final ISlowCallSampler slowCalls = new RemoteSlowCalls(this);
+    private ExecutorService pinnedExecutor;
+    private volatile boolean closed;
+
+    private final SharedMemoryChannel.Peer child = new SharedMemoryChannel.Peer() {
+        public void checkAlive() {
+            if (!process.isAlive()) {
+                closed = true;
+                delete(channel.getFile());
+                throw new IllegalStateException("Remote Clojure runtime " + runtimeName + " exited with status " + process.exitValue());
+            }
+        }
+    };
+
+    private RemoteClJ(final Process process, SharedMemoryChannel channel, File logFile) {
+        this.process = process;
+        this.channel = channel;
+        this.logFile = logFile;
+        this.runtimeName = "RemoteClJ@" + process.pid();
+        // A child busy with a long call would not notice this JVM exiting until the call returned
+        this.shutdownHook = new Thread("clj-remote-shutdown-" + process.pid()) {
+            public void run() {
+                process.destroyForcibly();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Start a child JVM hosting a Clojure runtime and wait until it is ready for calls.  The
+     * channel file is created in /dev/shm where it is available, otherwise in java.io.tmpdir.  The
+     * child's standard output and error go to a log file in java.io.tmpdir.
+     *
+     * @param jvmOptions Options for the child JVM, e.g.: "-Xmx512m".
+     * @param classpath The jars and directories holding ClJ.api, ClJ, Clojure and your Clojure code.
+     * @return The remote runtime.
+     * @throws IllegalStateException if the child cannot be started or does not become ready.
+     */
+    public static RemoteClJ start(String[] jvmOptions, File... classpath) {
+        File file = null;
+        SharedMemoryChannel channel = null;
+        File logFile = null;
+        Process process = null;
+        try {
+            file = File.createTempFile("clj-", ".channel", SHARED_MEMORY.isDirectory() && SHARED_MEMORY.canWrite() ? SHARED_MEMORY : null);
+            deleteOnExit(file);
+            channel = SharedMemoryChannel.create(file, SharedMemoryChannel.DEFAULT_CAPACITY);
+            List<String> command = new ArrayList<String>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.add("-XX:+ExitOnOutOfMemoryError");
+            command.addAll(Arrays.asList(jvmOptions));
+            command.add("-cp");
+            command.add(join(classpath));
+            command.add(RemoteProtocol.HOST_CLASS);
+            command.add(file.getPath());
+            command.add(Long.toString(ProcessHandle.current().pid()));
+            logFile = File.createTempFile("clj-remote-", ".log");
+            process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile)).start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot start remote Clojure runtime", e);
+        } finally {
+            if (process == null) {
+                discard(channel, file, logFile);
+            }
+        }
+        RemoteClJ clj = new RemoteClJ(process, channel, logFile);
+        try {
+            channel.awaitReady(START_TIMEOUT_NANOS, clj.child);
+        } catch (InterruptedException e) {
+            clj.process.destroyForcibly();
+            clj.destroy();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting remote Clojure runtime", e);
+        } catch (RuntimeException e) {
+            clj.destroy();
+            throw e;
+        }
+        return clj;
+    }
+
+    /*
+     * Release what start() made before the child was running.
+     */
+    private static void discard(SharedMemoryChannel channel, File file, File logFile) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Reporting the failure that got us here matters more
+            }
+        }
+        if (file != null) {
+            delete(file);
+        }
+        if (logFile != null) {
+            logFile.delete();
+        }
+    }
+
+    private static void deleteOnExit(File file) {
+        openChannels.add(file);
+        if (cleanupRegistered.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread("clj-remote-cleanup") {
+                public void run() {
+                    for (File channel : openChannels) {
+                        channel.delete();
+                    }
+                }
+            });
+        }
+    }
+
+    private static void delete(File file) {
+        file.delete();
+        openChannels.remove(file);
+    }
+
+    private static String join(File[] classpath) {
+        StringBuilder result = new StringBuilder();
+        for (File entry : classpath) {
+            if (result.length() > 0) {
+                result.append(File.pathSeparatorChar);
+            }
+            result.append(entry.getAbsolutePath());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the name that identifies this runtime, made from the child's process id.
+     * @return the runtime's name.
+     */
+    public String getRuntimeName() {
+        return runtimeName;
+    }
+
+    /**
+     * Return the child JVM's process.
+     * @return the child JVM's process.
+     */
+    public Process getProcess() {
+        return process;
+    }
+
+    /**
+     * Return the file receiving the child JVM's standard output and error.  It is kept after the
+     * runtime is closed unless it is empty.
+     *
+     * @return the child JVM's log file.
+     */
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#define(java.lang.Class, java.lang.String[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T define(Class<T> clojureInterface, String...loadPackages) {
+        Require requires = clojureInterface.getAnnotation(Require.class);
+        Map<String, String> nsAliases = computeNsAliases(requires != null ? requires.value() : new String[] {});
+        Set<String> required = new LinkedHashSet<String>(nsAliases.values());
+        call(RemoteProtocol.LOAD, loadPackages, required.toArray(new String[required.size()]));
+        return (T) Proxy.newProxyInstance(clojureInterface.getClassLoader(),
+                new Class<?>[] {clojureInterface}, new RemoteModule(this, clojureInterface, nsAliases));
+    }
+
+    private static Map<String, String> computeNsAliases(String[] aliases) {
+        Map<String,String> result = new HashMap<String, String>();
+        for (String alias : aliases) {
+            String[] parts = alias.split(" :as ");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expecting 'namespace :as alias' but found: " + alias);
+            }
+            result.put(parts[1], parts[0]);
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#require(java.lang.String[])
+     */
+    public NamespaceLoadReport require(String...namespaces) {
+        return report(call(RemoteProtocol.REQUIRE, namespaces));
+    }
+
+    static NamespaceLoadReport report(Object result) {
+        List<?> report = (List<?>) result;
+        Map<String, Long> loadTimesNanos = new LinkedHashMap<String, Long>();
+        for (Map.Entry<?, ?> load : ((Map<?, ?>) report.get(0)).entrySet()) {
+            loadTimesNanos.put((String) load.getKey(), ((Number) load.getValue()).longValue());
+        }
+        return new NamespaceLoadReport(loadTimesNanos, ((Number) report.get(1)).longValue(), ((Number) report.get(2)).intValue());
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#reload(java.lang.String[])
+     */
+    public void reload(String...namespaces) {
+        call(RemoteProtocol.RELOAD, namespaces);
+    }
+
+    /**
+     * Return an executor for work that calls this runtime.  Its threads are in this JVM, since
+     * the child's cannot run Java tasks; their calls still reach the child one at a time.  Each
+     * task starts without dynamic bindings.
+     *
+     * @see com.bradsdeals.clj.IClJ#pinnedExecutor()
+     */
+    public synchronized ExecutorService pinnedExecutor() {
+        if (pinnedExecutor == null) {
+            int size = Integer.getInteger(PINNED_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            pinnedExecutor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "clj-pinned-" + runtimeName + "-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return pinnedExecutor;
+    }
+
+    /**
+     * Return the child runtime's metrics.  Each method asks the child, waiting behind any call in
+     * flight.
+     *
+     * @see com.bradsdeals.clj.IClJ#metrics()
+     */
+    public IClJMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the child runtime's slow-call sampler.  Each method asks the child, waiting behind
+     * any call in flight.  Sampled latencies are measured in the child.
+     *
+     * @see com.bradsdeals.clj.IClJ#slowCalls()
+     */
+    public ISlowCallSampler slowCalls() {
+        return slowCalls;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#footprint()
+     */
+    public RuntimeFootprint footprint() {
+        List<?> footprint = (List<?>) call(RemoteProtocol.FOOTPRINT);
+        return new RuntimeFootprint(runtimeName,
+                ((Number) footprint.get(0)).intValue(),
+                ((Number) footprint.get(1)).intValue(),
+                ((Number) footprint.get(2)).intValue(),
+                ((Number) footprint.get(3)).intValue(),
+                ((Number) footprint.get(4)).longValue(),
+                (Boolean) footprint.get(5),
+                ((Number) footprint.get(6)).intValue(),
+                ((Number) footprint.get(7)).longValue());
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#transfer(java.lang.Object, com.bradsdeals.clj.IClJ)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T transfer(Object value, IClJ target) {
+        DataBuilder builder = target.dataBuilder();
+        JavaDataWalker.walk(value, builder);
+        return (T) builder.result();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#dataBuilder()
+     */
+    public DataBuilder dataBuilder() {
+        return new JavaDataBuilder();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#encode(java.lang.Object)
+     */
+    public byte[] encode(Object value) {
+        BinaryDataWriter writer = new BinaryDataWriter();
+        JavaDataWalker.walk(value, writer);
+        return writer.toByteArray();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#decode(byte[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes) {
+        DataBuilder builder = new JavaDataBuilder();
+        BinaryDataReader.read(ByteBuffer.wrap(bytes), builder);
+        return (T) builder.result();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#close()
+     */
+    public void close() {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = pinnedExecutor;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                // Queued tasks may still call the child
+                executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!closed) {
+            try {
+                call(RemoteProtocol.CLOSE);
+            } catch (RuntimeException e) {
+                // The child is already gone or broken; make sure of it below
+            }
+        }
+        destroy();
+    }
+
+    private void destroy() {
+        closed = true;
+        try {
+            if (!process.waitFor(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // This JVM is exiting, and the hook stops the child anyway
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more can be sent either way
+        }
+        delete(channel.getFile());
+        if (logFile.length() == 0) {
+            logFile.delete();
+        }
+    }
+
+    /**
+     * Return fullyQualifiedName.  Vars cannot leave the child JVM, so a remote runtime's functions
+     * are called by name and resolved in the child when they are first called.
+     *
+     * @see com.bradsdeals.clj.IClojure#var(java.lang.String)
+     */
+    public Object var(String fullyQualifiedName) {
+        return fullyQualifiedName;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#var(java.lang.String, java.lang.String)
+     */
+    public Object var(String namespace, String varName) {
+        return var(namespace + "/" + varName);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#invoke(java.lang.String, java.lang.Object[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T invoke(String fn, Object...args) {
+        return (T) invokeRemote(fn, args, -1L);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#invoke(java.lang.Object, java.lang.Object[])
+     */
+    public <T> T invoke(Object fn, Object...args) {
+        return invoke(name(fn), args);
+    }
+
+    /**
+     * Call fn with *out* and *err* bound to buffers in the child, then write what the function
+     * printed to out and err once it returns.
+     *
+     * @see com.bradsdeals.clj.IClojure#invokeWithOutput(java.io.Writer, java.io.Writer, java.lang.Object, java.lang.Object[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T invokeWithOutput(Writer out, Writer err, Object fn, Object...args) {
+        List<?> result = (List<?>) call(RemoteProtocol.INVOKE_WITH_OUTPUT, name(fn), args, bindings.get());
+        try {
+            if (out != null) {
+                out.write((String) result.get(1));
+            }
+            if (err != null) {
+                err.write((String) result.get(2));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write the output of " + fn, e);
+        }
+        return (T) result.get(0);
+    }
+
+    /**
+     * Call fn with *out* and *err* bound to buffers in the child, then write what the function
+     * printed to out and err as UTF-8 once it returns.  The streams are not flushed.
+     *
+     * @see com.bradsdeals.clj.IClojure#invokeWithOutput(java.io.OutputStream, java.io.OutputStream, java.lang.Object, java.lang.Object[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T invokeWithOutput(OutputStream out, OutputStream err, Object fn, Object...args) {
+        List<?> result = (List<?>) call(RemoteProtocol.INVOKE_WITH_OUTPUT, name(fn), args, bindings.get());
+        try {
+            if (out != null) {
+                out.write(((String) result.get(1)).getBytes(UTF_8));
+            }
+            if (err != null) {
+                err.write(((String) result.get(2)).getBytes(UTF_8));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write the output of " + fn, e);
+        }
+        return (T) result.get(0);
+    }
+
+    /**
+     * Prepare bindings keyed by Var name.  Values must be data that can be sent to the child.
+     * The child checks that each Var is dynamic when a call made with the bindings arrives.
+     *
+     * @see com.bradsdeals.clj.IClojure#bindings(java.util.Map)
+     */
+    public ClojureBindings bindings(Map<?, ?> bindings) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (Map.Entry<?, ?> binding : bindings.entrySet()) {
+            if (!(binding.getKey() instanceof String)) {
+                throw new IllegalArgumentException(binding.getKey() + " is not a Var name");
+            }
+            values.put((String) binding.getKey(), binding.getValue());
+        }
+        // Fail now rather than on every call
+        JavaDataWalker.walk(values, new BinaryDataWriter());
+        return new RemoteBindings(this, values);
+    }
+
+    /**
+     * Run call with the bindings added to this thread's, which are sent with every call it makes
+     * to the child.
+     *
+     * @see com.bradsdeals.clj.IClojure#withBindings(com.bradsdeals.clj.ClojureBindings, java.util.concurrent.Callable)
+     */
+    public <T> T withBindings(ClojureBindings bindings, Callable<T> call) {
+        if (!(bindings instanceof RemoteBindings) || ((RemoteBindings) bindings).owner != this) {
+            throw new IllegalArgumentException("Bindings were prepared by a different Clojure runtime");
+        }
+        Map<String, Object> outer = this.bindings.get();
+        Map<String, Object> frame = new LinkedHashMap<String, Object>();
+        if (outer != null) {
+            frame.putAll(outer);
+        }
+        frame.putAll(((RemoteBindings) bindings).values);
+        this.bindings.set(frame);
+        try {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ClJException("Exception calling Clojure", e);
+        } finally {
+            if (outer == null) {
+                this.bindings.remove();
+            } else {
+                this.bindings.set(outer);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#withBindings(java.util.Map, java.util.concurrent.Callable)
+     */
+    public <T> T withBindings(Map<?, ?> bindings, Callable<T> call) {
+        return withBindings(bindings(bindings), call);
+    }
+
+    private static final class RemoteBindings implements ClojureBindings {
+        final RemoteClJ owner;
+        final Map<String, Object> values;
+
+        RemoteBindings(RemoteClJ owner, Map<String, Object> values) {
+            this.owner = owner;
+            this.values = values;
+        }
+
+        public int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * The timeout is enforced by the child, which interrupts the function as an in-process
+     * runtime does.
+     *
+     * @see com.bradsdeals.clj.IClojure#invokeWithTimeout(long, java.util.concurrent.TimeUnit, java.lang.Object, java.lang.Object[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T invokeWithTimeout(long timeout, TimeUnit unit, Object fn, Object...args) {
+        return (T) invokeRemote(name(fn), args, unit.toNanos(timeout));
+    }
+
+    /*
+     * Call fn in the child with this thread's dynamic bindings.
+     */
+    Object invokeRemote(String fn, Object[] args, long timeoutNanos) {
+        return call(RemoteProtocol.INVOKE, fn, args, timeoutNanos, bindings.get());
+    }
+
+    private static String name(Object fn) {
+        if (!(fn instanceof String)) {
+            throw new IllegalArgumentException("A remote runtime calls functions by name, not " + fn);
+        }
+        return (String) fn;
+    }
+
+    /*
+     * Send one request and wait for its response.  The lock keeps each request and response
+     * adjacent in the rings.  The responses to calls whose caller was interrupted are still in
+     * the inbound ring, so they are skipped first.
+     */
+    Object call(Object... request) {
+        BinaryDataWriter writer = new BinaryDataWriter();
+        JavaDataWalker.walk(request, writer);
+        List<?> response;
+        try {
+            callLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+        try {
+            if (closed) {
+                throw new IllegalStateException("Remote Clojure runtime " + runtimeName + " is closed");
+            }
+            while (!abandonedDeadlines.isEmpty()) {
+                receive(abandonedDeadlines.peek());
+                abandonedDeadlines.remove();
+            }
+            channel.send(writer.toByteArray(), child);
+            long deadline = deadline(request);
+            ByteBuffer message;
+            try {
+                message = receive(deadline);
+            } catch (InterruptedException e) {
+                abandonedDeadlines.add(deadline);
+                throw e;
+            }
+            JavaDataBuilder builder = new JavaDataBuilder();
+            BinaryDataReader.read(message, builder);
+            response = (List<?>) builder.result();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        } finally {
+            callLock.unlock();
+        }
+        long status = ((Number) response.get(0)).longValue();
+        if (status == RemoteProtocol.OK) {
+            return response.get(1);
+        } else if (status == RemoteProtocol.TIMEOUT) {
+            throw new ClJTimeoutException((String) response.get(1), ((Number) response.get(2)).longValue());
+        }
+        throw error((String) response.get(1), (String) response.get(2), (String) response.get(3), (Map<?, ?>) response.get(4));
+    }
+
+    private long deadline(Object[] request) {
+        long timeoutNanos = request[0].equals(RemoteProtocol.INVOKE) ? Math.max(0L, ((Number) request[3]).longValue()) : 0L;
+        return deadlineNanos <= 0 ? Long.MAX_VALUE : System.nanoTime() + deadlineNanos + timeoutNanos;
+    }
+
+    /*
+     * A child that misses the deadline cannot be trusted to answer in order any more.
+     */
+    private ByteBuffer receive(long deadline) throws InterruptedException {
+        ByteBuffer message = deadline == Long.MAX_VALUE ? channel.receive(child) : channel.receive(child, deadline - System.nanoTime());
+        if (message == null) {
+            process.destroyForcibly();
+            destroy();
+            throw new IllegalStateException("Remote Clojure runtime " + runtimeName + " did not answer within "
+                    + TimeUnit.NANOSECONDS.toSeconds(deadlineNanos) + "s and was stopped; " + DEADLINE_PROPERTY + " sets the limit");
+        }
+        return message;
+    }
+
+    private static RuntimeException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new RuntimeException("Interrupted while calling Clojure", e);
+    }
+
+    /*
+     * The child's exception cannot be rebuilt here, so its class is named in the message; ex-info
+     * errors keep their type and data as an in-process ClJException does.
+     */
+    private static ClJException error(String message, String className, String type, Map<?, ?> data) {
+        if (data == null) {
+            return new ClJException(className + ": " + message, null);
+        }
+        Map<String, Object> stringKeys = new LinkedHashMap<String, Object>();
+        for (Map.Entry<?, ?> entry : data.entrySet()) {
+            stringKeys.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return new ClJException(message, null, type, stringKeys, true);
+    }
+
+    @Override
+    public String toString() {
+        return runtimeName;
+    }
+}
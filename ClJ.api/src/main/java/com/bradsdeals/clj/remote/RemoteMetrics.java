@@ -0,0 +1,133 @@
+package com.bradsdeals.clj.remote;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bradsdeals.clj.FunctionStats;
+import com.bradsdeals.clj.IClJMetrics;
+import com.bradsdeals.clj.MemoStats;
+import com.bradsdeals.clj.NamespaceLoadReport;
+
+/**
+ * Private implementation detail of {@link RemoteClJ#metrics()}.  Not for use by clients.<p>
+ *
+ * Each method asks the child for its runtime's current value, so it waits behind any call in
+ * flight.  Statistics arrive as vectors of numbers in constructor order.
+ */
+final class RemoteMetrics implements IClJMetrics {
+    private final RemoteClJ clj;
+
+    RemoteMetrics(RemoteClJ clj) {
+        this.clj = clj;
+    }
+
+    private Object call(String method, Object... args) {
+        Object[] request = new Object[args.length + 2];
+        request[0] = RemoteProtocol.METRICS;
+        request[1] = method;
+        System.arraycopy(args, 0, request, 2, args.length);
+        return clj.call(request);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#isEnabled()
+     */
+    public boolean isEnabled() {
+        return (Boolean) call("isEnabled");
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#setEnabled(boolean)
+     */
+    public void setEnabled(boolean enabled) {
+        call("setEnabled", enabled);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#functionStats()
+     */
+    public Map<String, FunctionStats> functionStats() {
+        Map<String, FunctionStats> result = new LinkedHashMap<String, FunctionStats>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) call("functionStats")).entrySet()) {
+            String name = (String) entry.getKey();
+            List<?> stats = (List<?>) entry.getValue();
+            result.put(name, new FunctionStats(name, longAt(stats, 0), longAt(stats, 1), longAt(stats, 2), longAt(stats, 3),
+                    longAt(stats, 4), longAt(stats, 5), longAt(stats, 6), longAt(stats, 7)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#namespaceLoadTimesNanos()
+     */
+    public Map<String, Long> namespaceLoadTimesNanos() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) call("namespaceLoadTimesNanos")).entrySet()) {
+            result.put((String) entry.getKey(), ((Number) entry.getValue()).longValue());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#lastNamespaceLoadReport()
+     */
+    public NamespaceLoadReport lastNamespaceLoadReport() {
+        Object report = call("lastNamespaceLoadReport");
+        return report == null ? null : RemoteClJ.report(report);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#varCacheHits()
+     */
+    public long varCacheHits() {
+        return ((Number) call("varCacheHits")).longValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#varCacheMisses()
+     */
+    public long varCacheMisses() {
+        return ((Number) call("varCacheMisses")).longValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#memoStats()
+     */
+    public Map<String, MemoStats> memoStats() {
+        Map<String, MemoStats> result = new LinkedHashMap<String, MemoStats>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) call("memoStats")).entrySet()) {
+            String name = (String) entry.getKey();
+            List<?> stats = (List<?>) entry.getValue();
+            result.put(name, new MemoStats(name, longAt(stats, 0), longAt(stats, 1), longAt(stats, 2), longAt(stats, 3),
+                    longAt(stats, 4), longAt(stats, 5)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#abandonedCalls()
+     */
+    public long abandonedCalls() {
+        return ((Number) call("abandonedCalls")).longValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#runningAbandonedCalls()
+     */
+    public int runningAbandonedCalls() {
+        return ((Number) call("runningAbandonedCalls")).intValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJMetrics#reset()
+     */
+    public void reset() {
+        call("reset");
+    }
+
+    static long longAt(List<?> values, int index) {
+        return ((Number) values.get(index)).longValue();
+    }
+}
@@ -0,0 +1,109 @@
+package com.bradsdeals.clj.remote;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.bradsdeals.clj.ClJAnnotations.Ns;
+import com.bradsdeals.clj.ClJAnnotations.Timeout;
+
+/**
+ * Private implementation detail for interfaces defined by a {@link RemoteClJ}.  Not for use by
+ * clients.<p>
+ *
+ * Each method calls its function by name in the child.  Results are the Java data the call
+ * decodes to, narrowed to the method's declared return type where that is a number, a primitive
+ * array or an Optional.
+ */
+final class RemoteModule implements InvocationHandler {
+    private final RemoteClJ clj;
+    private final Class<?> clojureInterface;
+    private final Map<Method, String> fnNames = new HashMap<Method, String>();
+    private final Map<Method, Long> timeoutsNanos = new HashMap<Method, Long>();
+
+    RemoteModule(RemoteClJ clj, Class<?> clojureInterface, Map<String, String> nsAliases) {
+        this.clj = clj;
+        this.clojureInterface = clojureInterface;
+        for (Method method : clojureInterface.getMethods()) {
+            String namespace = "clojure.core";
+            Ns alias = method.getAnnotation(Ns.class);
+            if (alias != null) {
+                namespace = nsAliases.get(alias.value());
+                if (namespace == null) {
+                    throw new IllegalStateException(alias.value() + " is not aliased to any namespace.");
+                }
+            }
+            fnNames.put(method, namespace + "/" + method.getName());
+            Timeout timeout = method.getAnnotation(Timeout.class);
+            if (timeout != null) {
+                timeoutsNanos.put(method, timeout.unit().toNanos(timeout.value()));
+            }
+        }
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String fn = fnNames.get(method);
+        if (fn == null) {
+            return objectMethod(proxy, method, args);
+        }
+        Long timeoutNanos = timeoutsNanos.get(method);
+        Object result = clj.invokeRemote(fn, args == null ? new Object[0] : args, timeoutNanos == null ? -1L : timeoutNanos);
+        return coerce(method.getReturnType(), result, fn);
+    }
+
+    private Object objectMethod(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        } else if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        return clojureInterface.getName() + " in " + clj;
+    }
+
+    /*
+     * Decoded integers are Longs and decoded floating point numbers are Doubles; everything else
+     * must already be an instance of the declared type.
+     */
+    private static Object coerce(Class<?> type, Object value, String fn) {
+        if (type == void.class) {
+            return null;
+        } else if (value == null) {
+            if (type.isPrimitive()) {
+                throw new NullPointerException(fn + " returned nil, which cannot be returned as a " + type.getName());
+            }
+            return type == Optional.class ? Optional.empty() : null;
+        } else if (type == Optional.class) {
+            return Optional.of(value);
+        } else if (value instanceof Number && type != Object.class && !type.isInstance(value)) {
+            Number number = (Number) value;
+            if (type == int.class || type == Integer.class) {
+                return Math.toIntExact(number.longValue());
+            } else if (type == long.class || type == Long.class) {
+                return number.longValue();
+            } else if (type == double.class || type == Double.class) {
+                return number.doubleValue();
+            } else if (type == float.class || type == Float.class) {
+                return number.floatValue();
+            } else if ((type == short.class || type == Short.class) && number.longValue() == number.shortValue()) {
+                return number.shortValue();
+            } else if ((type == byte.class || type == Byte.class) && number.longValue() == number.byteValue()) {
+                return number.byteValue();
+            }
+        } else if (type.isArray() && value instanceof List) {
+            List<?> elements = (List<?>) value;
+            Object array = Array.newInstance(type.getComponentType(), elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(array, i, coerce(type.getComponentType(), elements.get(i), fn));
+            }
+            return array;
+        } else if (type.isInstance(value) || type.isPrimitive()) {
+            // Booleans and Characters; the proxy checks the wrapper type of primitives
+            return value;
+        }
+        throw new ClassCastException(fn + " returned a " + value.getClass().getName() + ", which cannot be returned as a " + type.getName());
+    }
+}
@@ -0,0 +1,46 @@
+package com.bradsdeals.clj.remote;
+
+/**
+ * The messages {@link RemoteClJ} exchanges with the child JVM hosting its runtime.  Shared by
+ * both ends; not for use by clients.<p>
+ *
+ * Every message is one value in the {@link com.bradsdeals.clj.transfer.BinaryDataWriter} format.
+ * A request is a vector whose first element is the operation:
+ * <ul>
+ * <li><code>[INVOKE fn-name args timeout-nanos bindings]</code>, with a negative timeout for none
+ *     and a map from dynamic Var names to values, or nil, as bindings.
+ * <li><code>[INVOKE_WITH_OUTPUT fn-name args bindings]</code>, answered with <code>[result out err]</code>.
+ * <li><code>[LOAD load-paths namespaces]</code> and <code>[REQUIRE namespaces]</code>, answered
+ *     with <code>[load-times-nanos wall-nanos threads]</code>.
+ * <li><code>[RELOAD namespaces]</code>, <code>[FOOTPRINT]</code> and <code>[CLOSE]</code>.
+ * <li><code>[METRICS method args...]</code> and <code>[SLOW_CALLS method args...]</code> call the
+ *     named method of the child runtime's {@link com.bradsdeals.clj.IClJMetrics} or
+ *     {@link com.bradsdeals.clj.ISlowCallSampler}, answered with the result as data.
+ * </ul>
+ * A response is <code>[OK value]</code>, <code>[ERROR message class-name type data]</code> or
+ * <code>[TIMEOUT fn-name timeout-nanos]</code>.
+ */
+public final class RemoteProtocol {
+    /**
+     * The child JVM's main class.  Its arguments are the channel file and the parent's pid.
+     */
+    public static final String HOST_CLASS = "com.bradsdeals.clj.remote.RemoteRuntimeHost";
+
+    public static final long INVOKE = 0;
+    public static final long INVOKE_WITH_OUTPUT = 1;
+    public static final long LOAD = 2;
+    public static final long REQUIRE = 3;
+    public static final long RELOAD = 4;
+    public static final long FOOTPRINT = 5;
+    public static final long CLOSE = 6;
+    public static final long METRICS = 7;
+    public static final long SLOW_CALLS = 8;
+
+    public static final long OK = 0;
+    public static final long ERROR = 1;
+    public static final long TIMEOUT = 2;
+
+    private RemoteProtocol() {
+        // Constants only
+    }
+}
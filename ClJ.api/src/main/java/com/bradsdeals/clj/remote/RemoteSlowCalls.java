@@ -0,0 +1,90 @@
+package com.bradsdeals.clj.remote;
+
+import static com.bradsdeals.clj.remote.RemoteMetrics.longAt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.bradsdeals.clj.ISlowCallSampler;
+import com.bradsdeals.clj.SlowCall;
+
+/**
+ * Private implementation detail of {@link RemoteClJ#slowCalls()}.  Not for use by clients.<p>
+ *
+ * The child samples the calls it runs, so latencies exclude the trip through the channel.  Each
+ * sample arrives as <code>[function-name argument-shapes thread-name elapsed-nanos
+ * timestamp-millis failed]</code>.
+ */
+final class RemoteSlowCalls implements ISlowCallSampler {
+    private final RemoteClJ clj;
+
+    RemoteSlowCalls(RemoteClJ clj) {
+        this.clj = clj;
+    }
+
+    private Object call(String method, Object... args) {
+        Object[] request = new Object[args.length + 2];
+        request[0] = RemoteProtocol.SLOW_CALLS;
+        request[1] = method;
+        System.arraycopy(args, 0, request, 2, args.length);
+        return clj.call(request);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#enable(long, java.util.concurrent.TimeUnit, int)
+     */
+    public void enable(long threshold, TimeUnit unit, int maxSamplesPerSecond) {
+        call("enable", unit.toNanos(threshold), (long) maxSamplesPerSecond);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#disable()
+     */
+    public void disable() {
+        call("disable");
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#isEnabled()
+     */
+    public boolean isEnabled() {
+        return (Boolean) call("isEnabled");
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#samples()
+     */
+    public List<SlowCall> samples() {
+        List<SlowCall> result = new ArrayList<SlowCall>();
+        for (Object value : (List<?>) call("samples")) {
+            List<?> sample = (List<?>) value;
+            List<?> shapes = (List<?>) sample.get(1);
+            result.add(new SlowCall((String) sample.get(0), shapes.toArray(new String[shapes.size()]), (String) sample.get(2),
+                    longAt(sample, 3), longAt(sample, 4), (Boolean) sample.get(5)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#droppedSamples()
+     */
+    public long droppedSamples() {
+        return ((Number) call("droppedSamples")).longValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#capacity()
+     */
+    public int capacity() {
+        return ((Number) call("capacity")).intValue();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#clear()
+     */
+    public void clear() {
+        call("clear");
+    }
+}
@@ -0,0 +1,229 @@
+package com.bradsdeals.clj.remote;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A two-way message channel between two processes on one host, over a memory-mapped file.  Each
+ * direction is a single-producer, single-consumer ring buffer, so each end must send from one
+ * thread at a time and receive from one thread at a time.  Put the file on a memory-backed file
+ * system such as <code>/dev/shm</code> to keep the kernel from writing it back to disk.<p>
+ *
+ * There is no cross-process wakeup, so a waiting end spins briefly, then yields, then parks for
+ * increasing intervals.  An end that has been idle for a while takes up to
+ * {@link #IDLE_PARK_NANOS} to notice a new message.  While waiting, each end periodically asks its
+ * {@link Peer} whether the other end is still alive.  Waiting is interruptible, except while the
+ * rest of a message that has been partly sent or received is still in transit.<p>
+ *
+ * The file starts with a header holding a magic number, the format version, the ring capacity
+ * and a ready flag, followed by each ring's control block and data.
+ */
+public final class SharedMemoryChannel implements Closeable {
+    /**
+     * The default size of each direction's ring, in bytes.  Larger messages are split.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * The longest a waiting end parks between checks for a new message.
+     */
+    public static final long IDLE_PARK_NANOS = 1000000L;
+
+    /**
+     * Checks that the other end of a channel is still there.
+     */
+    public interface Peer {
+        /**
+         * @throws IllegalStateException if the other end has gone away.
+         */
+        void checkAlive();
+    }
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int MAGIC = 0x436c4a52;
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int READY_OFFSET = 16;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final int SHORT_PARKS = 2000;
+    private static final long SHORT_PARK_NANOS = 20000L;
+    private static final int CHECK_PEER_EVERY = 64;
+
+    private final File file;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mapping;
+    private final MappedRing outbound;
+    private final MappedRing inbound;
+
+    private SharedMemoryChannel(File file, FileChannel fileChannel, MappedByteBuffer mapping, int capacity, boolean creator) {
+        this.file = file;
+        this.fileChannel = fileChannel;
+        this.mapping = mapping;
+        int firstControl = HEADER_SIZE;
+        int secondControl = firstControl + MappedRing.CONTROL_SIZE;
+        int firstData = secondControl + MappedRing.CONTROL_SIZE;
+        int secondData = firstData + capacity;
+        MappedRing first = new MappedRing(mapping, firstControl, firstData, capacity);
+        MappedRing second = new MappedRing(mapping, secondControl, secondData, capacity);
+        // The creator sends on the first ring; the end that opens the file sends on the second.
+        this.outbound = creator ? first : second;
+        this.inbound = creator ? second : first;
+    }
+
+    /**
+     * Create a channel file and map it.  The other end opens it with {@link #open(File)}.
+     *
+     * @param file The file to create or overwrite.
+     * @param capacity The size of each direction's ring in bytes; rounded up to a power of two.
+     * @return The creating end of the channel.
+     * @throws IOException if the file cannot be created or mapped.
+     */
+    public static SharedMemoryChannel create(File file, int capacity) throws IOException {
+        int ringSize = Integer.highestOneBit((Math.max(4096, capacity) - 1) << 1);
+        long size = HEADER_SIZE + 2L * MappedRing.CONTROL_SIZE + 2L * ringSize;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(size);
+            FileChannel fileChannel = raf.getChannel();
+            MappedByteBuffer mapping = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapping.putInt(VERSION_OFFSET, VERSION);
+            mapping.putInt(CAPACITY_OFFSET, ringSize);
+            mapping.putInt(MAGIC_OFFSET, MAGIC);
+            return new SharedMemoryChannel(file, fileChannel, mapping, ringSize, true);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a channel file made by {@link #create(File, int)}.
+     *
+     * @param file The channel file.
+     * @return The opening end of the channel.
+     * @throws IOException if the file cannot be mapped or is not a channel file.
+     */
+    public static SharedMemoryChannel open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel fileChannel = raf.getChannel();
+            MappedByteBuffer mapping = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileChannel.size());
+            if (mapping.getInt(MAGIC_OFFSET) != MAGIC || mapping.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " channel file");
+            }
+            return new SharedMemoryChannel(file, fileChannel, mapping, mapping.getInt(CAPACITY_OFFSET), false);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the channel file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Send a message, waiting for room in the ring if the other end is behind.  Once part of the
+     * message is in the ring the rest is sent regardless of interrupts, which are then left
+     * pending on the thread.
+     *
+     * @param message The message bytes.
+     * @param peer Checks that the other end is still there while waiting.
+     * @throws InterruptedException if interrupted before any of the message was sent.
+     */
+    public void send(byte[] message, Peer peer) throws InterruptedException {
+        outbound.write(message, message.length, peer);
+    }
+
+    /**
+     * Wait for the next message.
+     *
+     * @param peer Checks that the other end is still there while waiting.
+     * @return The message, valid until the next call to receive.
+     * @throws InterruptedException if interrupted before the message started to arrive.
+     */
+    public ByteBuffer receive(Peer peer) throws InterruptedException {
+        return inbound.read(peer, -1L);
+    }
+
+    /**
+     * Wait for the next message, for at most timeoutNanos before it starts to arrive.
+     *
+     * @param peer Checks that the other end is still there while waiting.
+     * @param timeoutNanos How long to wait.
+     * @return The message, valid until the next call to receive, or null if none arrived in time.
+     * @throws InterruptedException if interrupted before the message started to arrive.
+     */
+    public ByteBuffer receive(Peer peer, long timeoutNanos) throws InterruptedException {
+        return inbound.read(peer, Math.max(0L, timeoutNanos));
+    }
+
+    /**
+     * Tell the creating end that this end is ready to receive.
+     */
+    public void markReady() {
+        LONGS.setRelease(mapping, READY_OFFSET, 1L);
+    }
+
+    /**
+     * Wait for the other end to call {@link #markReady()}.
+     *
+     * @param timeoutNanos How long to wait.
+     * @param peer Checks that the other end is still there while waiting.
+     * @throws IllegalStateException if the other end is not ready in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitReady(long timeoutNanos, Peer peer) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (int attempt = 0; (long) LONGS.getAcquire(mapping, READY_OFFSET) == 0L; attempt++) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Channel peer was not ready within " + (timeoutNanos / 1000000) + "ms");
+            }
+            pause(attempt, peer);
+        }
+    }
+
+    /**
+     * Close the file.  The mapping is released when it is garbage collected.
+     */
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /*
+     * Wait between polls: spin, then yield, then park briefly, then park for IDLE_PARK_NANOS.
+     */
+    static void pause(int attempt, Peer peer) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(attempt < SPINS + YIELDS + SHORT_PARKS ? SHORT_PARK_NANOS : IDLE_PARK_NANOS);
+            if (attempt % CHECK_PEER_EVERY == 0) {
+                peer.checkAlive();
+            }
+        }
+    }
+}
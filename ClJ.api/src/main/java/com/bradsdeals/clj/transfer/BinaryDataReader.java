@@ -0,0 +1,217 @@
+package com.bradsdeals.clj.transfer;
+
+import static com.bradsdeals.clj.transfer.BinaryDataWriter.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a value encoded by {@link BinaryDataWriter} and replays it into a {@link DataVisitor},
+ * usually a runtime's {@link DataBuilder}.  Not thread safe.
+ */
+public final class BinaryDataReader {
+    /**
+     * The deepest nesting of collections accepted, so hostile or corrupt input cannot exhaust the
+     * reading thread's stack.
+     */
+    public static final int MAX_DEPTH = 512;
+
+    private final ByteBuffer in;
+    private final List<String[]> keywords = new ArrayList<String[]>();
+    private final List<String[]> symbols = new ArrayList<String[]>();
+
+    private BinaryDataReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    /**
+     * Read one value from in, starting at its position, and replay it into visitor.  On return,
+     * in is positioned after the value.
+     *
+     * @param in The encoded value.
+     * @param visitor The visitor receiving the value.
+     * @throws IllegalArgumentException if in does not hold a value in a supported format, or
+     *         nests collections more than {@link #MAX_DEPTH} deep.
+     */
+    public static void read(ByteBuffer in, DataVisitor visitor) {
+        try {
+            byte version = in.get();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported data format version: " + version);
+            }
+            new BinaryDataReader(in).readValue(visitor, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated data", e);
+        }
+    }
+
+    private void readValue(DataVisitor visitor, int depth) {
+        byte tag = in.get();
+        if (tag >= MAP && tag <= LIST && depth == MAX_DEPTH) {
+            throw new IllegalArgumentException("Data nested more than " + MAX_DEPTH + " deep at offset " + (in.position() - 1));
+        }
+        switch (tag) {
+        case NIL:
+            visitor.value(null);
+            break;
+        case TRUE:
+            visitor.value(Boolean.TRUE);
+            break;
+        case FALSE:
+            visitor.value(Boolean.FALSE);
+            break;
+        case LONG:
+            visitor.value(Long.valueOf(readSignedVarint()));
+            break;
+        case DOUBLE:
+            visitor.value(Double.valueOf(Double.longBitsToDouble(in.getLong())));
+            break;
+        case STRING:
+            visitor.value(readString());
+            break;
+        case KEYWORD:
+            String[] keyword = readName(keywords);
+            visitor.keyword(keyword[0], keyword[1]);
+            break;
+        case KEYWORD_REF:
+            keyword = readRef(keywords);
+            visitor.keyword(keyword[0], keyword[1]);
+            break;
+        case SYMBOL:
+            String[] symbol = readName(symbols);
+            visitor.symbol(symbol[0], symbol[1]);
+            break;
+        case SYMBOL_REF:
+            symbol = readRef(symbols);
+            visitor.symbol(symbol[0], symbol[1]);
+            break;
+        case BIG_INT:
+            visitor.bigInt(new BigInteger(readBytes()));
+            break;
+        case RATIO:
+            BigInteger numerator = new BigInteger(readBytes());
+            visitor.ratio(numerator, new BigInteger(readBytes()));
+            break;
+        case MAP:
+            int size = readCount();
+            visitor.beginMap(size);
+            for (int i = 0; i < size; i++) {
+                readValue(visitor, depth + 1);
+                readValue(visitor, depth + 1);
+            }
+            visitor.endMap();
+            break;
+        case VECTOR:
+            size = readCount();
+            visitor.beginVector(size);
+            for (int i = 0; i < size; i++) {
+                readValue(visitor, depth + 1);
+            }
+            visitor.endVector();
+            break;
+        case SET:
+            size = readCount();
+            visitor.beginSet(size);
+            for (int i = 0; i < size; i++) {
+                readValue(visitor, depth + 1);
+            }
+            visitor.endSet();
+            break;
+        case LIST:
+            size = readCount();
+            visitor.beginList(size);
+            for (int i = 0; i < size; i++) {
+                readValue(visitor, depth + 1);
+            }
+            visitor.endList();
+            break;
+        case INTEGER:
+            visitor.value(Integer.valueOf((int) readSignedVarint()));
+            break;
+        case SHORT:
+            visitor.value(Short.valueOf((short) readSignedVarint()));
+            break;
+        case BYTE:
+            visitor.value(Byte.valueOf(in.get()));
+            break;
+        case FLOAT:
+            visitor.value(Float.valueOf(Float.intBitsToFloat(in.getInt())));
+            break;
+        case CHARACTER:
+            visitor.value(Character.valueOf((char) readVarint()));
+            break;
+        case BIG_INTEGER:
+            visitor.value(new BigInteger(readBytes()));
+            break;
+        case BIG_DECIMAL:
+            int scale = (int) readSignedVarint();
+            visitor.value(new BigDecimal(new BigInteger(readBytes()), scale));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown data tag " + tag + " at offset " + (in.position() - 1));
+        }
+    }
+
+    private String[] readName(List<String[]> table) {
+        String ns = readCount() == 0 ? null : readString();
+        String[] name = { ns, readString() };
+        table.add(name);
+        return name;
+    }
+
+    private String[] readRef(List<String[]> table) {
+        long index = readVarint();
+        if (index < 0 || index >= table.size()) {
+            throw new IllegalArgumentException("Invalid reference " + index + " at offset " + in.position());
+        }
+        return table.get((int) index);
+    }
+
+    private String readString() {
+        int length = readCount();
+        if (in.hasArray()) {
+            String result = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+            in.position(in.position() + length);
+            return result;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private byte[] readBytes() {
+        byte[] bytes = new byte[readCount()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private int readCount() {
+        long count = readVarint();
+        // Every element and every byte of a string takes at least one byte
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Invalid count " + count + " at offset " + in.position());
+        }
+        return (int) count;
+    }
+
+    private long readSignedVarint() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at offset " + in.position());
+    }
+}
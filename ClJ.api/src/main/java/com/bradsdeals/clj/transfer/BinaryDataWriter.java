@@ -0,0 +1,321 @@
+package com.bradsdeals.clj.transfer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link DataVisitor} that encodes a Clojure value in a compact binary format, read back by
+ * {@link BinaryDataReader}.<p>
+ *
+ * The encoding is a format version byte followed by the value.  Each value is a tag byte followed
+ * by its payload.  Lengths and counts are unsigned varints, and integers are zigzag varints, so
+ * small numbers take one or two bytes.  Collections are a count followed by their elements.
+ * Keywords and symbols are written in full the first time they appear and as a varint
+ * back-reference after that, so repeated map keys cost a byte or two.<p>
+ *
+ * Only data can be encoded: nil, Strings, Booleans, Characters, the JDK's numbers, keywords,
+ * symbols, BigInts, Ratios and Clojure collections.  Any other value is rejected with an
+ * IllegalArgumentException.<p>
+ *
+ * A writer holds one value and is not thread safe.
+ */
+public final class BinaryDataWriter implements DataVisitor {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final byte FORMAT_VERSION = 1;
+
+    static final byte NIL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte KEYWORD = 6;
+    static final byte KEYWORD_REF = 7;
+    static final byte SYMBOL = 8;
+    static final byte SYMBOL_REF = 9;
+    static final byte BIG_INT = 10;
+    static final byte RATIO = 11;
+    static final byte MAP = 12;
+    static final byte VECTOR = 13;
+    static final byte SET = 14;
+    static final byte LIST = 15;
+    static final byte INTEGER = 16;
+    static final byte SHORT = 17;
+    static final byte BYTE = 18;
+    static final byte FLOAT = 19;
+    static final byte CHARACTER = 20;
+    static final byte BIG_INTEGER = 21;
+    static final byte BIG_DECIMAL = 22;
+
+    private byte[] buffer;
+    private int size;
+    private final Map<Object, Integer> keywords = new HashMap<Object, Integer>();
+    private final Map<Object, Integer> symbols = new HashMap<Object, Integer>();
+
+    /**
+     * Construct a BinaryDataWriter.
+     */
+    public BinaryDataWriter() {
+        this(256);
+    }
+
+    /**
+     * Construct a BinaryDataWriter with the specified initial buffer size.
+     *
+     * @param initialCapacity The initial buffer size in bytes.
+     */
+    public BinaryDataWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+        writeByte(FORMAT_VERSION);
+    }
+
+    /**
+     * @return the number of bytes written so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the encoded bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Copy the encoded bytes into a buffer.
+     *
+     * @param out The buffer, which must have {@link #size()} bytes remaining.
+     */
+    public void writeTo(ByteBuffer out) {
+        out.put(buffer, 0, size);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#value(java.lang.Object)
+     */
+    public void value(Object value) {
+        if (value == null) {
+            writeByte(NIL);
+        } else if (value instanceof String) {
+            writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof Long) {
+            writeByte(LONG);
+            writeSignedVarint((Long) value);
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            writeFixed64(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            writeByte(INTEGER);
+            writeSignedVarint((Integer) value);
+        } else if (value instanceof Character) {
+            writeByte(CHARACTER);
+            writeVarint((Character) value);
+        } else if (value instanceof BigInteger) {
+            writeByte(BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            writeByte(BIG_DECIMAL);
+            writeSignedVarint(decimal.scale());
+            writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (value instanceof Short) {
+            writeByte(SHORT);
+            writeSignedVarint((Short) value);
+        } else if (value instanceof Byte) {
+            writeByte(BYTE);
+            writeByte((Byte) value);
+        } else if (value instanceof Float) {
+            writeByte(FLOAT);
+            writeFixed32(Float.floatToRawIntBits((Float) value));
+        } else {
+            throw new IllegalArgumentException("Cannot encode a " + value.getClass().getName());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#keyword(java.lang.String, java.lang.String)
+     */
+    public void keyword(String ns, String name) {
+        writeName(keywords, KEYWORD, KEYWORD_REF, ns, name);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#symbol(java.lang.String, java.lang.String)
+     */
+    public void symbol(String ns, String name) {
+        writeName(symbols, SYMBOL, SYMBOL_REF, ns, name);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#bigInt(java.math.BigInteger)
+     */
+    public void bigInt(BigInteger value) {
+        writeByte(BIG_INT);
+        writeBytes(value.toByteArray());
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#ratio(java.math.BigInteger, java.math.BigInteger)
+     */
+    public void ratio(BigInteger numerator, BigInteger denominator) {
+        writeByte(RATIO);
+        writeBytes(numerator.toByteArray());
+        writeBytes(denominator.toByteArray());
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginMap(int)
+     */
+    public void beginMap(int size) {
+        writeByte(MAP);
+        writeVarint(size);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endMap()
+     */
+    public void endMap() {
+        // Counted; no end marker
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginVector(int)
+     */
+    public void beginVector(int size) {
+        writeByte(VECTOR);
+        writeVarint(size);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endVector()
+     */
+    public void endVector() {
+        // Counted; no end marker
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginSet(int)
+     */
+    public void beginSet(int size) {
+        writeByte(SET);
+        writeVarint(size);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endSet()
+     */
+    public void endSet() {
+        // Counted; no end marker
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginList(int)
+     */
+    public void beginList(int size) {
+        writeByte(LIST);
+        writeVarint(size);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endList()
+     */
+    public void endList() {
+        // Counted; no end marker
+    }
+
+    /*
+     * Keyword and symbol names are interned by Clojure, so unqualified names are looked up by the
+     * String itself; qualified names are rare enough to pay for a joined key.
+     */
+    private void writeName(Map<Object, Integer> table, byte tag, byte refTag, String ns, String name) {
+        Object key = ns == null ? name : ns + "/" + name;
+        Integer index = table.get(key);
+        if (index != null) {
+            writeByte(refTag);
+            writeVarint(index);
+            return;
+        }
+        table.put(key, table.size());
+        writeByte(tag);
+        if (ns == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(1);
+            writeString(ns);
+        }
+        writeString(name);
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        ensureCapacity(5 + length);
+        int start = size;
+        writeVarint(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // Not ASCII: rewrite as UTF-8 with the byte length
+                size = start;
+                writeBytes(value.getBytes(UTF_8));
+                return;
+            }
+            buffer[size++] = (byte) c;
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarint(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeFixed64(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeFixed32(int value) {
+        ensureCapacity(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+}
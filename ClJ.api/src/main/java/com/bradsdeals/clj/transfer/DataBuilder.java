@@ -0,0 +1,16 @@
+package com.bradsdeals.clj.transfer;
+
+/**
+ * A {@link DataVisitor} that rebuilds the value it receives in one Clojure runtime.  Obtain one
+ * from {@link com.bradsdeals.clj.IClJ#dataBuilder()}.  A builder receives a single value and is
+ * not thread safe.
+ */
+public interface DataBuilder extends DataVisitor {
+    /**
+     * Return the value that was built.
+     *
+     * @return The value, as a persistent Clojure value of the builder's runtime.
+     * @throws IllegalStateException if the builder has not received a complete value.
+     */
+    Object result();
+}
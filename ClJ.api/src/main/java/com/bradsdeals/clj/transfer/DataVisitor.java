@@ -0,0 +1,102 @@
+package com.bradsdeals.clj.transfer;
+
+import java.math.BigInteger;
+
+/**
+ * Receives a Clojure value as a stream of structural events, without depending on any Clojure
+ * runtime's classes.  A value is walked depth-first: a collection is announced with its size,
+ * followed by its elements (a map's keys and values alternate) and closed by the matching end
+ * event.<p>
+ *
+ * Strings, numbers, booleans and other Java objects are passed to {@link #value(Object)} as they
+ * are, so runtimes in the same JVM share them by identity.  Only the types each runtime defines
+ * for itself (keywords, symbols, BigInts, Ratios and collections) are described structurally.
+ */
+public interface DataVisitor {
+    /**
+     * A value shared by identity: nil, a String, a number, a Boolean, a Character or any other
+     * Java object that is not part of a Clojure runtime.
+     *
+     * @param value The value, or null for nil.
+     */
+    void value(Object value);
+
+    /**
+     * A keyword.
+     *
+     * @param ns The keyword's namespace, or null.
+     * @param name The keyword's name.
+     */
+    void keyword(String ns, String name);
+
+    /**
+     * A symbol.  Metadata is not transferred.
+     *
+     * @param ns The symbol's namespace, or null.
+     * @param name The symbol's name.
+     */
+    void symbol(String ns, String name);
+
+    /**
+     * A clojure.lang.BigInt, e.g.: <code>1N</code>.
+     *
+     * @param value The BigInt's value.
+     */
+    void bigInt(BigInteger value);
+
+    /**
+     * A clojure.lang.Ratio, e.g.: <code>1/3</code>.
+     *
+     * @param numerator The ratio's numerator.
+     * @param denominator The ratio's denominator.
+     */
+    void ratio(BigInteger numerator, BigInteger denominator);
+
+    /**
+     * Start a map of size entries.  The next 2 * size values alternate between keys and values.
+     *
+     * @param size The number of entries.
+     */
+    void beginMap(int size);
+
+    /**
+     * End the current map.
+     */
+    void endMap();
+
+    /**
+     * Start a vector of size elements.
+     *
+     * @param size The number of elements.
+     */
+    void beginVector(int size);
+
+    /**
+     * End the current vector.
+     */
+    void endVector();
+
+    /**
+     * Start a set of size elements.
+     *
+     * @param size The number of elements.
+     */
+    void beginSet(int size);
+
+    /**
+     * End the current set.
+     */
+    void endSet();
+
+    /**
+     * Start a list or sequence of size elements.
+     *
+     * @param size The number of elements.
+     */
+    void beginList(int size);
+
+    /**
+     * End the current list.
+     */
+    void endList();
+}
@@ -0,0 +1,194 @@
+package com.bradsdeals.clj.transfer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds plain, unmodifiable Java data from a {@link DataVisitor} event stream, for code that has
+ * no Clojure runtime of its own.  Maps become Maps, sets become Sets, and vectors and lists become
+ * Lists.  Keywords and symbols become Strings without the leading colon, e.g.: "ns/name", as
+ * {@link com.bradsdeals.clj.ClJException#getData()} converts them.  BigInts become BigIntegers
+ * and Ratios become BigDecimals rounded to {@link MathContext#DECIMAL128}.<p>
+ *
+ * A builder receives a single value and is not thread safe.
+ */
+public final class JavaDataBuilder implements DataBuilder {
+    private final List<Frame> stack = new ArrayList<Frame>();
+    private Object result;
+    private boolean complete;
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#value(java.lang.Object)
+     */
+    public void value(Object value) {
+        add(value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#keyword(java.lang.String, java.lang.String)
+     */
+    public void keyword(String ns, String name) {
+        add(ns == null ? name : ns + "/" + name);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#symbol(java.lang.String, java.lang.String)
+     */
+    public void symbol(String ns, String name) {
+        add(ns == null ? name : ns + "/" + name);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#bigInt(java.math.BigInteger)
+     */
+    public void bigInt(BigInteger value) {
+        add(value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#ratio(java.math.BigInteger, java.math.BigInteger)
+     */
+    public void ratio(BigInteger numerator, BigInteger denominator) {
+        add(new BigDecimal(numerator).divide(new BigDecimal(denominator), MathContext.DECIMAL128));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginMap(int)
+     */
+    public void beginMap(int size) {
+        stack.add(new Frame(Frame.MAP, size));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endMap()
+     */
+    public void endMap() {
+        end(Frame.MAP);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginVector(int)
+     */
+    public void beginVector(int size) {
+        stack.add(new Frame(Frame.LIST, size));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endVector()
+     */
+    public void endVector() {
+        end(Frame.LIST);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginSet(int)
+     */
+    public void beginSet(int size) {
+        stack.add(new Frame(Frame.SET, size));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endSet()
+     */
+    public void endSet() {
+        end(Frame.SET);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginList(int)
+     */
+    public void beginList(int size) {
+        stack.add(new Frame(Frame.LIST, size));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endList()
+     */
+    public void endList() {
+        end(Frame.LIST);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataBuilder#result()
+     */
+    public Object result() {
+        if (!complete || !stack.isEmpty()) {
+            throw new IllegalStateException("No complete value has been built");
+        }
+        return result;
+    }
+
+    private void add(Object value) {
+        if (!stack.isEmpty()) {
+            stack.get(stack.size() - 1).add(value);
+        } else if (complete) {
+            throw new IllegalStateException("A builder receives a single value");
+        } else {
+            result = value;
+            complete = true;
+        }
+    }
+
+    private void end(int kind) {
+        if (stack.isEmpty() || stack.get(stack.size() - 1).kind != kind) {
+            throw new IllegalStateException("Unbalanced end of collection");
+        }
+        add(stack.remove(stack.size() - 1).build());
+    }
+
+    /*
+     * A collection being filled.  Vectors and lists are both Lists, so they share a kind.
+     */
+    private static final class Frame {
+        static final int MAP = 0;
+        static final int LIST = 1;
+        static final int SET = 2;
+
+        final int kind;
+        private final List<Object> list;
+        private final Set<Object> set;
+        private final Map<Object, Object> map;
+        private Object key;
+        private boolean haveKey;
+
+        Frame(int kind, int size) {
+            this.kind = kind;
+            int buckets = Math.max(16, size * 4 / 3 + 1);
+            list = kind == LIST ? new ArrayList<Object>(size) : null;
+            set = kind == SET ? new LinkedHashSet<Object>(buckets) : null;
+            map = kind == MAP ? new LinkedHashMap<Object, Object>(buckets) : null;
+        }
+
+        void add(Object value) {
+            if (list != null) {
+                list.add(value);
+            } else if (set != null) {
+                set.add(value);
+            } else if (haveKey) {
+                map.put(key, value);
+                haveKey = false;
+                key = null;
+            } else {
+                key = value;
+                haveKey = true;
+            }
+        }
+
+        Object build() {
+            if (list != null) {
+                return Collections.unmodifiableList(list);
+            } else if (set != null) {
+                return Collections.unmodifiableSet(set);
+            }
+            return Collections.unmodifiableMap(map);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.bradsdeals.clj.transfer;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes plain Java data to a {@link DataVisitor}, for code that has no Clojure runtime of its
+ * own, such as the client side of an out-of-process runtime.  Maps become Clojure maps, Sets
+ * become sets, arrays and other Collections become vectors.  Strings, numbers, Booleans and
+ * Characters are passed as they are.  There is no Java form for keywords or symbols, so Strings
+ * stay Strings.
+ */
+public final class JavaDataWalker {
+    private JavaDataWalker() {
+        // Static utility
+    }
+
+    /**
+     * Describe value to visitor.
+     *
+     * @param value The value to walk.
+     * @param visitor The visitor.
+     * @throws IllegalArgumentException if value contains anything else.
+     */
+    public static void walk(Object value, DataVisitor visitor) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character) {
+            visitor.value(value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            visitor.beginMap(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                walk(entry.getKey(), visitor);
+                walk(entry.getValue(), visitor);
+            }
+            visitor.endMap();
+        } else if (value instanceof Set) {
+            Set<?> set = (Set<?>) value;
+            visitor.beginSet(set.size());
+            for (Object element : set) {
+                walk(element, visitor);
+            }
+            visitor.endSet();
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            visitor.beginVector(collection.size());
+            for (Object element : collection) {
+                walk(element, visitor);
+            }
+            visitor.endVector();
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            visitor.beginVector(array.length);
+            for (Object element : array) {
+                walk(element, visitor);
+            }
+            visitor.endVector();
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            visitor.beginVector(array.length);
+            for (long element : array) {
+                visitor.value(element);
+            }
+            visitor.endVector();
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            visitor.beginVector(array.length);
+            for (double element : array) {
+                visitor.value(element);
+            }
+            visitor.endVector();
+        } else if (value.getClass().isArray()) {
+            // Reflection is slow enough to matter for the common arrays above
+            int length = Array.getLength(value);
+            visitor.beginVector(length);
+            for (int i = 0; i < length; i++) {
+                walk(Array.get(value, i), visitor);
+            }
+            visitor.endVector();
+        } else {
+            throw new IllegalArgumentException("Cannot describe a " + value.getClass().getName() + " as Clojure data");
+        }
+    }
+}
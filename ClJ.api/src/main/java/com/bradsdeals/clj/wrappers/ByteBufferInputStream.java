@@ -0,0 +1,91 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads directly from a {@link ByteBuffer}, including direct and
+ * memory-mapped buffers, without copying the buffer's contents onto the heap.<p>
+ *
+ * The stream reads the bytes between the buffer's position and limit at the time the
+ * stream is created.  It reads from a duplicate of the buffer, so the original buffer's
+ * position, limit and mark are not changed.  Not thread-safe.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    /**
+     * Construct a ByteBufferInputStream.
+     *
+     * @param buffer The buffer to read.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read()
+     */
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int remaining = buffer.remaining();
+        if (remaining == 0) {
+            return -1;
+        }
+        int count = Math.min(len, remaining);
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#skip(long)
+     */
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        int count = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#available()
+     */
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#markSupported()
+     */
+    public boolean markSupported() {
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#mark(int)
+     */
+    public void mark(int readlimit) {
+        buffer.mark();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.InputStream#reset()
+     */
+    public void reset() {
+        buffer.reset();
+    }
+}
@@ -0,0 +1,79 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Reader that decodes characters directly out of a {@link ByteBuffer}, including direct and
+ * memory-mapped buffers.  Bytes are decoded straight from the buffer into the caller's
+ * char array; the buffer's contents are never copied onto the heap.<p>
+ *
+ * Like {@link ByteBufferInputStream}, this reads from a duplicate of the buffer and leaves the
+ * original buffer's position and limit unchanged.  Malformed input is replaced with the
+ * charset's replacement character.  Not thread-safe.
+ */
+public class ByteBufferReader extends Reader {
+    private final ByteBuffer buffer;
+    private final CharsetDecoder decoder;
+    private boolean flushed = false;
+
+    /**
+     * Construct a ByteBufferReader.
+     *
+     * @param buffer The buffer to read.
+     * @param charset The buffer's character encoding.
+     */
+    public ByteBufferReader(ByteBuffer buffer, Charset charset) {
+        this.buffer = buffer.duplicate();
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Reader#read(char[], int, int)
+     */
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (flushed) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        CoderResult result = decoder.decode(buffer, out, true);
+        if (result.isUnderflow() && !buffer.hasRemaining()) {
+            result = decoder.flush(out);
+            flushed = result.isUnderflow();
+        }
+        if (result.isError()) {
+            throw new CharacterCodingException();
+        }
+        int count = out.position() - off;
+        if (count == 0 && flushed) {
+            return -1;
+        }
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Reader#ready()
+     */
+    public boolean ready() {
+        return buffer.hasRemaining();
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Reader#close()
+     */
+    public void close() {
+        // Nothing to release; the buffer belongs to the caller.
+    }
+}
@@ -0,0 +1,197 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Writer that encodes characters into whichever OutputStream it is currently attached to,
+ * e.g.: for the duration of one Clojure call.<p>
+ *
+ * Unlike {@link java.io.OutputStreamWriter}, one instance can be kept and attached to a different
+ * stream each time, so its encoder and buffers are allocated once.  {@link #detach()} writes the
+ * buffered bytes to the stream without flushing it; only an explicit {@link #flush()}, e.g.: from
+ * Clojure's <code>flush</code> or <code>println</code>, flushes the stream.  The stream is never
+ * closed.<p>
+ *
+ * This class is not synchronized.  Use one instance per thread, or synchronize externally.
+ */
+public class EncodingWriter extends Writer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private OutputStream out = null;
+
+    /**
+     * Construct an EncodingWriter that encodes its output as UTF-8.
+     */
+    public EncodingWriter() {
+        this(UTF_8, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an EncodingWriter.
+     *
+     * @param charset The charset used to encode the characters written.
+     * @param capacity The number of characters buffered before they are encoded.
+     */
+    public EncodingWriter(Charset charset, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must hold a surrogate pair: " + capacity);
+        }
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(capacity);
+        // Room for every buffered character, so one encode pass never overflows
+        this.bytes = ByteBuffer.allocate((int) Math.ceil(capacity * encoder.maxBytesPerChar()));
+    }
+
+    /**
+     * Send output to out until {@link #detach()} is called.
+     *
+     * @param out The stream to write to.
+     * @throws IllegalStateException if this writer is already attached to a stream.
+     */
+    public void attach(OutputStream out) {
+        if (this.out != null) {
+            throw new IllegalStateException("Already attached to an OutputStream");
+        }
+        this.out = out;
+    }
+
+    /**
+     * @return true if this writer is attached to a stream.
+     */
+    public boolean isAttached() {
+        return out != null;
+    }
+
+    /**
+     * Encode everything written so far, write it to the attached stream without flushing the
+     * stream, and forget the stream.  The writer is detached even if the stream throws.
+     *
+     * @throws IOException If the stream throws IOException.
+     */
+    public void detach() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            encode(true);
+        } finally {
+            chars.clear();
+            bytes.clear();
+            encoder.reset();
+            out = null;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Writer#write(int)
+     */
+    public void write(int c) throws IOException {
+        ensureAttached();
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put((char) c);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureAttached();
+        while (len > 0) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int count = Math.min(len, chars.remaining());
+            chars.put(cbuf, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Writer#write(java.lang.String, int, int)
+     */
+    public void write(String str, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > str.length() - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureAttached();
+        while (len > 0) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int count = Math.min(len, chars.remaining());
+            str.getChars(off, off + count, chars.array(), chars.arrayOffset() + chars.position());
+            chars.position(chars.position() + count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Write the buffered output to the attached stream and flush the stream.
+     *
+     * @see java.io.Writer#flush()
+     */
+    public void flush() throws IOException {
+        if (out == null) {
+            return;
+        }
+        encode(false);
+        out.flush();
+    }
+
+    /**
+     * Write the buffered output to the attached stream.  The stream belongs to the caller that
+     * attached it, so it is left open.
+     *
+     * @see java.io.Writer#close()
+     */
+    public void close() throws IOException {
+        if (out != null) {
+            encode(false);
+        }
+    }
+
+    private void ensureAttached() throws IOException {
+        if (out == null) {
+            throw new IOException("Not attached to an OutputStream");
+        }
+    }
+
+    /*
+     * Encode the buffered characters and write the bytes.  Unless endOfInput, a trailing high
+     * surrogate stays buffered until its pair arrives.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        encoder.encode(chars, bytes, endOfInput);
+        if (endOfInput) {
+            encoder.flush(bytes);
+        }
+        chars.compact();
+        bytes.flip();
+        try {
+            out.write(bytes.array(), bytes.arrayOffset(), bytes.limit());
+        } finally {
+            bytes.clear();
+        }
+    }
+}
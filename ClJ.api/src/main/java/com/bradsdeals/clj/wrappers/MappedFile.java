@@ -0,0 +1,142 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only, memory-mapped view of a file that can be passed to Clojure functions without
+ * reading the file onto the heap.  Since a single {@link MappedByteBuffer} cannot exceed 2GB,
+ * larger files are mapped as a list of consecutive regions.<p>
+ *
+ * Pass the result of {@link #openStream()} or {@link #openReader(Charset)} to Clojure functions
+ * expecting an InputStream or Reader (e.g.: clojure.java.io/copy, clojure.java.io/reader), or
+ * pass the MappedFile itself to a defined interface method whose {@link com.bradsdeals.clj.ClJAnnotations.Pt}
+ * annotation accepts InputStream or Reader and ClJ will adapt it.  The operating system unmaps
+ * the regions once the MappedFile and any buffers obtained from it are garbage collected.
+ */
+public class MappedFile {
+    /**
+     * The default maximum size of each mapped region.
+     */
+    public static final int DEFAULT_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final File file;
+    private final List<ByteBuffer> regions;
+    private final long length;
+
+    /**
+     * Map file using regions of at most {@link #DEFAULT_REGION_SIZE} bytes.
+     *
+     * @param file The file to map.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public MappedFile(File file) throws IOException {
+        this(file, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Map file using regions of at most regionSize bytes.
+     *
+     * @param file The file to map.
+     * @param regionSize The maximum size of each mapped region.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public MappedFile(File file, int regionSize) throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("regionSize must be positive: " + regionSize);
+        }
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            List<ByteBuffer> mapped = new ArrayList<ByteBuffer>((int) (length / regionSize) + 1);
+            for (long offset = 0; offset < length; offset += regionSize) {
+                long size = Math.min(regionSize, length - offset);
+                mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, size));
+            }
+            this.regions = Collections.unmodifiableList(mapped);
+        } finally {
+            raf.close();    // Mappings remain valid after the channel is closed
+        }
+    }
+
+    /**
+     * Return the mapped file.
+     * @return the mapped file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Return the file's length in bytes.
+     * @return the file's length in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Return the read-only mapped regions, in file order.  Callers may slice or duplicate
+     * these buffers freely.
+     *
+     * @return the read-only mapped regions.
+     */
+    public List<ByteBuffer> regions() {
+        return regions;
+    }
+
+    /**
+     * Return a new InputStream over the whole file, reading straight from the mapped regions.
+     *
+     * @return a new InputStream over the whole file.
+     */
+    public InputStream openStream() {
+        if (regions.size() == 1) {
+            return new ByteBufferInputStream(regions.get(0));
+        }
+        final Iterator<ByteBuffer> remaining = regions.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
+            }
+
+            public InputStream nextElement() {
+                if (!remaining.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return new ByteBufferInputStream(remaining.next());
+            }
+        });
+    }
+
+    /**
+     * Return a new Reader over the whole file, decoding with the specified charset.
+     *
+     * @param charset The file's character encoding.
+     * @return a new Reader over the whole file.
+     */
+    public Reader openReader(Charset charset) {
+        if (regions.size() <= 1) {
+            return new ByteBufferReader(regions.isEmpty() ? ByteBuffer.allocate(0) : regions.get(0), charset);
+        }
+        // A character may straddle two regions, so let InputStreamReader carry partial characters across
+        return new InputStreamReader(openStream(), charset);
+    }
+}
@@ -7,7 +7,11 @@ import java.io.OutputStream;
  * An OutputStream that collects all of the output into a new StringBuffer.
  *
  * We use StringBuffer instead of StringBuilder, for thread safety.
+ *
+ * @deprecated Each byte is appended as a char, which corrupts multi-byte characters, and every
+ * byte is written through a synchronized method.  Use {@link StringOutputStream} instead.
  */
+@Deprecated
 public class StringBufferOutputStream extends OutputStream {
     protected StringBuffer buffer = new StringBuffer();
     protected boolean closed = false;
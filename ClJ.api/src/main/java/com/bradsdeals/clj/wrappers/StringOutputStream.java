@@ -0,0 +1,136 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * An OutputStream that collects its output into a growable byte array and decodes it
+ * to a String on demand.<p>
+ *
+ * Unlike {@link StringBufferOutputStream}, writes are bulk array copies, and bytes are
+ * decoded using a real charset (UTF-8 by default) so multi-byte characters survive.  The
+ * buffer can be kept and reused across calls via {@link #reset()}.<p>
+ *
+ * This class is not synchronized.  Use one instance per thread, or synchronize externally.
+ */
+public class StringOutputStream extends OutputStream {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final Charset charset;
+    private byte[] buffer;
+    private int count = 0;
+    private String decoded = null;
+
+    /**
+     * Construct a StringOutputStream that decodes its output as UTF-8.
+     */
+    public StringOutputStream() {
+        this(UTF_8, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct a StringOutputStream.
+     *
+     * @param charset The charset used to decode the collected bytes.
+     * @param initialCapacity The initial buffer size in bytes.
+     */
+    public StringOutputStream(Charset charset, int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative initial capacity: " + initialCapacity);
+        }
+        this.charset = charset;
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(int)
+     */
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+        decoded = null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+        decoded = null;
+    }
+
+    /**
+     * Write the collected bytes to another OutputStream.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If out throws IOException.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    /**
+     * Discard the collected output, keeping the allocated buffer for reuse.
+     */
+    public void reset() {
+        count = 0;
+        decoded = null;
+    }
+
+    /**
+     * Return the number of bytes collected.
+     * @return the number of bytes collected.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Return a copy of the collected bytes.
+     * @return a copy of the collected bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Closing a StringOutputStream has no effect; it may still be written and read afterwards.
+     */
+    public void close() {
+        // Nothing to release
+    }
+
+    /**
+     * Return the collected bytes decoded using this stream's charset.  The result is cached
+     * until the next write.
+     *
+     * @return the collected output as a String.
+     */
+    public String toString() {
+        if (decoded == null) {
+            decoded = new String(buffer, 0, count, charset);
+        }
+        return decoded;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity - buffer.length > 0) {
+            if (minCapacity < 0) {
+                throw new OutOfMemoryError("StringOutputStream cannot hold more than " + Integer.MAX_VALUE + " bytes");
+            }
+            int newCapacity = buffer.length << 1;
+            if (newCapacity - minCapacity < 0) {
+                newCapacity = minCapacity;
+            }
+            buffer = Arrays.copyOf(buffer, newCapacity);
+        }
+    }
+}
@@ -2,30 +2,85 @@ package com.bradsdeals.clj;
 
 import static com.coconut_palm_software.possible.iterable.CollectionFactory.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.bradsdeals.clj.ClJAnnotations.ExpectedErrors;
+import com.bradsdeals.clj.ClJAnnotations.Memoize;
 import com.bradsdeals.clj.ClJAnnotations.Ns;
 import com.bradsdeals.clj.ClJAnnotations.Pt;
 import com.bradsdeals.clj.ClJAnnotations.Require;
+import com.bradsdeals.clj.ClJAnnotations.Timeout;
+import com.bradsdeals.clj.cache.MemoCache;
+import com.bradsdeals.clj.coercion.ReturnCoercion;
+import com.bradsdeals.clj.internal.ThreadLocals;
+import com.bradsdeals.clj.internal.dsl.DslCache;
+import com.bradsdeals.clj.internal.jfr.InvocationEvent;
+import com.bradsdeals.clj.internal.jfr.NamespaceLoadEvent;
+import com.bradsdeals.clj.internal.jfr.RuntimeBootstrapEvent;
+import com.bradsdeals.clj.internal.jfr.VarResolutionEvent;
+import com.bradsdeals.clj.loading.NamespaceLoader;
+import com.bradsdeals.clj.metrics.ClJMetrics;
+import com.bradsdeals.clj.metrics.FootprintMeter;
+import com.bradsdeals.clj.metrics.SlowCallSampler;
+import com.bradsdeals.clj.transfer.BinaryDataReader;
+import com.bradsdeals.clj.transfer.BinaryDataWriter;
+import com.bradsdeals.clj.transfer.DataBuilder;
+import com.bradsdeals.clj.transfer.DataWalker;
+import com.bradsdeals.clj.transfer.TransientDataBuilder;
+import com.bradsdeals.clj.wrappers.ByteBufferInputStream;
+import com.bradsdeals.clj.wrappers.ByteBufferReader;
 import com.bradsdeals.clj.wrappers.ClojureMap;
 import com.bradsdeals.clj.wrappers.ClojureSeq;
 import com.bradsdeals.clj.wrappers.ClojureVector;
+import com.bradsdeals.clj.wrappers.EncodingWriter;
+import com.bradsdeals.clj.wrappers.MappedFile;
+import com.bradsdeals.clj.wrappers.PrimitiveVectors;
 import com.coconut_palm_software.possible.Nulls;
 import com.coconut_palm_software.possible.Possible;
 
 import clojure.java.api.Clojure;
+import clojure.lang.Agent;
+import clojure.lang.Associative;
+import clojure.lang.ExceptionInfo;
 import clojure.lang.IFn;
 import clojure.lang.IPersistentMap;
 import clojure.lang.IPersistentVector;
 import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentArrayMap;
 import clojure.lang.RT;
 import clojure.lang.Seqable;
 import clojure.lang.Symbol;
@@ -54,13 +109,84 @@ import clojure.lang.Var;
  *
  * @author dorme
  */
-public class ClJ implements IClJ {
+public class ClJ implements IClJ, DslCache.Owner {
+
+    /*
+     * Begun before the Keywords below initialize Clojure, so the first runtime started in this
+     * classloader reports loading Clojure as part of its bootstrap.
+     */
+    private static final AtomicReference<RuntimeBootstrapEvent> classBootstrap =
+            new AtomicReference<RuntimeBootstrapEvent>(beginBootstrap());
+
+    private static final String PUBLIC_RUNTIME_NAME = "public";
+    private static final Keyword RELOAD = Keyword.intern("reload");
+    private static final Keyword TYPE = Keyword.intern("type");
+    private static final Set<String> NO_EXPECTED_ERRORS = Collections.emptySet();
+    private static ClJMetrics publicMetrics;
+    private static final SlowCallSampler publicSlowCalls = new SlowCallSampler();
+    private static final AtomicLong publicReloadGeneration = new AtomicLong();
+    private static final Lock publicReloadLock = new ReentrantLock();
+    private static ExecutorService publicTimeoutExecutor;
+    private static ExecutorService publicPinnedExecutor;
+
+    /**
+     * The system property that sets the number of threads in each runtime's
+     * {@link #pinnedExecutor()}.  Defaults to the number of available processors.
+     */
+    public static final String PINNED_THREADS_PROPERTY = "clj.pinned.threads";
+
+    /**
+     * The system property that sets the maximum number of threads running each runtime's calls
+     * with a timeout.  Defaults to four per available processor.  Abandoned calls keep their
+     * thread until they return, and once every thread is busy further calls with a timeout fail
+     * with {@link RejectedExecutionException} instead of waiting.
+     */
+    public static final String TIMEOUT_THREADS_PROPERTY = "clj.timeout.threads";
+
+    // The life cycle of a call with a timeout
+    private static final int CALL_PENDING = 0;
+    private static final int CALL_RUNNING = 1;
+    private static final int CALL_DONE = 2;
+    private static final int CALL_ABANDONED = 3;
+
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String runtimeName;
+    private final ClJMetrics metrics;
+    private final SlowCallSampler slowCalls;
+
+    /*
+     * Incremented once when a reload starts and once when it finishes, so it is odd while a reload
+     * is running.  Defined-interface proxies cache their functions per generation.
+     */
+    private final AtomicLong reloadGeneration;
+    private final Lock reloadLock;
+
+    private ExecutorService timeoutExecutor;
+    private ExecutorService pinnedExecutor;
+
+    // Held here rather than looked up in a shared map, so DSL blocks take no lock to find it
+    private final DslCache dslCache = DslCache.create();
+
+    // The *out* and *err* writers invokeWithOutput reuses for OutputStreams on each thread
+    private final ThreadLocal<EncodingWriter[]> outputWriters = new ThreadLocal<EncodingWriter[]>();
 
     /**
      * Initialize a ClJ instance.
      */
     public ClJ() {
-        //noop if using a public Clojure instance.
+        // All ClJ instances using the public Clojure instance share its metrics.
+        runtimeName = PUBLIC_RUNTIME_NAME;
+        metrics = publicMetrics();
+        slowCalls = publicSlowCalls;
+        reloadGeneration = publicReloadGeneration;
+        reloadLock = publicReloadLock;
+
+        // Only the first public instance bootstraps anything
+        RuntimeBootstrapEvent bootstrap = classBootstrap.getAndSet(null);
+        if (bootstrap != null) {
+            commitBootstrap(bootstrap);
+        }
     }
 
     /**
@@ -75,6 +201,17 @@ public class ClJ implements IClJ {
      */
     @SuppressWarnings("rawtypes")
     public ClJ(final ClassLoader privateClassloader) {
+        RuntimeBootstrapEvent bootstrap = classBootstrap.getAndSet(null);
+        if (bootstrap == null) {
+            bootstrap = beginBootstrap();
+        }
+        runtimeName = ClJLoader.runtimeName(privateClassloader);
+        metrics = new ClJMetrics(runtimeName);
+        metrics.register();
+        slowCalls = new SlowCallSampler();
+        reloadGeneration = new AtomicLong();
+        reloadLock = new ReentrantLock();
+
         Exception ex = null;
         try {
             Field dvalField = Var.class.getDeclaredField("dvals");
@@ -99,6 +236,20 @@ public class ClJ implements IClJ {
         if (ex != null) {
             throw new RuntimeException("Failed to access Var.dvals", ex);
         }
+        commitBootstrap(bootstrap);
+    }
+
+    private static RuntimeBootstrapEvent beginBootstrap() {
+        RuntimeBootstrapEvent event = new RuntimeBootstrapEvent();
+        event.begin();
+        return event;
+    }
+
+    private void commitBootstrap(RuntimeBootstrapEvent event) {
+        if (event.shouldCommit()) {
+            event.runtime = runtimeName;
+            event.commit();
+        }
     }
 
 
@@ -107,9 +258,206 @@ public class ClJ implements IClJ {
      */
     public void close() {
         invoke("clojure.core/shutdown-agents");
+        if (localThreadData.hasValue()) {
+            release(localThreadData.get());
+        }
         localThreadData = Possible.emptyValue();
     }
 
+    /*
+     * Drop everything outside this runtime that refers to the private classloader.  Executors are
+     * stopped first so their threads can't put back the state cleared afterward.
+     */
+    private void release(LocalThreadData threadData) {
+        metrics.unregister();
+        synchronized (this) {
+            if (timeoutExecutor != null) {
+                timeoutExecutor.shutdownNow();
+            }
+            if (pinnedExecutor != null) {
+                pinnedExecutor.shutdown();
+            }
+        }
+        long deadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+        awaitTermination(Agent.pooledExecutor, deadline);
+        awaitTermination(Agent.soloExecutor, deadline);
+        awaitTermination(timeoutExecutor, deadline);
+        awaitTermination(pinnedExecutor, deadline);
+
+        clojure.lang.Compiler.LOADER.unbindRoot();
+        threadData.dvals.remove();
+        ThreadLocals.removeEverywhere(threadData.dvals);
+        ThreadLocals.removeEverywhere(outputWriters);
+
+        ClassLoader classloader = threadData.classloader;
+        for (Thread thread : ThreadLocals.allThreads()) {
+            if (isSameOrChild(thread.getContextClassLoader(), classloader)) {
+                thread.setContextClassLoader(classloader.getParent());
+            }
+        }
+        if (classloader instanceof ClJClassLoader) {
+            try {
+                ((ClJClassLoader) classloader).close();
+            } catch (IOException e) {
+                // Nothing more can be loaded from it either way
+            }
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor, long deadline) {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isSameOrChild(ClassLoader candidate, ClassLoader ancestor) {
+        for (ClassLoader loader = candidate; loader != null; loader = loader.getParent()) {
+            if (loader == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.internal.dsl.DslCache.Owner#dslCache()
+     */
+    public DslCache dslCache() {
+        return dslCache;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#metrics()
+     */
+    public IClJMetrics metrics() {
+        return metrics;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#slowCalls()
+     */
+    public ISlowCallSampler slowCalls() {
+        return slowCalls;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#footprint()
+     */
+    public RuntimeFootprint footprint() {
+        return FootprintMeter.measure(runtimeName, localThreadData.hasValue() ? localThreadData.get().classloader : null);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#transfer(java.lang.Object, com.bradsdeals.clj.IClJ)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T transfer(final Object value, IClJ target) {
+        final DataBuilder builder = target.dataBuilder();
+        return safeCall(new Callable<T>() {
+            public T call() throws Exception {
+                DataWalker.walk(value, builder);
+                return (T) builder.result();
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#dataBuilder()
+     */
+    public DataBuilder dataBuilder() {
+        return new TransientDataBuilder();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#encode(java.lang.Object)
+     */
+    public byte[] encode(final Object value) {
+        return safeCall(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                BinaryDataWriter writer = new BinaryDataWriter();
+                DataWalker.walk(value, writer);
+                return writer.toByteArray();
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#decode(byte[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes) {
+        DataBuilder builder = new TransientDataBuilder();
+        BinaryDataReader.read(ByteBuffer.wrap(bytes), builder);
+        return (T) builder.result();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#require(java.lang.String[])
+     */
+    public NamespaceLoadReport require(String...namespaces) {
+        return loadNamespaces(new String[0], namespaces);
+    }
+
+    /**
+     * Load the Clojure source at each of loadPaths, as {@link #define(Class, String...)} loads its
+     * loadPackages, then require namespaces.  Both are loaded as {@link #require(String...)} loads
+     * namespaces, in parallel where their ns forms allow.  For hosts that receive a define's
+     * loadPackages from elsewhere, such as a remote runtime's child JVM.
+     *
+     * @param loadPaths Classpath resource paths (e.g.: "/com/example/rules") to load unconditionally.
+     * @param namespaces The fully-qualified names of the namespaces to load if they are not loaded yet.
+     * @return A report of the load times and of what parallel loading saved.
+     */
+    public NamespaceLoadReport loadNamespaces(final String[] loadPaths, final String[] namespaces) {
+        return safeCall(new Callable<NamespaceLoadReport>() {
+            public NamespaceLoadReport call() throws Exception {
+                ThreadFactory loaderThreads = pinnedThreads("clj-load-");
+                return new NamespaceLoader(runtimeName, metrics, loaderThreads).load(loadPaths, namespaces);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#reload(java.lang.String[])
+     */
+    public void reload(final String...namespaces) {
+        reloadLock.lock();
+        try {
+            reloadGeneration.incrementAndGet();
+            try {
+                safeCall(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        IFn require = RT.var("clojure.core", "require");
+                        for (String namespace : namespaces) {
+                            long start = System.nanoTime();
+                            require.invoke(Symbol.create(namespace), RELOAD);
+                            metrics.recordNamespaceLoad(namespace, System.nanoTime() - start);
+                        }
+                        return null;
+                    }
+                });
+            } finally {
+                reloadGeneration.incrementAndGet();
+                metrics.invalidateMemoCaches();
+            }
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private static synchronized ClJMetrics publicMetrics() {
+        if (publicMetrics == null) {
+            publicMetrics = new ClJMetrics(PUBLIC_RUNTIME_NAME);
+            publicMetrics.register();
+        }
+        return publicMetrics;
+    }
+
 
     /*
      * Define Java interfaces corresponding to Clojure functions and call Clojure from
@@ -133,7 +481,7 @@ public class ClJ implements IClJ {
         Require requires = clojureInterface.getAnnotation(Require.class);
         String[] requirements = requires != null ? requires.value() : new String[] {};
         return (T) Proxy.newProxyInstance(classloader,
-                new Class[] {clojureInterface}, new ClojureModule(this, loadPackages, requirements));
+                new Class<?>[] {clojureInterface}, new ClojureModule(this, metrics, clojureInterface, loadPackages, requirements));
     }
 
 
@@ -145,6 +493,8 @@ public class ClJ implements IClJ {
      * @see com.bradsdeals.clj.IClojure#var(java.lang.String)
      */
     public Object var(final String fullyQualifiedName) {
+        VarResolutionEvent event = new VarResolutionEvent();
+        event.begin();
         Object invokable = safeCall(new Callable<Object>() {
             public Object call() throws Exception {
                 if (localThreadData.hasValue()) {
@@ -152,6 +502,11 @@ public class ClJ implements IClJ {
                 }
                 return Clojure.var(fullyQualifiedName);
             }});
+        if (event.shouldCommit()) {
+            event.var = fullyQualifiedName;
+            event.runtime = runtimeName;
+            event.commit();
+        }
         return invokable;
     }
 
@@ -184,13 +539,364 @@ public class ClJ implements IClJ {
     @SuppressWarnings("unchecked")
     public <T> T invoke(final Object fnObject, final Object...args) {
         final IFn fn = (IFn) fnObject;
-        return toJava(safeCall(new Callable<T>() {
+        return toJava(recordedCall(fn, args, NO_EXPECTED_ERRORS, new Callable<T>() {
             public T call() throws Exception {
                 return (T) invokeInternal(fn, args);
             }
         }));
     }
 
+    /*
+     * Invoke target, attributing the call to name (the Var target was resolved from) in the
+     * metrics, slow-call samples and JFR events.  ex-info errors of the expected types are
+     * reported without stack traces.  The result is coerced inside the call, so lazy results are
+     * realized with the call's bindings and classloader.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T invokeResolved(final IFn name, final IFn target, Set<String> expectedErrors,
+            final ReturnCoercion coercion, final Object...args) {
+        return recordedCall(name, args, expectedErrors, new Callable<T>() {
+            public T call() throws Exception {
+                return (T) coercion.coerce(invokeInternal(target, args));
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#invokeWithTimeout(long, java.util.concurrent.TimeUnit, java.lang.Object, java.lang.Object[])
+     */
+    public <T> T invokeWithTimeout(long timeout, TimeUnit unit, Object fnObject, Object...args) {
+        IFn fn = (IFn) fnObject;
+        return invokeResolvedWithTimeout(unit.toNanos(timeout), fn, fn, NO_EXPECTED_ERRORS, ReturnCoercion.TO_JAVA, args);
+    }
+
+    /*
+     * Run invokeResolved on a pinned worker thread carrying the caller's binding frame.  The
+     * caller's callDepth and dvals are never touched, and the worker restores its own binding
+     * frame whenever the interrupted call finally returns.  A call abandoned before its worker
+     * starts never runs; one abandoned while running is counted until it finishes.
+     */
+    private <T> T invokeResolvedWithTimeout(long timeoutNanos, final IFn name, final IFn target,
+            final Set<String> expectedErrors, final ReturnCoercion coercion, final Object...args) {
+        final Object callerFrame = Var.cloneThreadBindingFrame();
+        final AtomicInteger state = new AtomicInteger(CALL_PENDING);
+        Future<T> call = timeoutExecutor().submit(new Callable<T>() {
+            public T call() throws Exception {
+                if (!state.compareAndSet(CALL_PENDING, CALL_RUNNING)) {
+                    return null;
+                }
+                Object workerFrame = Var.getThreadBindingFrame();
+                Var.resetThreadBindingFrame(callerFrame);
+                try {
+                    return invokeResolved(name, target, expectedErrors, coercion, args);
+                } finally {
+                    Var.resetThreadBindingFrame(workerFrame);
+                    if (!state.compareAndSet(CALL_RUNNING, CALL_DONE)) {
+                        metrics.recordAbandonedCallFinished();
+                    }
+                }
+            }
+        });
+        try {
+            return call.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            abandon(call, state);
+            throw new ClJTimeoutException(functionName(name), timeoutNanos);
+        } catch (InterruptedException e) {
+            abandon(call, state);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while calling Clojure", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ClJException("Exception calling Clojure", cause);
+        }
+    }
+
+    private void abandon(Future<?> call, AtomicInteger state) {
+        if (state.compareAndSet(CALL_RUNNING, CALL_ABANDONED)) {
+            metrics.recordAbandonedCall();
+        } else {
+            state.compareAndSet(CALL_PENDING, CALL_ABANDONED);
+        }
+        call.cancel(true);
+    }
+
+    private synchronized ExecutorService timeoutExecutor() {
+        if (!localThreadData.hasValue()) {
+            return publicTimeoutExecutor();
+        }
+        if (timeoutExecutor == null) {
+            timeoutExecutor = newTimeoutExecutor(pinnedThreads("clj-timeout-"), runtimeName);
+        }
+        return timeoutExecutor;
+    }
+
+    private static synchronized ExecutorService publicTimeoutExecutor() {
+        if (publicTimeoutExecutor == null) {
+            publicTimeoutExecutor = newTimeoutExecutor(publicThreads("clj-timeout-"), PUBLIC_RUNTIME_NAME);
+        }
+        return publicTimeoutExecutor;
+    }
+
+    /*
+     * There is no queue: a call that cannot have a thread now fails instead of spending its
+     * timeout waiting behind abandoned calls.
+     */
+    private static ExecutorService newTimeoutExecutor(ThreadFactory threads, final String runtimeName) {
+        final int size = Integer.getInteger(TIMEOUT_THREADS_PROPERTY, 4 * Runtime.getRuntime().availableProcessors());
+        return new ThreadPoolExecutor(0, size, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threads,
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("The " + runtimeName + " Clojure runtime is closed");
+                        }
+                        throw new RejectedExecutionException("All " + size + " timeout threads of the " + runtimeName
+                                + " Clojure runtime are busy; " + TIMEOUT_THREADS_PROPERTY + " sets the limit");
+                    }
+                });
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClJ#pinnedExecutor()
+     */
+    public synchronized ExecutorService pinnedExecutor() {
+        if (!localThreadData.hasValue()) {
+            return publicPinnedExecutor();
+        }
+        if (pinnedExecutor == null) {
+            pinnedExecutor = newPinnedExecutor(pinnedThreads("clj-pinned-"));
+        }
+        return pinnedExecutor;
+    }
+
+    private static synchronized ExecutorService publicPinnedExecutor() {
+        if (publicPinnedExecutor == null) {
+            publicPinnedExecutor = newPinnedExecutor(publicThreads("clj-pinned-"));
+        }
+        return publicPinnedExecutor;
+    }
+
+    private static ExecutorService newPinnedExecutor(ThreadFactory threads) {
+        int size = Integer.getInteger(PINNED_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threads);
+    }
+
+    // Threads for this private runtime, or for the public runtime when this instance uses it
+    private ThreadFactory pinnedThreads(String prefix) {
+        if (!localThreadData.hasValue()) {
+            return publicThreads(prefix);
+        }
+        return new PinnedThreadFactory(prefix + runtimeName, this, localThreadData.get().classloader);
+    }
+
+    /*
+     * The public runtime's executors outlive any one ClJ instance, so their threads belong to no
+     * instance.  They inherit their context classloader as ordinary threads do.
+     */
+    private static ThreadFactory publicThreads(String prefix) {
+        return new PinnedThreadFactory(prefix + PUBLIC_RUNTIME_NAME, null, null);
+    }
+
+    /*
+     * Creates daemon threads that belong to one runtime.  A private runtime's threads start with
+     * its classloader as their context classloader and keep it, so safeCall can skip its per-call
+     * setup on them.
+     */
+    private static final class PinnedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final ClJ runtime;
+        private final ClassLoader classloader;
+        private final AtomicInteger count = new AtomicInteger();
+
+        PinnedThreadFactory(String prefix, ClJ runtime, ClassLoader classloader) {
+            this.prefix = prefix;
+            this.runtime = runtime;
+            this.classloader = classloader;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new PinnedThread(r, prefix + "-" + count.incrementAndGet(), runtime);
+            thread.setDaemon(true);
+            if (classloader != null) {
+                thread.setContextClassLoader(classloader);
+            }
+            return thread;
+        }
+    }
+
+    private static final class PinnedThread extends Thread {
+        private final ClJ runtime;
+
+        PinnedThread(Runnable r, String name, ClJ runtime) {
+            super(r, name);
+            this.runtime = runtime;
+        }
+
+        boolean isPinnedTo(ClJ clj) {
+            return runtime != null && runtime == clj;
+        }
+    }
+
+    private boolean onPinnedThread() {
+        Thread current = Thread.currentThread();
+        return current instanceof PinnedThread && ((PinnedThread) current).isPinnedTo(this);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#invokeWithOutput(java.io.Writer, java.io.Writer, java.lang.Object, java.lang.Object[])
+     */
+    public <T> T invokeWithOutput(Writer out, Writer err, Object fnObject, Object...args) {
+        Associative bindings = PersistentArrayMap.EMPTY;
+        if (out != null) {
+            bindings = bindings.assoc(RT.OUT, out);
+        }
+        if (err != null) {
+            bindings = bindings.assoc(RT.ERR, err);
+        }
+        return invokeWithBindings(bindings, fnObject, args);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#invokeWithOutput(java.io.OutputStream, java.io.OutputStream, java.lang.Object, java.lang.Object[])
+     */
+    public <T> T invokeWithOutput(OutputStream out, OutputStream err, Object fnObject, Object...args) {
+        EncodingWriter[] writers = outputWriters.get();
+        if (writers == null) {
+            writers = new EncodingWriter[] { new EncodingWriter(), new EncodingWriter() };
+            outputWriters.set(writers);
+        } else if (writers[0].isAttached() || writers[1].isAttached()) {
+            // A nested call; the outer call still owns this thread's writers
+            writers = new EncodingWriter[] { new EncodingWriter(), new EncodingWriter() };
+        }
+        EncodingWriter outWriter = attach(writers[0], out);
+        EncodingWriter errWriter = attach(writers[1], err);
+        try {
+            return invokeWithOutput(outWriter, errWriter, fnObject, args);
+        } finally {
+            detach(fnObject, writers);
+        }
+    }
+
+    private static EncodingWriter attach(EncodingWriter writer, OutputStream stream) {
+        if (stream == null) {
+            return null;
+        }
+        writer.attach(stream);
+        return writer;
+    }
+
+    /*
+     * Write what the call printed without flushing the streams.  Every writer is detached even if
+     * one stream fails, so the thread's writers stay reusable.
+     */
+    private static void detach(Object fn, EncodingWriter... writers) {
+        IOException failure = null;
+        for (EncodingWriter writer : writers) {
+            try {
+                writer.detach();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Cannot write the output of " + fn, failure);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#bindings(java.util.Map)
+     */
+    public ClojureBindings bindings(Map<?, ?> bindings) {
+        Associative frame = PersistentArrayMap.EMPTY;
+        for (Map.Entry<?, ?> binding : bindings.entrySet()) {
+            Object key = binding.getKey();
+            Object var = key instanceof String ? var((String) key) : key;
+            if (!(var instanceof Var)) {
+                throw new IllegalArgumentException(key + " is not a Var");
+            }
+            if (!((Var) var).isDynamic()) {
+                throw new IllegalArgumentException(var + " is not dynamic and cannot be bound");
+            }
+            frame = frame.assoc(var, binding.getValue());
+        }
+        return new PreparedBindings(this, frame);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#withBindings(com.bradsdeals.clj.ClojureBindings, java.util.concurrent.Callable)
+     */
+    public <T> T withBindings(ClojureBindings bindings, final Callable<T> call) {
+        if (!(bindings instanceof PreparedBindings) || !((PreparedBindings) bindings).isFrom(this)) {
+            throw new IllegalArgumentException("Bindings were prepared by a different Clojure runtime");
+        }
+        final Associative frame = ((PreparedBindings) bindings).frame;
+        // safeCall's callDepth covers the whole block, so the nested calls call makes never
+        // reach depth zero and wipe dvals while the frame is pushed.
+        return safeCall(new Callable<T>() {
+            public T call() throws Exception {
+                Var.pushThreadBindings(frame);
+                try {
+                    return call.call();
+                } finally {
+                    Var.popThreadBindings();
+                }
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.IClojure#withBindings(java.util.Map, java.util.concurrent.Callable)
+     */
+    public <T> T withBindings(Map<?, ?> bindings, Callable<T> call) {
+        return withBindings(bindings(bindings), call);
+    }
+
+    /*
+     * A binding map built once and pushed as-is.  The public runtime's instances share one set
+     * of Vars, so bindings from any public ClJ may be used with any other.
+     */
+    private static final class PreparedBindings implements ClojureBindings {
+        final ClJ owner;
+        final Associative frame;
+
+        PreparedBindings(ClJ owner, Associative frame) {
+            this.owner = owner;
+            this.frame = frame;
+        }
+
+        boolean isFrom(ClJ clj) {
+            return clj == owner || !clj.localThreadData.hasValue() && !owner.localThreadData.hasValue();
+        }
+
+        public int size() {
+            return ((IPersistentMap) frame).count();
+        }
+    }
+
+    /*
+     * Push one binding frame around a single call.  The frame is popped before safeCall's
+     * postInvoke, so callDepth bookkeeping is unaffected.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T invokeWithBindings(final Associative bindings, final Object fnObject, final Object...args) {
+        final IFn fn = (IFn) fnObject;
+        return toJava(recordedCall(fn, args, NO_EXPECTED_ERRORS, new Callable<T>() {
+            public T call() throws Exception {
+                Var.pushThreadBindings(bindings);
+                try {
+                    return (T) invokeInternal(fn, args);
+                } finally {
+                    Var.popThreadBindings();
+                }
+            }
+        }));
+    }
+
     /**
      * Turn a Clojure result into an object that is easier for Java to handle.
      *
@@ -297,50 +1003,226 @@ public class ClJ implements IClJ {
 
 
     public static class ClojureModule implements InvocationHandler {
-        private IClojure clj;
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+        private ClJ clj;
+        private ClJMetrics metrics;
         private Map<String, String> nsAliases;
-        @SuppressWarnings("unchecked")
-        private Map<String,IFn> fnCache = hashMap();
+        private volatile FnTable fnTable = FnTable.EMPTY;
+        private Map<Method, MemoCache> memoCaches = new HashMap<Method, MemoCache>();
+        private Map<Method, Long> timeoutsNanos = new HashMap<Method, Long>();
+        private Map<Method, Set<String>> expectedErrors = new HashMap<Method, Set<String>>();
+        private Map<Method, ReturnCoercion> coercions = new HashMap<Method, ReturnCoercion>();
 
-        protected ClojureModule(IClojure clj, String[] loadPackages, String... nsAliases) {
+        protected ClojureModule(ClJ clj, ClJMetrics metrics, Class<?> clojureInterface, String[] loadPackages, String... nsAliases) {
             this.clj = clj;
+            this.metrics = metrics;
             this.nsAliases = computeNsAliases(nsAliases);
-            for (String ns : loadPackages) {
-                loadNamespaceFromClasspath(ns);
+            for (Method method : clojureInterface.getMethods()) {
+                coercions.put(method, ReturnCoercion.forMethod(method));
+                Memoize memoize = method.getAnnotation(Memoize.class);
+                if (memoize != null) {
+                    String name = clojureInterface.getName() + "#" + method.getName();
+                    memoCaches.put(method, metrics.memoCache(name, memoize));
+                }
+                Timeout timeout = method.getAnnotation(Timeout.class);
+                if (timeout != null) {
+                    timeoutsNanos.put(method, timeout.unit().toNanos(timeout.value()));
+                }
+                ExpectedErrors expected = method.getAnnotation(ExpectedErrors.class);
+                if (expected != null) {
+                    expectedErrors.put(method, new HashSet<String>(Arrays.asList(expected.value())));
+                }
+            }
+            // Required namespaces are resolved lazily, by each method's first call
+            if (loadPackages.length > 0) {
+                clj.loadNamespaces(loadPackages, new String[0]);
             }
         }
 
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            IFn fn = fnCache.get(method.getName());
+            // Each call runs entirely against the table it read here, so a reload that publishes
+            // a new table never changes the function under an in-flight call.  An odd generation
+            // means a reload is running and its definitions may be half-updated, so calls keep
+            // using the last finished generation's table until the reload completes.
+            FnTable table = fnTable;
+            long generation = clj.reloadGeneration.get();
+            boolean reloading = (generation & 1) != 0;
+            if (!reloading && table.generation != generation) {
+                table = new FnTable(generation);
+            }
+            ResolvedFn fn = table.fns.get(method.getName());
+            metrics.recordVarCacheLookup(fn != null);
+            boolean cacheable = !reloading;
+            MemoCache memo = memoCaches.get(method);
             if (fn == null) {
-                Ns alias = method.getAnnotation(Ns.class);
-                if (alias == null) {
-                    try {
-                        fn = (IFn) clj.var(method.getName());
-                    } catch (Exception e) {
-                        throw new IllegalStateException("Function: " + method.getName() + "is not defined in the core namespace.", e);
+                fn = resolve(method);
+                // A reload may have started while resolving
+                cacheable = cacheable && clj.reloadGeneration.get() == generation;
+                if (cacheable) {
+                    fnTable = table.with(method.getName(), fn);
+                }
+            } else if (!reloading && fn.isRedefined()) {
+                // Redefined outside reload(), e.g.: by alter-var-root, with-redefs or a REPL defn
+                fn = new ResolvedFn(fn.name);
+                cacheable = clj.reloadGeneration.get() == generation;
+                if (cacheable) {
+                    fnTable = table.with(method.getName(), fn);
+                }
+                if (memo != null) {
+                    memo.invalidateAll();
+                }
+            }
+            args = validateArgTypes(method, args);
+            if (memo == null) {
+                return call(method, fn, args);
+            }
+            Object key = MemoCache.key(args);
+            Object result = memo.get(key, table.generation);
+            if (result == MemoCache.MISSING) {
+                result = call(method, fn, args);
+                if (cacheable) {
+                    memo.put(key, args, result, table.generation);
+                }
+            }
+            return result;
+        }
+
+        private Object call(Method method, ResolvedFn fn, Object[] args) throws Throwable {
+            Long timeoutNanos = timeoutsNanos.get(method);
+            Set<String> expected = expectedErrors.get(method);
+            if (expected == null) {
+                expected = NO_EXPECTED_ERRORS;
+            }
+            ReturnCoercion coercion = coercions.get(method);
+            if (coercion == null) {
+                coercion = ReturnCoercion.TO_JAVA;
+            }
+            try {
+                return timeoutNanos == null
+                        ? clj.invokeResolved(fn.name, fn.target, expected, coercion, toClojureArgs(args))
+                        : clj.invokeResolvedWithTimeout(timeoutNanos, fn.name, fn.target, expected, coercion, toClojureArgs(args));
+            } catch (ClJException e) {
+                throw declaredCause(method, e);
+            }
+        }
+
+        // A checked exception the interface method declares is thrown as itself.
+        private static Throwable declaredCause(Method method, ClJException e) {
+            Throwable cause = e.getCause();
+            if (cause != null && !(cause instanceof RuntimeException) && !(cause instanceof Error)) {
+                for (Class<?> declared : method.getExceptionTypes()) {
+                    if (declared.isInstance(cause)) {
+                        return cause;
                     }
+                }
+            }
+            return e;
+        }
+
+        private ResolvedFn resolve(Method method) {
+            IFn fn;
+            Ns alias = method.getAnnotation(Ns.class);
+            if (alias == null) {
+                try {
+                    fn = (IFn) clj.var(method.getName());
+                } catch (Exception e) {
+                    throw new IllegalStateException("Function: " + method.getName() + "is not defined in the core namespace.", e);
+                }
+            } else {
+                String namespace = nsAliases.get(alias.value());
+                if (namespace == null) {
+                    throw new IllegalStateException(alias.value() + " is not aliased to any namespace.");
+                }
+                try {
+                    fn = (IFn) clj.var(namespace + "/" + method.getName());
+                } catch (Exception e) {
+                    throw new IllegalStateException("Undefined function: " + namespace + "/" + method.getName(), e);
+                }
+            }
+            if (fn == null) {
+                throw new IllegalStateException("Method : " + method.getName() + " is not defined in the specified Clojure modules");
+            }
+            return new ResolvedFn(fn);
+        }
+
+        /*
+         * An immutable method name to function table for one reload generation.  Misses copy the
+         * table; there are only as many misses as the interface has methods per generation.
+         */
+        private static final class FnTable {
+            static final FnTable EMPTY = new FnTable(0L);
+
+            final long generation;
+            final Map<String, ResolvedFn> fns;
+
+            FnTable(long generation) {
+                this(generation, Collections.<String, ResolvedFn>emptyMap());
+            }
+
+            private FnTable(long generation, Map<String, ResolvedFn> fns) {
+                this.generation = generation;
+                this.fns = fns;
+            }
+
+            FnTable with(String methodName, ResolvedFn fn) {
+                Map<String, ResolvedFn> newFns = new HashMap<String, ResolvedFn>(fns);
+                newFns.put(methodName, fn);
+                return new FnTable(generation, newFns);
+            }
+        }
+
+        /*
+         * A Var together with the function it was bound to when resolved.  Dynamic Vars are
+         * invoked through the Var so thread bindings are still honored.  Outside a reload, callers
+         * check isRedefined on every call, so a new root binding is picked up immediately.
+         */
+        private static final class ResolvedFn {
+            final IFn name;
+            final IFn target;
+
+            ResolvedFn(IFn fn) {
+                this.name = fn;
+                if (fn instanceof Var && !((Var) fn).isDynamic() && ((Var) fn).getRawRoot() instanceof IFn) {
+                    this.target = (IFn) ((Var) fn).getRawRoot();
                 } else {
-                    String namespace = nsAliases.get(alias.value());
-                    if (namespace == null) {
-                        throw new IllegalStateException(alias.value() + " is not aliased to any namespace.");
-                    }
-                    try {
-                        fn = (IFn) clj.var(namespace + "/" + method.getName());
-                    } catch (Exception e) {
-                        throw new IllegalStateException("Undefined function: " + namespace + "/" + method.getName(), e);
-                    }
+                    this.target = fn;
                 }
-                if (fn == null) {
-                    throw new IllegalStateException("Method : " + method.getName() + " is not defined in the specified Clojure modules");
+            }
+
+            boolean isRedefined() {
+                return target != name && ((Var) name).getRawRoot() != target;
+            }
+        }
+
+        /*
+         * Primitive arrays become primitive vectors so elements are never boxed in Clojure.
+         */
+        private Object[] toClojureArgs(Object[] args) {
+            if (args == null) {
+                return args;
+            }
+            Object[] result = args;
+            for (int i = 0; i < args.length; i++) {
+                Object arg = args[i];
+                if (arg instanceof long[] || arg instanceof double[]) {
+                    if (result == args) {
+                        result = args.clone();
+                    }
+                    result[i] = arg instanceof long[]
+                            ? PrimitiveVectors.longVector((long[]) arg)
+                            : PrimitiveVectors.doubleVector((double[]) arg);
                 }
-                fnCache.put(method.getName(), fn);
             }
-            validateArgTypes(method, args);
-            return clj.invoke(fn, args);
+            return result;
         }
 
-        private void validateArgTypes(Method method, Object[] args) {
+        /*
+         * Returns args, or a copy of args with ByteBuffer/MappedFile arguments adapted to a stream
+         * or reader when the parameter's Pt annotation asks for one.
+         */
+        private Object[] validateArgTypes(Method method, Object[] args) {
+            Object[] result = args;
             final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
             for (int argNum = 0; argNum < parameterAnnotations.length; argNum++) {
                 Annotation[] annotations = parameterAnnotations[argNum];
@@ -355,11 +1237,40 @@ public class ClJ implements IClJ {
                             }
                         }
                         if (!found) {
-                            throw new IllegalArgumentException("Clojure function " + method.getName() + ", argument " + argNum + " (0-based) is type " + args[argNum].getClass().getName() + "; expected one of: " + getValueTypeNames(valueTypes));
+                            Object adapted = adaptBuffer(args[argNum], valueTypes);
+                            if (adapted == null) {
+                                throw new IllegalArgumentException("Clojure function " + method.getName() + ", argument " + argNum + " (0-based) is type " + args[argNum].getClass().getName() + "; expected one of: " + getValueTypeNames(valueTypes));
+                            }
+                            if (result == args) {
+                                result = args.clone();
+                            }
+                            result[argNum] = adapted;
                         }
                     }
                 }
             }
+            return result;
+        }
+
+        private Object adaptBuffer(Object arg, Class<?>[] valueTypes) {
+            if (!(arg instanceof ByteBuffer) && !(arg instanceof MappedFile)) {
+                return null;
+            }
+            for (Class<?> expectedType : valueTypes) {
+                if (expectedType.isAssignableFrom(ByteBufferInputStream.class)) {
+                    return arg instanceof MappedFile
+                            ? ((MappedFile) arg).openStream()
+                            : new ByteBufferInputStream((ByteBuffer) arg);
+                }
+            }
+            for (Class<?> expectedType : valueTypes) {
+                if (expectedType.isAssignableFrom(ByteBufferReader.class)) {
+                    return arg instanceof MappedFile
+                            ? ((MappedFile) arg).openReader(UTF_8)
+                            : new ByteBufferReader((ByteBuffer) arg, UTF_8);
+                }
+            }
+            return null;
         }
 
         private String getValueTypeNames(Class<?>[] valueTypes) {
@@ -369,29 +1280,72 @@ public class ClJ implements IClJ {
             }
             return result.toString();
         }
+    }
 
-        private IFn loadNamespace = null;
 
-        private void loadNamespaceFromClasspath(String packagePath) {
-            if (loadNamespace == null) {
-                loadNamespace = (IFn) clj.var("clojure.core/load");
+    /*
+     * Call fn via safeCall, recording the call's latency and outcome in the metrics (when enabled),
+     * in the slow-call sampler (when enabled and over its threshold) and as a JFR event (when a
+     * recording is running).
+     */
+    private <T> T recordedCall(IFn fn, Object[] args, Set<String> expectedErrors, Callable<T> runInClojure) {
+        InvocationEvent event = new InvocationEvent();
+        event.begin();
+        boolean recordMetrics = metrics.isEnabled();
+        boolean sample = slowCalls.isEnabled();
+        long start = recordMetrics || sample ? System.nanoTime() : 0L;
+        boolean failed = true;
+        try {
+            T result = safeCall(runInClojure, expectedErrors);
+            failed = false;
+            return result;
+        } finally {
+            if (recordMetrics || sample) {
+                long elapsed = System.nanoTime() - start;
+                if (recordMetrics) {
+                    metrics.recordCall(fn, elapsed, failed);
+                }
+                if (sample && slowCalls.isSlow(elapsed)) {
+                    slowCalls.record(functionName(fn), args, elapsed, failed);
+                }
+            }
+            if (event.shouldCommit()) {
+                event.function = functionName(fn);
+                event.runtime = runtimeName;
+                event.failed = failed;
+                event.commit();
             }
-            loadNamespace.invoke(packagePath);
         }
     }
 
+    private static String functionName(Object fn) {
+        if (fn instanceof Var) {
+            Var var = (Var) fn;
+            return var.ns.name + "/" + var.sym;
+        }
+        return fn.getClass().getName();
+    }
+
 
     /*
      * Support classloader-private instances of the Clojure runtime
      */
 
+    /*
+     * Threads pinned to this runtime already have its context classloader and keep their Clojure
+     * thread state between calls, so they skip preInvoke/postInvoke.
+     */
     private <T> T safeCall(Callable<T> runInClojure) {
-        if (localThreadData.hasValue()) {
+        return safeCall(runInClojure, NO_EXPECTED_ERRORS);
+    }
+
+    private <T> T safeCall(Callable<T> runInClojure, Set<String> expectedErrors) {
+        if (localThreadData.hasValue() && !onPinnedThread()) {
             ClassLoader origloader = localThreadData.get().preInvoke();
             try {
                 return runInClojure.call();
             } catch (Exception e) {
-                throw new RuntimeException("Exception calling Clojure", e);
+                throw translate(e, expectedErrors);
             } finally {
                 localThreadData.get().postInvoke(origloader);
             }
@@ -399,11 +1353,44 @@ public class ClJ implements IClJ {
             try {
                 return runInClojure.call();
             } catch (Exception e) {
-                throw new RuntimeException("Exception calling Clojure", e);
+                throw translate(e, expectedErrors);
             }
         }
     }
 
+    /*
+     * ex-info becomes a ClJException carrying its data; other unchecked exceptions, including
+     * ClJExceptions from nested calls, pass through as thrown.  Only checked exceptions are wrapped.
+     */
+    private static RuntimeException translate(Exception e, Set<String> expectedErrors) {
+        if (e instanceof ExceptionInfo) {
+            ExceptionInfo info = (ExceptionInfo) e;
+            IPersistentMap exData = info.getData();
+            Object typeValue = exData == null ? null : exData.valAt(TYPE);
+            String type = typeValue == null ? null : javaKey(typeValue);
+            Map<String, Object> data = new LinkedHashMap<String, Object>();
+            if (exData != null) {
+                for (Object entry : exData) {
+                    Map.Entry<?, ?> mapEntry = (Map.Entry<?, ?>) entry;
+                    Object value = mapEntry.getValue();
+                    data.put(javaKey(mapEntry.getKey()), value instanceof Keyword ? javaKey(value) : toJava(value));
+                }
+            }
+            return new ClJException(info.getMessage(), info, type, data, !expectedErrors.contains(type));
+        } else if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new ClJException("Exception calling Clojure", e);
+    }
+
+    private static String javaKey(Object key) {
+        if (key instanceof Keyword) {
+            Symbol symbol = ((Keyword) key).sym;
+            return symbol.getNamespace() == null ? symbol.getName() : symbol.getNamespace() + "/" + symbol.getName();
+        }
+        return String.valueOf(key);
+    }
+
     private class LocalThreadData {
         public ClassLoader classloader;
         @SuppressWarnings("rawtypes")
@@ -454,7 +1441,16 @@ public class ClJ implements IClJ {
             Var var = (Var)resolve.invoke(Symbol.create(namespacedFunction));
             if (var == null) {
                 String[] parts = namespacedFunction.split("/");
+                NamespaceLoadEvent event = new NamespaceLoadEvent();
+                event.begin();
+                long start = System.nanoTime();
                 require.invoke(Symbol.create(parts[0]));
+                metrics.recordNamespaceLoad(parts[0], System.nanoTime() - start);
+                if (event.shouldCommit()) {
+                    event.namespace = parts[0];
+                    event.runtime = runtimeName;
+                    event.commit();
+                }
                 var = RT.var(parts[0], parts[1]);
             }
             return var;
@@ -0,0 +1,283 @@
+package com.bradsdeals.clj.cache;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.bradsdeals.clj.ClJAnnotations.Memoize;
+import com.bradsdeals.clj.ClJAnnotations.Weigher;
+import com.bradsdeals.clj.MemoStats;
+
+/**
+ * The bounded result cache behind {@link Memoize}.  Entries are spread over independently
+ * locked segments, each an access-ordered LinkedHashMap holding an equal share of maxSize and
+ * maxWeight, so eviction is least-recently-used within a segment and callers hashing to
+ * different segments never contend.<p>
+ *
+ * Every entry records the reload generation it was computed in; entries from an earlier
+ * generation are treated as misses, so results of a function's previous definition are never
+ * served after a reload, even if an in-flight call stores one late.<p>
+ *
+ * Arrays and the java.util collections ClJ builds results from are mutable, so keys hold deep
+ * copies of such arguments, and such results are copied when they are stored and again for each
+ * caller.  Anything else, e.g.: Clojure's persistent collections, is shared.
+ */
+public final class MemoCache {
+    /**
+     * Returned by {@link #get(Object, long)} when the key is not cached.  Results may be null, so
+     * null cannot mark a miss.
+     */
+    public static final Object MISSING = new Object();
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final String name;
+    private final Segment[] segments;
+    private final long ttlNanos;
+    private final Weigher weigher;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Construct a cache as specified by a Memoize annotation.
+     *
+     * @param name The memoized method, as "interface#method".
+     * @param spec The method's Memoize annotation.
+     */
+    public MemoCache(String name, Memoize spec) {
+        if (spec.maxSize() < 1) {
+            throw new IllegalArgumentException(name + ": @Memoize maxSize must be positive");
+        }
+        this.name = name;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(spec.ttlMillis());
+        this.weigher = spec.weigher() == Weigher.class ? null : newWeigher(name, spec.weigher());
+
+        int segmentCount = Math.min(MAX_SEGMENTS, Integer.highestOneBit(spec.maxSize()));
+        segments = new Segment[segmentCount];
+        int maxSize = (spec.maxSize() + segmentCount - 1) / segmentCount;
+        long maxWeight = spec.maxWeight() > 0 ? (spec.maxWeight() + segmentCount - 1) / segmentCount : Long.MAX_VALUE;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize, maxWeight);
+        }
+    }
+
+    private static Weigher newWeigher(String name, Class<? extends Weigher> weigherClass) {
+        try {
+            return weigherClass.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException(name + ": cannot construct @Memoize weigher " + weigherClass.getName(), e);
+        }
+    }
+
+    /**
+     * Return the cache key for a call's arguments.
+     *
+     * @param args The call's arguments; null for no arguments.
+     * @return A key comparing arguments with {@link Arrays#deepEquals(Object[], Object[])}.
+     */
+    public static Object key(Object[] args) {
+        return new ArgsKey(args == null ? new Object[0] : (Object[]) copyOf(args));
+    }
+
+    /**
+     * Return the cached result for key, or {@link #MISSING}.
+     *
+     * @param key A key from {@link #key(Object[])}.
+     * @param generation The current reload generation.
+     * @return The cached result or MISSING.
+     */
+    public Object get(Object key, long generation) {
+        Object result = segmentFor(key).get(key, generation);
+        (result == MISSING ? misses : hits).increment();
+        return result;
+    }
+
+    /**
+     * Cache a result.
+     *
+     * @param key A key from {@link #key(Object[])}.
+     * @param args The call's arguments, passed to the weigher.
+     * @param result The result to cache.
+     * @param generation The reload generation the result was computed in.
+     */
+    public void put(Object key, Object[] args, Object result, long generation) {
+        long weight = weigher == null ? 1 : weigher.weigh(args, result);
+        if (weight < 0) {
+            throw new IllegalStateException(name + ": @Memoize weigher returned a negative weight");
+        }
+        long expiresAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : Long.MAX_VALUE;
+        segmentFor(key).put(key, new Entry(copyOf(result), weight, expiresAt, generation));
+    }
+
+    /**
+     * Discard every entry.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Return a snapshot of this cache's statistics.
+     * @return a snapshot of this cache's statistics.
+     */
+    public MemoStats stats() {
+        long size = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+                weight += segment.weight;
+            }
+        }
+        return new MemoStats(name, hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size, weight);
+    }
+
+    /*
+     * Copies arrays and the mutable collections ReturnCoercion builds, along with any of these
+     * they contain.  Map keys are not copied.
+     */
+    private static Object copyOf(Object value) {
+        if (value instanceof Object[]) {
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = copyOf(copy[i]);
+            }
+            return copy;
+        } else if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        } else if (value instanceof ArrayList) {
+            ArrayList<?> list = (ArrayList<?>) value;
+            ArrayList<Object> copy = new ArrayList<Object>(list.size());
+            for (Object element : list) {
+                copy.add(copyOf(element));
+            }
+            return copy;
+        } else if (value instanceof HashSet) {
+            HashSet<?> set = (HashSet<?>) value;
+            Set<Object> copy = new LinkedHashSet<Object>(Math.max(16, set.size() * 4 / 3 + 1));
+            for (Object element : set) {
+                copy.add(copyOf(element));
+            }
+            return copy;
+        } else if (value instanceof HashMap) {
+            HashMap<?, ?> map = (HashMap<?, ?>) value;
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>(Math.max(16, map.size() * 4 / 3 + 1));
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), copyOf(entry.getValue()));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long weight;
+        final long expiresAt;
+        final long generation;
+
+        Entry(Object value, long weight, long expiresAt, long generation) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+            this.generation = generation;
+        }
+    }
+
+    private final class Segment {
+        final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+        final int maxSize;
+        final long maxWeight;
+        long weight;
+
+        Segment(int maxSize, long maxWeight) {
+            this.maxSize = maxSize;
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized Object get(Object key, long generation) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return MISSING;
+            }
+            if (entry.generation != generation) {
+                remove(key, entry);
+                return MISSING;
+            }
+            if (entry.expiresAt != Long.MAX_VALUE && System.nanoTime() - entry.expiresAt >= 0) {
+                remove(key, entry);
+                expirations.increment();
+                return MISSING;
+            }
+            return copyOf(entry.value);
+        }
+
+        synchronized void put(Object key, Entry entry) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+            Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxSize || weight > maxWeight) && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                weight -= evicted.weight;
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+        private void remove(Object key, Entry entry) {
+            entries.remove(key);
+            weight -= entry.weight;
+        }
+    }
+
+    private static final class ArgsKey {
+        private final Object[] args;
+        private final int hash;
+
+        ArgsKey(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ArgsKey && Arrays.deepEquals(args, ((ArgsKey) obj).args);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.bradsdeals.clj.cds;
+
+import static com.bradsdeals.clj.ClJDSL.*;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import com.bradsdeals.clj.ClJ;
+import com.bradsdeals.clj.ClJAnnotations.Ns;
+import com.bradsdeals.clj.ClJAnnotations.Pt;
+import com.bradsdeals.clj.ClJAnnotations.Require;
+import com.bradsdeals.clj.IClJ;
+
+/**
+ * A training workload for building a dynamic class-data-sharing (AppCDS) archive of the classes
+ * a ClJ application loads at startup.  Run it once with the application's classpath and
+ * <code>-XX:ArchiveClassesAtExit</code> (JDK 13 or later):
+ * <code>
+ *   java -XX:ArchiveClassesAtExit=clj.jsa -cp &lt;app classpath&gt; com.bradsdeals.clj.cds.CdsTraining my.app.ns other.ns
+ * </code>
+ * then start the application with the same classpath and <code>-XX:SharedArchiveFile=clj.jsa</code>.
+ * The JVM maps the archived classes instead of loading, parsing and verifying them again.<p>
+ *
+ * The workload loads the namespaces named on the command line plus the commonly used
+ * <code>clojure.*</code> namespaces, and exercises ClJ's interface, direct and DSL call paths.
+ * The class path must contain only jars.  Only classes loaded from the JVM's class path are
+ * archived; classes Clojure compiles at runtime and classes loaded by a private runtime's
+ * classloader are not.  The JVM also skips class files older than Java 6, which includes the
+ * AOT-compiled classes in Clojure jars before 1.10, so with older Clojure versions the archive
+ * holds the JDK and ClJ classes only.
+ */
+public final class CdsTraining {
+    private static final String[] CORE_NAMESPACES = {
+        "clojure.string", "clojure.set", "clojure.walk", "clojure.java.io", "clojure.edn", "clojure.pprint", "clojure.data"
+    };
+
+    @Require({ "clojure.string :as str", "clojure.java.io :as io" })
+    interface TrainingCalls {
+        @Ns("str")
+        String replace(String source, @Pt({ String.class, Pattern.class }) Object match, String replacement);
+
+        @Ns("io")
+        void copy(@Pt({ String.class }) Object input, @Pt({ StringWriter.class }) Object output);
+    }
+
+    private CdsTraining() {
+        // Main class
+    }
+
+    /**
+     * Run the training workload.
+     *
+     * @param args Application namespaces to load in addition to the core namespaces.
+     */
+    public static void main(String[] args) {
+        IClJ clj = new ClJ();
+        clj.require(CORE_NAMESPACES);
+        if (args.length > 0) {
+            clj.require(args);
+        }
+
+        TrainingCalls calls = clj.define(TrainingCalls.class);
+        calls.replace("training", Pattern.compile("i"), "I");
+        calls.copy("training", new StringWriter());
+
+        clj.invoke("clojure.core/pr-str", Arrays.asList(1L, 2L, 3L));
+        clj.invoke("clojure.edn/read-string", "{:a [1 2 3] :b #{\"x\"}}");
+        clj.invokeWithOutput(new StringWriter(), null, clj.var("clojure.pprint/pprint"), Arrays.asList("a", "b"));
+        doAll(clj, require("clojure.string :as str", "clojure.core :as core"),
+                let(vars("upper", $("str/upper-case", "training")),
+                        $("core/str", "upper", ",", "upper")));
+        System.out.println("CDS training workload complete: " + clj.metrics().functionStats().keySet());
+    }
+}
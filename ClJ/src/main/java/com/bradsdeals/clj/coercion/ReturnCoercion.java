@@ -0,0 +1,491 @@
+package com.bradsdeals.clj.coercion;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.bradsdeals.clj.ClJ;
+import com.bradsdeals.clj.wrappers.IClojureIterable;
+import com.bradsdeals.clj.wrappers.PrimitiveVectors;
+
+import clojure.lang.BigInt;
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentSet;
+import clojure.lang.IPersistentVector;
+import clojure.lang.Named;
+import clojure.lang.PersistentList;
+import clojure.lang.RT;
+import clojure.lang.Ratio;
+
+/**
+ * Converts a Clojure result into the declared return type of a Clojure interface method.  A
+ * coercion is compiled once per method from its generic return type, so calls pay for exactly
+ * the conversion their method needs:
+ * <ul>
+ * <li><code>void</code> methods discard the result.
+ * <li>Primitive and boxed numeric returns are narrowed with Clojure's range-checked casts, so an
+ *     <code>int</code> method accepts a Long result but rejects one that does not fit.
+ *     <code>boolean</code> follows Clojure truthiness.
+ * <li><code>BigInteger</code> and <code>BigDecimal</code> accept any Clojure number.
+ *     <code>String</code> accepts strings, keywords and symbols (without the leading colon) and
+ *     other CharSequences.
+ * <li><code>List</code>, <code>Collection</code>, <code>Iterable</code>, <code>Set</code> and
+ *     <code>Map</code> accept any Clojure collection.  Persistent vectors, lists, sets and maps
+ *     whose elements need no conversion are returned as they are; anything else, including lazy
+ *     sequences, is copied so it is fully realized inside the call.  <code>Map&lt;String, ?&gt;</code>
+ *     converts keyword keys to Strings.  nil becomes an empty collection.
+ * <li>Arrays are filled from any Clojure collection, converting each element.
+ * <li><code>Optional&lt;T&gt;</code> maps nil to <code>Optional.empty()</code>.
+ * <li><code>Object</code> and the {@link IClojureIterable} types keep the wrapping done by
+ *     {@link ClJ#toJava(Object)}.
+ * </ul>
+ * Any other type must already be the result's type.  Collections returned as they are, and
+ * copies of them, may be immutable.
+ */
+public abstract class ReturnCoercion {
+    /**
+     * Wraps Clojure collections as {@link ClJ#toJava(Object)} does.
+     */
+    public static final ReturnCoercion TO_JAVA = new ReturnCoercion("Object") {
+        @Override
+        public Object coerce(Object result) {
+            return ClJ.toJava(result);
+        }
+    };
+
+    private static final ReturnCoercion IDENTITY = new ReturnCoercion("Object") {
+        @Override
+        public Object coerce(Object result) {
+            return result;
+        }
+    };
+
+    private static final ReturnCoercion VOID = new ReturnCoercion("void") {
+        @Override
+        public Object coerce(Object result) {
+            return null;
+        }
+    };
+
+    private final String description;
+
+    private ReturnCoercion(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Convert a Clojure result to this coercion's type.  Call this inside the Clojure call so lazy
+     * results are realized with the call's bindings and classloader.
+     *
+     * @param result The Clojure result.
+     * @return The converted result.
+     * @throws ClassCastException if result cannot be converted.
+     * @throws IllegalArgumentException if a number does not fit the target type.
+     */
+    public abstract Object coerce(Object result);
+
+    /**
+     * Compile the coercion for a method's generic return type.
+     *
+     * @param method The Clojure interface method.
+     * @return The method's coercion.
+     */
+    public static ReturnCoercion forMethod(Method method) {
+        return forType(method.getGenericReturnType(), true);
+    }
+
+    /*
+     * topLevel keeps the IClojureIterable wrapping for Object returns; elements of collections
+     * declared as Object are passed through unchanged.
+     */
+    private static ReturnCoercion forType(Type type, boolean topLevel) {
+        Class<?> raw = rawType(type);
+        if (raw == void.class || raw == Void.class) {
+            return VOID;
+        } else if (raw == Object.class) {
+            return topLevel ? TO_JAVA : IDENTITY;
+        } else if (IClojureIterable.class.isAssignableFrom(raw)) {
+            return new Checked(raw, TO_JAVA);
+        } else if (raw.isPrimitive() || Number.class.isAssignableFrom(raw) || raw == Boolean.class || raw == Character.class) {
+            return scalar(raw);
+        } else if (raw == String.class) {
+            return new StringCoercion();
+        } else if (raw == Optional.class) {
+            return new OptionalCoercion(forType(typeArgument(type, 0), false));
+        } else if (raw.isArray()) {
+            return array(raw);
+        } else if (raw == Map.class) {
+            return new MapCoercion(forType(typeArgument(type, 0), false), forType(typeArgument(type, 1), false));
+        } else if (raw == Set.class) {
+            return new SetCoercion(forType(typeArgument(type, 0), false));
+        } else if (raw == List.class || raw == Collection.class || raw == Iterable.class) {
+            return new ListCoercion(forType(typeArgument(type, 0), false));
+        }
+        return new Checked(raw, IDENTITY);
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return rawType(((ParameterizedType) type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return rawType(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            return ((ParameterizedType) type).getActualTypeArguments()[index];
+        }
+        return Object.class;
+    }
+
+    private static ReturnCoercion array(Class<?> arrayType) {
+        if (arrayType == long[].class) {
+            return new ReturnCoercion("long[]") {
+                @Override
+                public Object coerce(Object result) {
+                    return PrimitiveVectors.toLongArray(result);
+                }
+            };
+        } else if (arrayType == double[].class) {
+            return new ReturnCoercion("double[]") {
+                @Override
+                public Object coerce(Object result) {
+                    return PrimitiveVectors.toDoubleArray(result);
+                }
+            };
+        }
+        Class<?> componentType = arrayType.getComponentType();
+        return new ArrayCoercion(arrayType, forType(componentType, false));
+    }
+
+    /**
+     * @return true if this coercion returns every value unchanged.
+     */
+    boolean isIdentity() {
+        return this == IDENTITY;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    ClassCastException cannotConvert(Object result) {
+        return new ClassCastException("Cannot return " + result.getClass().getName() + " as " + description);
+    }
+
+    /*
+     * Scalars
+     */
+
+    private static ReturnCoercion scalar(Class<?> type) {
+        final boolean primitive = type.isPrimitive();
+        if (type == int.class || type == Integer.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.intCast(result); }
+            };
+        } else if (type == long.class || type == Long.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.longCast(result); }
+            };
+        } else if (type == double.class || type == Double.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.doubleCast(result); }
+            };
+        } else if (type == float.class || type == Float.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.floatCast(result); }
+            };
+        } else if (type == short.class || type == Short.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.shortCast(result); }
+            };
+        } else if (type == byte.class || type == Byte.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.byteCast(result); }
+            };
+        } else if (type == char.class || type == Character.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return RT.charCast(result); }
+            };
+        } else if (type == boolean.class || type == Boolean.class) {
+            // Truthiness: nil is false rather than an error, even for boolean.
+            return new ReturnCoercion(type.getName()) {
+                @Override
+                public Object coerce(Object result) {
+                    return primitive || result != null ? Boolean.valueOf(RT.booleanCast(result)) : null;
+                }
+            };
+        } else if (type == BigInteger.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return toBigInteger(result); }
+            };
+        } else if (type == BigDecimal.class) {
+            return new Scalar(type) {
+                @Override Object convert(Object result) { return toBigDecimal(result); }
+            };
+        }
+        return new Checked(type, IDENTITY);
+    }
+
+    private static BigInteger toBigInteger(Object result) {
+        if (result instanceof BigInteger) {
+            return (BigInteger) result;
+        } else if (result instanceof BigInt) {
+            return ((BigInt) result).toBigInteger();
+        } else if (result instanceof BigDecimal) {
+            return ((BigDecimal) result).toBigInteger();
+        } else if (result instanceof Ratio) {
+            return ((Ratio) result).bigIntegerValue();
+        } else if (result instanceof Double || result instanceof Float) {
+            return BigDecimal.valueOf(((Number) result).doubleValue()).toBigInteger();
+        }
+        return BigInteger.valueOf(((Number) result).longValue());
+    }
+
+    private static BigDecimal toBigDecimal(Object result) {
+        if (result instanceof BigDecimal) {
+            return (BigDecimal) result;
+        } else if (result instanceof BigInt) {
+            return new BigDecimal(((BigInt) result).toBigInteger());
+        } else if (result instanceof BigInteger) {
+            return new BigDecimal((BigInteger) result);
+        } else if (result instanceof Ratio) {
+            return ((Ratio) result).decimalValue();
+        } else if (result instanceof Double || result instanceof Float) {
+            return BigDecimal.valueOf(((Number) result).doubleValue());
+        }
+        return BigDecimal.valueOf(((Number) result).longValue());
+    }
+
+    /*
+     * A number or character.  nil is an error for primitives and passes through for boxed types.
+     */
+    private abstract static class Scalar extends ReturnCoercion {
+        private final boolean primitive;
+
+        Scalar(Class<?> type) {
+            super(type.getName());
+            this.primitive = type.isPrimitive();
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            if (result == null) {
+                if (primitive) {
+                    throw new NullPointerException("Cannot return nil as " + this);
+                }
+                return null;
+            }
+            try {
+                return convert(result);
+            } catch (ClassCastException e) {
+                throw cannotConvert(result);
+            }
+        }
+
+        abstract Object convert(Object result);
+    }
+
+    private static final class StringCoercion extends ReturnCoercion {
+        StringCoercion() {
+            super("java.lang.String");
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            if (result == null || result instanceof String) {
+                return result;
+            } else if (result instanceof Named) {
+                Named named = (Named) result;
+                return named.getNamespace() == null ? named.getName() : named.getNamespace() + "/" + named.getName();
+            } else if (result instanceof CharSequence || result instanceof Character) {
+                return result.toString();
+            }
+            throw cannotConvert(result);
+        }
+    }
+
+    /*
+     * Any other class: apply before, then check the result is an instance.
+     */
+    private static final class Checked extends ReturnCoercion {
+        private final Class<?> type;
+        private final ReturnCoercion before;
+
+        Checked(Class<?> type, ReturnCoercion before) {
+            super(type.getName());
+            this.type = type;
+            this.before = before;
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            Object converted = before.coerce(result);
+            if (converted == null || type.isInstance(converted)) {
+                return converted;
+            }
+            throw cannotConvert(result);
+        }
+    }
+
+    private static final class OptionalCoercion extends ReturnCoercion {
+        private final ReturnCoercion value;
+
+        OptionalCoercion(ReturnCoercion value) {
+            super("java.util.Optional<" + value + ">");
+            this.value = value;
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            return result == null ? Optional.empty() : Optional.ofNullable(value.coerce(result));
+        }
+    }
+
+    /*
+     * Collections
+     */
+
+    private static Collection<?> elements(Object result, ReturnCoercion coercion) {
+        if (result instanceof IClojureIterable) {
+            result = ((IClojureIterable<?>) result).toClojure();
+        }
+        if (result instanceof Collection) {
+            return (Collection<?>) result;
+        }
+        try {
+            Collection<?> seq = (Collection<?>) RT.seq(result);
+            return seq == null ? Collections.emptyList() : seq;
+        } catch (IllegalArgumentException e) {
+            throw coercion.cannotConvert(result);
+        }
+    }
+
+    private static final class ListCoercion extends ReturnCoercion {
+        private final ReturnCoercion element;
+
+        ListCoercion(ReturnCoercion element) {
+            super("java.util.List<" + element + ">");
+            this.element = element;
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            if (result == null) {
+                return Collections.emptyList();
+            } else if (element.isIdentity() && (result instanceof IPersistentVector || result instanceof PersistentList)) {
+                return result;
+            }
+            Collection<?> elements = elements(result, this);
+            List<Object> list = new ArrayList<Object>(elements.size());
+            for (Object e : elements) {
+                list.add(element.coerce(e));
+            }
+            return list;
+        }
+    }
+
+    private static final class SetCoercion extends ReturnCoercion {
+        private final ReturnCoercion element;
+
+        SetCoercion(ReturnCoercion element) {
+            super("java.util.Set<" + element + ">");
+            this.element = element;
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            if (result == null) {
+                return Collections.emptySet();
+            } else if (element.isIdentity() && result instanceof IPersistentSet && result instanceof Set) {
+                return result;
+            }
+            Collection<?> elements = elements(result, this);
+            Set<Object> set = new LinkedHashSet<Object>(Math.max(16, elements.size() * 4 / 3 + 1));
+            for (Object e : elements) {
+                set.add(element.coerce(e));
+            }
+            return set;
+        }
+    }
+
+    private static final class MapCoercion extends ReturnCoercion {
+        private final ReturnCoercion key;
+        private final ReturnCoercion value;
+
+        MapCoercion(ReturnCoercion key, ReturnCoercion value) {
+            super("java.util.Map<" + key + ", " + value + ">");
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            if (result instanceof IClojureIterable) {
+                result = ((IClojureIterable<?>) result).toClojure();
+            }
+            if (result == null) {
+                return Collections.emptyMap();
+            } else if (!(result instanceof Map)) {
+                throw cannotConvert(result);
+            } else if (key.isIdentity() && value.isIdentity() && result instanceof IPersistentMap) {
+                return result;
+            }
+            Map<?, ?> source = (Map<?, ?>) result;
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>(Math.max(16, source.size() * 4 / 3 + 1));
+            for (Map.Entry<?, ?> entry : source.entrySet()) {
+                map.put(key.coerce(entry.getKey()), value.coerce(entry.getValue()));
+            }
+            return map;
+        }
+    }
+
+    private static final class ArrayCoercion extends ReturnCoercion {
+        private final Class<?> arrayType;
+        private final ReturnCoercion element;
+
+        ArrayCoercion(Class<?> arrayType, ReturnCoercion element) {
+            super(arrayType.getComponentType().getName() + "[]");
+            this.arrayType = arrayType;
+            this.element = element;
+        }
+
+        @Override
+        public Object coerce(Object result) {
+            if (result == null || arrayType.isInstance(result)) {
+                return result;
+            }
+            Collection<?> elements = elements(result, this);
+            Object array = Array.newInstance(arrayType.getComponentType(), elements.size());
+            int i = 0;
+            for (Object e : elements) {
+                Array.set(array, i++, element.coerce(e));
+            }
+            return array;
+        }
+    }
+}
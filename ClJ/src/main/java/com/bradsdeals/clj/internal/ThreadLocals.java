@@ -0,0 +1,138 @@
+package com.bradsdeals.clj.internal;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+
+/**
+ * Inspects other threads' ThreadLocal values.  The JDK offers no API for this, so it reads
+ * Thread's private ThreadLocalMap reflectively.  On Java 16 and later that requires
+ * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code>; without it {@link #isAvailable()} is
+ * false and the methods here do nothing.<p>
+ *
+ * Reads are racy: a thread setting or removing a value while it is being inspected may or may
+ * not be seen.
+ */
+public final class ThreadLocals {
+    private static final Field THREAD_LOCALS;
+    private static final Field TABLE;
+    private static final Field VALUE;
+
+    static {
+        Field threadLocals = null;
+        Field table = null;
+        Field value = null;
+        try {
+            threadLocals = Thread.class.getDeclaredField("threadLocals");
+            threadLocals.setAccessible(true);
+            Class<?> mapClass = threadLocals.getType();
+            table = mapClass.getDeclaredField("table");
+            table.setAccessible(true);
+            value = table.getType().getComponentType().getDeclaredField("value");
+            value.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            threadLocals = null;
+        } catch (RuntimeException e) {
+            // InaccessibleObjectException or SecurityException
+            threadLocals = null;
+        }
+        THREAD_LOCALS = threadLocals;
+        TABLE = table;
+        VALUE = value;
+    }
+
+    private ThreadLocals() {
+        // Static utility
+    }
+
+    /**
+     * @return true if other threads' ThreadLocal values can be inspected.
+     */
+    public static boolean isAvailable() {
+        return THREAD_LOCALS != null;
+    }
+
+    /**
+     * Count the live threads holding a value for the specified ThreadLocal.
+     *
+     * @param threadLocal The ThreadLocal.
+     * @return the number of threads holding a value, or -1 if they cannot be inspected.
+     */
+    public static int countThreadsHolding(ThreadLocal<?> threadLocal) {
+        if (!isAvailable()) {
+            return -1;
+        }
+        int count = 0;
+        for (Thread thread : allThreads()) {
+            if (entryFor(thread, threadLocal) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove the specified ThreadLocal's value from every live thread.  Only call this for a
+     * ThreadLocal that no running code will use again, e.g.: one belonging to a runtime being
+     * closed, since the owning threads are not synchronized with.
+     *
+     * @param threadLocal The ThreadLocal.
+     * @return the number of threads whose value was removed, or -1 if they cannot be inspected.
+     */
+    public static int removeEverywhere(ThreadLocal<?> threadLocal) {
+        if (!isAvailable()) {
+            return -1;
+        }
+        int count = 0;
+        for (Thread thread : allThreads()) {
+            Reference<?> entry = entryFor(thread, threadLocal);
+            if (entry != null) {
+                try {
+                    VALUE.set(entry, null);
+                } catch (IllegalAccessException e) {
+                    continue;
+                }
+                // A cleared key marks the entry stale, so the thread's map expunges it
+                entry.clear();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Reference<?> entryFor(Thread thread, ThreadLocal<?> threadLocal) {
+        try {
+            Object map = THREAD_LOCALS.get(thread);
+            if (map == null) {
+                return null;
+            }
+            Object[] table = (Object[]) TABLE.get(map);
+            for (Object entry : table) {
+                if (entry != null && ((Reference<?>) entry).get() == threadLocal && VALUE.get(entry) != null) {
+                    return (Reference<?>) entry;
+                }
+            }
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return every live thread in the JVM.
+     */
+    public static Thread[] allThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() + 16];
+        int count = root.enumerate(threads, true);
+        while (count == threads.length) {
+            threads = new Thread[threads.length * 2];
+            count = root.enumerate(threads, true);
+        }
+        Thread[] result = new Thread[count];
+        System.arraycopy(threads, 0, result, 0, count);
+        return result;
+    }
+}
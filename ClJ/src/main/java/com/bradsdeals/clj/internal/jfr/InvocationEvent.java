@@ -0,0 +1,28 @@
+package com.bradsdeals.clj.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A JFR event covering one call from Java into a Clojure function.  Only calls of at least 1ms
+ * are recorded unless the recording lowers the threshold.
+ */
+@Name("com.bradsdeals.clj.Invocation")
+@Label("Clojure Invocation")
+@Category({ "ClJ" })
+@Description("A call from Java into a Clojure function")
+@Threshold("1 ms")
+public class InvocationEvent extends Event {
+    @Label("Function")
+    public String function;
+
+    @Label("Runtime")
+    public String runtime;
+
+    @Label("Failed")
+    public boolean failed;
+}
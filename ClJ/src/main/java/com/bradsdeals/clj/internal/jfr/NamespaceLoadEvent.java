@@ -0,0 +1,22 @@
+package com.bradsdeals.clj.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event covering ClJ loading or requiring a Clojure namespace.
+ */
+@Name("com.bradsdeals.clj.NamespaceLoad")
+@Label("Clojure Namespace Load")
+@Category({ "ClJ" })
+@Description("ClJ loading or requiring a Clojure namespace")
+public class NamespaceLoadEvent extends Event {
+    @Label("Namespace")
+    public String namespace;
+
+    @Label("Runtime")
+    public String runtime;
+}
@@ -0,0 +1,20 @@
+package com.bradsdeals.clj.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event covering the construction of a ClJ runtime.  The first runtime in a classloader also
+ * covers loading Clojure itself.
+ */
+@Name("com.bradsdeals.clj.RuntimeBootstrap")
+@Label("ClJ Runtime Bootstrap")
+@Category({ "ClJ" })
+@Description("Starting a ClJ runtime")
+public class RuntimeBootstrapEvent extends Event {
+    @Label("Runtime")
+    public String runtime;
+}
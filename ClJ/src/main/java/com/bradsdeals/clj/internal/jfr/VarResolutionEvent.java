@@ -0,0 +1,23 @@
+package com.bradsdeals.clj.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event covering ClJ resolving a fully-qualified name to a Clojure Var, including any
+ * require needed to load the Var's namespace.
+ */
+@Name("com.bradsdeals.clj.VarResolution")
+@Label("Clojure Var Resolution")
+@Category({ "ClJ" })
+@Description("ClJ resolving a name to a Clojure Var")
+public class VarResolutionEvent extends Event {
+    @Label("Var")
+    public String var;
+
+    @Label("Runtime")
+    public String runtime;
+}
@@ -0,0 +1,369 @@
+package com.bradsdeals.clj.loading;
+
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.bradsdeals.clj.NamespaceLoadReport;
+import com.bradsdeals.clj.internal.jfr.NamespaceLoadEvent;
+import com.bradsdeals.clj.metrics.ClJMetrics;
+
+import clojure.lang.IDeref;
+import clojure.lang.IFn;
+import clojure.lang.IPersistentList;
+import clojure.lang.IPersistentSet;
+import clojure.lang.IPersistentVector;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.Namespace;
+import clojure.lang.PersistentArrayMap;
+import clojure.lang.RT;
+import clojure.lang.Seqable;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+
+/**
+ * Loads a set of namespaces, and the namespaces they depend on, using a thread pool.<p>
+ *
+ * The dependency graph comes from reading (not evaluating) each namespace's ns form and
+ * following its :require and :use clauses to every namespace that is not already loaded.  A
+ * namespace is only loaded once everything it depends on has finished loading, so each
+ * namespace is loaded exactly once and its own requires always find their dependencies already
+ * in <code>*loaded-libs*</code>.  Namespaces in independent subtrees load concurrently.<p>
+ *
+ * If any namespace has no ns form, or calls require, use or load outside it, its dependencies
+ * are unknown, so the whole pass falls back to loading sequentially in the order given, as
+ * Clojure itself would.  Must be called on a thread already set up to call the runtime (i.e.
+ * from inside ClJ's safeCall), with a ThreadFactory whose threads are too.
+ */
+public final class NamespaceLoader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Symbol NS = Symbol.intern("ns");
+    private static final Keyword REQUIRE = Keyword.intern("require");
+    private static final Keyword USE = Keyword.intern("use");
+    private static final Keyword RELOAD = Keyword.intern("reload");
+    private static final Set<String> LOADING_FNS = new HashSet<String>(Arrays.asList("require", "use", "load"));
+    private static final Object EOF = new Object();
+    private static final Object READ_OPTIONS = PersistentArrayMap.EMPTY
+            .assoc(Keyword.intern("eof"), EOF)
+            .assoc(Keyword.intern("read-cond"), Keyword.intern("allow"));
+
+    private final String runtimeName;
+    private final ClJMetrics metrics;
+    private final ThreadFactory threads;
+
+    private final IFn read = RT.var("clojure.core", "read");
+    private final IFn load = RT.var("clojure.core", "load");
+    private final IFn require = RT.var("clojure.core", "require");
+    private final Var loadedLibs = RT.var("clojure.core", "*loaded-libs*");
+
+    /**
+     * Construct a NamespaceLoader.
+     *
+     * @param runtimeName The runtime's name, for JFR events.
+     * @param metrics The runtime's metrics.
+     * @param threads Creates the threads that load namespaces in parallel.
+     */
+    public NamespaceLoader(String runtimeName, ClJMetrics metrics, ThreadFactory threads) {
+        this.runtimeName = runtimeName;
+        this.metrics = metrics;
+        this.threads = threads;
+    }
+
+    /**
+     * Load namespaces and their unloaded dependencies.
+     *
+     * @param loadPaths Classpath resource paths (e.g.: "/com/example/rules") to load
+     *        unconditionally, as <code>clojure.core/load</code> does.
+     * @param namespaces Namespaces to require if they are not already loaded.
+     * @return A report of what was loaded.
+     */
+    public NamespaceLoadReport load(String[] loadPaths, String[] namespaces) {
+        long start = System.nanoTime();
+        Map<String, Node> graph = new LinkedHashMap<String, Node>();
+        for (String loadPath : loadPaths) {
+            String resource = loadPath.startsWith("/") ? loadPath.substring(1) : loadPath;
+            Node node = read(resource);
+            node.loadPath = loadPath;
+            if (node.namespace == null) {
+                node.namespace = loadPath;
+            }
+            node.reloadWithRequire = resource.equals(resourcePath(node.namespace));
+            graph.put(node.namespace, node);
+        }
+        for (String namespace : namespaces) {
+            addUnloaded(graph, namespace);
+        }
+        boolean dependenciesKnown = true;
+        for (Node node : new ArrayList<Node>(graph.values())) {
+            addDependencies(graph, node);
+        }
+        for (Node node : graph.values()) {
+            dependenciesKnown &= node.dependenciesKnown;
+        }
+
+        Map<String, Long> loadTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+        int threadCount = 1;
+        if (!dependenciesKnown || graph.size() < 2) {
+            for (Node node : graph.values()) {
+                loadOne(node, loadTimes);
+            }
+        } else {
+            List<Node> order = topologicalOrder(graph);
+            threadCount = Math.min(order.size(), Runtime.getRuntime().availableProcessors());
+            loadInParallel(order, graph, threadCount, loadTimes);
+        }
+        NamespaceLoadReport report = new NamespaceLoadReport(loadTimes, System.nanoTime() - start, threadCount);
+        if (!graph.isEmpty()) {
+            metrics.recordLoadReport(report);
+        }
+        return report;
+    }
+
+    private void loadInParallel(List<Node> order, Map<String, Node> graph, int threadCount, final Map<String, Long> loadTimes) {
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount, threads);
+        try {
+            Map<String, CompletableFuture<Void>> loaded = new HashMap<String, CompletableFuture<Void>>();
+            for (final Node node : order) {
+                List<CompletableFuture<Void>> dependencies = new ArrayList<CompletableFuture<Void>>();
+                for (String dependency : node.dependencies) {
+                    if (graph.containsKey(dependency)) {
+                        dependencies.add(loaded.get(dependency));
+                    }
+                }
+                CompletableFuture<Void> ready = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]));
+                loaded.put(node.namespace, ready.thenRunAsync(new Runnable() {
+                    public void run() {
+                        loadOne(node, loadTimes);
+                    }
+                }, pool));
+            }
+            Collection<CompletableFuture<Void>> all = loaded.values();
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[all.size()])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void loadOne(Node node, Map<String, Long> loadTimes) {
+        NamespaceLoadEvent event = new NamespaceLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        if (node.loadPath == null) {
+            require.invoke(Symbol.intern(node.namespace));
+        } else if (node.reloadWithRequire) {
+            // Same as load, but also records the namespace in *loaded-libs* so dependents don't load it again.
+            require.invoke(Symbol.intern(node.namespace), RELOAD);
+        } else {
+            load.invoke(node.loadPath);
+        }
+        long nanos = System.nanoTime() - start;
+        // Load paths are reported as given, as ClJ always has.
+        String name = node.loadPath != null ? node.loadPath : node.namespace;
+        metrics.recordNamespaceLoad(name, nanos);
+        loadTimes.put(name, nanos);
+        if (event.shouldCommit()) {
+            event.namespace = name;
+            event.runtime = runtimeName;
+            event.commit();
+        }
+    }
+
+    private void addUnloaded(Map<String, Node> graph, String namespace) {
+        if (!graph.containsKey(namespace) && !isLoaded(namespace)) {
+            Node node = read(resourcePath(namespace));
+            node.namespace = namespace;
+            graph.put(namespace, node);
+            addDependencies(graph, node);
+        }
+    }
+
+    private static String resourcePath(String namespace) {
+        return namespace.replace('-', '_').replace('.', '/');
+    }
+
+    private void addDependencies(Map<String, Node> graph, Node node) {
+        for (String dependency : node.dependencies) {
+            addUnloaded(graph, dependency);
+        }
+    }
+
+    /*
+     * A namespace counts as loaded if require recorded it, or if it exists and defines something
+     * (clojure.core is loaded by the runtime without going through require, while resolving a Var
+     * in an unloaded namespace creates the namespace but binds nothing).
+     */
+    private boolean isLoaded(String namespace) {
+        Symbol name = Symbol.intern(namespace);
+        if (((IPersistentSet) ((IDeref) loadedLibs.deref()).deref()).contains(name)) {
+            return true;
+        }
+        Namespace ns = Namespace.find(name);
+        if (ns == null) {
+            return false;
+        }
+        for (ISeq mappings = ns.getMappings().seq(); mappings != null; mappings = mappings.next()) {
+            Object value = ((Map.Entry<?, ?>) mappings.first()).getValue();
+            if (value instanceof Var && ((Var) value).ns == ns && ((Var) value).isBound()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Node> topologicalOrder(Map<String, Node> graph) {
+        List<Node> order = new ArrayList<Node>(graph.size());
+        Set<String> visiting = new LinkedHashSet<String>();
+        Set<String> done = new HashSet<String>();
+        for (Node node : graph.values()) {
+            visit(node, graph, visiting, done, order);
+        }
+        return order;
+    }
+
+    private void visit(Node node, Map<String, Node> graph, Set<String> visiting, Set<String> done, List<Node> order) {
+        if (done.contains(node.namespace)) {
+            return;
+        }
+        if (!visiting.add(node.namespace)) {
+            throw new IllegalStateException("Cyclic namespace dependency involving: " + visiting);
+        }
+        for (String dependency : node.dependencies) {
+            Node dependencyNode = graph.get(dependency);
+            if (dependencyNode != null) {
+                visit(dependencyNode, graph, visiting, done, order);
+            }
+        }
+        visiting.remove(node.namespace);
+        done.add(node.namespace);
+        order.add(node);
+    }
+
+    /*
+     * Read the first form of resource.clj (or .cljc) and, if it is an ns form, collect the
+     * namespaces its :require and :use clauses name.  The rest of the file is read too, since a
+     * top-level require, use or load would load namespaces the graph cannot know about.
+     * Anything unreadable, including #= forms, is treated as a namespace with no ns form.
+     */
+    private Node read(String resource) {
+        Node node = new Node();
+        ClassLoader loader = RT.baseLoader();
+        URL source = loader.getResource(resource + ".clj");
+        if (source == null) {
+            source = loader.getResource(resource + ".cljc");
+        }
+        if (source == null) {
+            return node;
+        }
+        Var.pushThreadBindings(RT.mapUniqueKeys(RT.READEVAL, RT.F));
+        try {
+            Reader in = new InputStreamReader(source.openStream(), UTF_8);
+            try {
+                PushbackReader forms = new PushbackReader(in);
+                Object form = read.invoke(READ_OPTIONS, forms);
+                if (form instanceof ISeq && NS.equals(((ISeq) form).first())) {
+                    ISeq nsForm = ((ISeq) form).next();
+                    node.namespace = String.valueOf(nsForm.first());
+                    for (ISeq clauses = nsForm.next(); clauses != null; clauses = clauses.next()) {
+                        addLibs(clauses.first(), node.dependencies);
+                    }
+                    node.dependenciesKnown = true;
+                    for (form = read.invoke(READ_OPTIONS, forms); form != EOF; form = read.invoke(READ_OPTIONS, forms)) {
+                        if (isLoadingCall(form)) {
+                            node.dependenciesKnown = false;
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            node.namespace = null;
+            node.dependencies.clear();
+            node.dependenciesKnown = false;
+        } finally {
+            Var.popThreadBindings();
+        }
+        return node;
+    }
+
+    private static boolean isLoadingCall(Object form) {
+        if (!(form instanceof ISeq) || !(((ISeq) form).first() instanceof Symbol)) {
+            return false;
+        }
+        Symbol fn = (Symbol) ((ISeq) form).first();
+        return (fn.getNamespace() == null || fn.getNamespace().equals("clojure.core")) && LOADING_FNS.contains(fn.getName());
+    }
+
+    private static void addLibs(Object clause, Set<String> libs) {
+        if (!(clause instanceof ISeq)) {
+            return;
+        }
+        ISeq specs = (ISeq) clause;
+        if (!REQUIRE.equals(specs.first()) && !USE.equals(specs.first())) {
+            return;
+        }
+        for (specs = specs.next(); specs != null; specs = specs.next()) {
+            addLib(null, specs.first(), libs);
+        }
+    }
+
+    /*
+     * A libspec is a symbol, a vector [lib & options] or a prefix list (prefix libspec...).
+     */
+    private static void addLib(String prefix, Object spec, Set<String> libs) {
+        if (spec instanceof Symbol) {
+            libs.add(prefix == null ? spec.toString() : prefix + "." + spec);
+        } else if (spec instanceof ISeq || spec instanceof IPersistentList) {
+            ISeq prefixList = ((Seqable) spec).seq();
+            if (prefixList == null) {
+                return;
+            }
+            String newPrefix = prefix == null ? String.valueOf(prefixList.first()) : prefix + "." + prefixList.first();
+            for (ISeq members = prefixList.next(); members != null; members = members.next()) {
+                addLib(newPrefix, members.first(), libs);
+            }
+        } else if (spec instanceof IPersistentVector) {
+            ISeq vector = ((Seqable) spec).seq();
+            if (vector != null && vector.first() instanceof Symbol) {
+                addLib(prefix, vector.first(), libs);
+            }
+        }
+    }
+
+    private static final class Node {
+        String namespace;
+        String loadPath;
+        boolean reloadWithRequire;
+        // Only true for a readable ns form without loads outside it
+        boolean dependenciesKnown;
+        final Set<String> dependencies = new LinkedHashSet<String>();
+    }
+}
@@ -0,0 +1,407 @@
+package com.bradsdeals.clj.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.bradsdeals.clj.ClJAnnotations.Memoize;
+import com.bradsdeals.clj.FunctionStats;
+import com.bradsdeals.clj.IClJMetrics;
+import com.bradsdeals.clj.MemoStats;
+import com.bradsdeals.clj.NamespaceLoadReport;
+import com.bradsdeals.clj.cache.MemoCache;
+
+import clojure.lang.Var;
+
+/**
+ * Records per-function call counts, errors and latency histograms, namespace load times and
+ * function resolution cache hits for one ClJ runtime.  Recording costs a volatile read when
+ * disabled; when enabled, a map lookup keyed by the function's Var plus a few uncontended
+ * atomic increments.
+ */
+public final class ClJMetrics implements IClJMetrics, ClJMetricsMXBean {
+    /**
+     * The system property that turns metrics off completely when set to "false".
+     */
+    public static final String ENABLED_PROPERTY = "clj.metrics";
+
+    private static final String ANONYMOUS = "<anonymous>";
+
+    private final String runtimeName;
+    private final ConcurrentMap<Object, FunctionMetrics> functions = new ConcurrentHashMap<Object, FunctionMetrics>();
+    private final ConcurrentMap<String, Long> namespaceLoadTimes = new ConcurrentHashMap<String, Long>();
+    private final LongAdder varCacheHits = new LongAdder();
+    private final LongAdder varCacheMisses = new LongAdder();
+    private final ConcurrentMap<String, MemoCache> memoCaches = new ConcurrentHashMap<String, MemoCache>();
+    private final LongAdder abandonedCalls = new LongAdder();
+    private final AtomicInteger runningAbandonedCalls = new AtomicInteger();
+    private volatile NamespaceLoadReport lastLoadReport;
+    private volatile boolean enabled;
+    private ObjectName objectName;
+
+    /**
+     * Construct a ClJMetrics for the named runtime.  Metrics start enabled unless the
+     * {@link #ENABLED_PROPERTY} system property is "false".
+     *
+     * @param runtimeName The runtime's name, used for the JMX ObjectName.
+     */
+    public ClJMetrics(String runtimeName) {
+        this.runtimeName = runtimeName;
+        this.enabled = isAvailable();
+    }
+
+    /**
+     * @return The name of the runtime these metrics describe.
+     */
+    public String getRuntimeName() {
+        return runtimeName;
+    }
+
+    /**
+     * Return true unless metrics were turned off with the {@link #ENABLED_PROPERTY} system property.
+     * @return true if metrics may be recorded and published.
+     */
+    public static boolean isAvailable() {
+        return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    }
+
+    /*
+     * Recording
+     */
+
+    /**
+     * Record one call.  Callers check {@link #isEnabled()} first, so they can skip timing the
+     * call when metrics are disabled.
+     *
+     * @param fn The function that was called.
+     * @param nanos The call's latency.
+     * @param failed true if the call threw.
+     */
+    public void recordCall(Object fn, long nanos, boolean failed) {
+        Object key = fn instanceof Var ? fn : ANONYMOUS;
+        FunctionMetrics metrics = functions.get(key);
+        if (metrics == null) {
+            FunctionMetrics created = new FunctionMetrics(nameOf(key));
+            metrics = functions.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        metrics.record(nanos, failed);
+    }
+
+    /**
+     * Record the time taken to load a namespace.
+     *
+     * @param namespace The namespace or resource path that was loaded.
+     * @param nanos The load time.
+     */
+    public void recordNamespaceLoad(String namespace, long nanos) {
+        if (enabled) {
+            namespaceLoadTimes.put(namespace, nanos);
+        }
+    }
+
+    /**
+     * Record the report from a namespace loading pass.  Reports are kept even while recording
+     * is paused, since they describe startup.
+     *
+     * @param report The report.
+     */
+    public void recordLoadReport(NamespaceLoadReport report) {
+        lastLoadReport = report;
+    }
+
+    /**
+     * Record a function resolution cache lookup.
+     *
+     * @param hit true if the function was already resolved.
+     */
+    public void recordVarCacheLookup(boolean hit) {
+        if (enabled) {
+            (hit ? varCacheHits : varCacheMisses).increment();
+        }
+    }
+
+    /**
+     * Record a call with a timeout giving up on a function that is still running.  Recorded even
+     * while recording is paused, since abandoned functions hold threads.
+     */
+    public void recordAbandonedCall() {
+        abandonedCalls.increment();
+        runningAbandonedCalls.incrementAndGet();
+    }
+
+    /**
+     * Record an abandoned function finally returning or throwing.
+     */
+    public void recordAbandonedCallFinished() {
+        runningAbandonedCalls.decrementAndGet();
+    }
+
+    /**
+     * Return the memo cache for a memoized interface method, creating it on first use.  Every
+     * proxy of an interface in this runtime shares the same cache.
+     *
+     * @param name The memoized method, as "interface#method".
+     * @param spec The method's Memoize annotation.
+     * @return The method's memo cache.
+     */
+    public MemoCache memoCache(String name, Memoize spec) {
+        MemoCache cache = memoCaches.get(name);
+        if (cache == null) {
+            MemoCache newCache = new MemoCache(name, spec);
+            cache = memoCaches.putIfAbsent(name, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Discard every memoized result in this runtime.
+     */
+    public void invalidateMemoCaches() {
+        for (MemoCache cache : memoCaches.values()) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static String nameOf(Object key) {
+        if (key instanceof Var) {
+            Var var = (Var) key;
+            return var.ns.name + "/" + var.sym;
+        }
+        return ANONYMOUS;
+    }
+
+    /*
+     * JMX registration
+     */
+
+    /**
+     * Register this object with the platform MBeanServer as
+     * <code>com.bradsdeals.clj:type=ClJ,name=&lt;runtimeName&gt;</code>.  Does nothing if metrics are
+     * unavailable.
+     */
+    public synchronized void register() {
+        if (!isAvailable() || objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("com.bradsdeals.clj:type=ClJ,name=" + ObjectName.quote(runtimeName));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register ClJ metrics MBean for " + runtimeName, e);
+        }
+    }
+
+    /**
+     * Remove this object from the platform MBeanServer if it was registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+    /*
+     * IClJMetrics
+     */
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Map<String, FunctionStats> functionStats() {
+        Map<String, FunctionStats> result = new TreeMap<String, FunctionStats>();
+        for (FunctionMetrics metrics : functions.values()) {
+            result.put(metrics.name, metrics.snapshot());
+        }
+        return result;
+    }
+
+    public Map<String, Long> namespaceLoadTimesNanos() {
+        return Collections.unmodifiableMap(new TreeMap<String, Long>(namespaceLoadTimes));
+    }
+
+    public long varCacheHits() {
+        return varCacheHits.sum();
+    }
+
+    public long varCacheMisses() {
+        return varCacheMisses.sum();
+    }
+
+    public NamespaceLoadReport lastNamespaceLoadReport() {
+        return lastLoadReport;
+    }
+
+    public Map<String, MemoStats> memoStats() {
+        Map<String, MemoStats> result = new TreeMap<String, MemoStats>();
+        for (MemoCache cache : memoCaches.values()) {
+            MemoStats stats = cache.stats();
+            result.put(stats.getName(), stats);
+        }
+        return result;
+    }
+
+    public long abandonedCalls() {
+        return abandonedCalls.sum();
+    }
+
+    public int runningAbandonedCalls() {
+        return runningAbandonedCalls.get();
+    }
+
+    /*
+     * The running abandoned call count is left alone: those calls are still holding threads.
+     */
+    public void reset() {
+        functions.clear();
+        namespaceLoadTimes.clear();
+        varCacheHits.reset();
+        varCacheMisses.reset();
+        abandonedCalls.reset();
+    }
+
+    /*
+     * ClJMetricsMXBean
+     */
+
+    public long getTotalCalls() {
+        long total = 0;
+        for (FunctionMetrics metrics : functions.values()) {
+            total += metrics.calls.sum();
+        }
+        return total;
+    }
+
+    public long getTotalErrors() {
+        long total = 0;
+        for (FunctionMetrics metrics : functions.values()) {
+            total += metrics.errors.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (FunctionStats stats : functionStats().values()) {
+            result.put(stats.getName(), stats.getCalls());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (FunctionStats stats : functionStats().values()) {
+            result.put(stats.getName(), stats.getErrors());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getMeanLatencyNanos() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (FunctionStats stats : functionStats().values()) {
+            result.put(stats.getName(), stats.getMeanNanos());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getP99LatencyNanos() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (FunctionStats stats : functionStats().values()) {
+            result.put(stats.getName(), stats.getP99Nanos());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getMaxLatencyNanos() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (FunctionStats stats : functionStats().values()) {
+            result.put(stats.getName(), stats.getMaxNanos());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getNamespaceLoadTimesNanos() {
+        return namespaceLoadTimesNanos();
+    }
+
+    public double getVarCacheHitRate() {
+        long hits = varCacheHits.sum();
+        long total = hits + varCacheMisses.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public long getAbandonedCalls() {
+        return abandonedCalls();
+    }
+
+    public int getRunningAbandonedCalls() {
+        return runningAbandonedCalls();
+    }
+
+    /*
+     * Per-function counters
+     */
+
+    private static final class FunctionMetrics {
+        final String name;
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        FunctionMetrics(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean failed) {
+            calls.increment();
+            if (failed) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            latencies.record(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        FunctionStats snapshot() {
+            return new FunctionStats(name, calls.sum(), errors.sum(), totalNanos.sum(), maxNanos.get(),
+                    latencies.valueAtQuantile(0.5), latencies.valueAtQuantile(0.9),
+                    latencies.valueAtQuantile(0.99), latencies.valueAtQuantile(0.999));
+        }
+    }
+}
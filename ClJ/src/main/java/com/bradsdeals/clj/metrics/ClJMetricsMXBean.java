@@ -0,0 +1,37 @@
+package com.bradsdeals.clj.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a ClJ runtime's metrics.  Maps are keyed by fully-qualified function or
+ * namespace name.
+ */
+public interface ClJMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getTotalCalls();
+
+    long getTotalErrors();
+
+    Map<String, Long> getCallCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Long> getMeanLatencyNanos();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    Map<String, Long> getMaxLatencyNanos();
+
+    Map<String, Long> getNamespaceLoadTimesNanos();
+
+    double getVarCacheHitRate();
+
+    long getAbandonedCalls();
+
+    int getRunningAbandonedCalls();
+
+    void reset();
+}
@@ -0,0 +1,93 @@
+package com.bradsdeals.clj.metrics;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import com.bradsdeals.clj.ClJClassLoader;
+import com.bradsdeals.clj.RuntimeFootprint;
+import com.bradsdeals.clj.internal.ThreadLocals;
+
+import clojure.lang.DynamicClassLoader;
+import clojure.lang.ISeq;
+import clojure.lang.Namespace;
+import clojure.lang.Var;
+
+/**
+ * Measures a {@link RuntimeFootprint}.  This class must be loaded by the runtime it measures,
+ * since it reads the static state of the Clojure classes it sees.
+ */
+public final class FootprintMeter {
+    /**
+     * The maximum number of objects the namespace heap estimate visits.
+     */
+    public static final int MAX_HEAP_OBJECTS = 500000;
+
+    private FootprintMeter() {
+        // Static utility
+    }
+
+    /**
+     * Measure the footprint of the Clojure runtime that loaded this class.
+     *
+     * @param runtimeName The runtime's name.
+     * @param classloader The runtime's private classloader, or null for the public runtime.
+     * @return the runtime's footprint.
+     */
+    public static RuntimeFootprint measure(String runtimeName, ClassLoader classloader) {
+        long start = System.nanoTime();
+        int definedClasses = classloader instanceof ClJClassLoader ? ((ClJClassLoader) classloader).definedClasses() : -1;
+
+        int namespaces = 0;
+        int vars = 0;
+        HeapEstimator heap = new HeapEstimator(MAX_HEAP_OBJECTS);
+        for (ISeq seq = Namespace.all(); seq != null; seq = seq.next()) {
+            Namespace ns = (Namespace) seq.first();
+            namespaces++;
+            heap.addShallow(ns);
+            heap.add(ns.getMappings());
+            heap.add(ns.getAliases());
+            heap.add(ns.meta());
+            for (Object mapping : ns.getMappings()) {
+                Object value = ((Map.Entry<?, ?>) mapping).getValue();
+                if (value instanceof Var && ((Var) value).ns == ns) {
+                    Var var = (Var) value;
+                    vars++;
+                    heap.addShallow(var);
+                    heap.add(var.getRawRoot());
+                    heap.add(var.meta());
+                }
+            }
+        }
+
+        return new RuntimeFootprint(runtimeName, definedClasses, dynamicClasses(), namespaces, vars,
+                heap.bytes(), heap.isComplete(), ThreadLocals.countThreadsHolding(dvals()), System.nanoTime() - start);
+    }
+
+    private static int dynamicClasses() {
+        Map<?, ?> classCache = (Map<?, ?>) staticField(DynamicClassLoader.class, "classCache");
+        int count = 0;
+        for (Object classRef : classCache.values()) {
+            if (((Reference<?>) classRef).get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static ThreadLocal<?> dvals() {
+        return (ThreadLocal<?>) staticField(Var.class, "dvals");
+    }
+
+    private static Object staticField(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(null);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Unsupported Clojure version: no " + type.getName() + "." + name, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read " + type.getName() + "." + name, e);
+        }
+    }
+}
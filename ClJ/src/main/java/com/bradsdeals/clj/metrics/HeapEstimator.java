@@ -0,0 +1,225 @@
+package com.bradsdeals.clj.metrics;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import clojure.lang.Keyword;
+import clojure.lang.Namespace;
+import clojure.lang.Var;
+
+/**
+ * Estimates the heap reachable from a set of roots by walking the object graph breadth-first.
+ * Sizes assume a 64-bit JVM with compressed references and ignore field packing, so the result
+ * is approximate.  Objects are counted once however many roots reach them.<p>
+ *
+ * Clojure's own classes are walked field by field.  JDK classes can't be opened reflectively
+ * on newer JVMs, so collections, maps, atomic references and strings are walked or sized through
+ * their public APIs and other JDK objects count their shallow size only.  Classes, classloaders,
+ * threads, namespaces, Vars and keywords are shared runtime structure and are not counted.<p>
+ *
+ * Not thread safe; use one estimator per measurement.
+ */
+final class HeapEstimator {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int MAP_ENTRY = 32;
+
+    private final int maxObjects;
+    private final IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+    private final ArrayDeque<Object> pending = new ArrayDeque<Object>();
+    private final Map<Class<?>, Layout> layouts = new HashMap<Class<?>, Layout>();
+    private long bytes;
+    private boolean complete = true;
+
+    /**
+     * @param maxObjects The maximum number of objects to visit.
+     */
+    HeapEstimator(int maxObjects) {
+        this.maxObjects = maxObjects;
+    }
+
+    /**
+     * Count an object and everything reachable from it that has not been counted yet.
+     *
+     * @param root The object.
+     */
+    void add(Object root) {
+        push(root);
+        while (complete && !pending.isEmpty()) {
+            visit(pending.poll());
+        }
+    }
+
+    /**
+     * Count an object's shallow size without following its references.
+     *
+     * @param object The object.
+     */
+    void addShallow(Object object) {
+        bytes += layout(object.getClass()).shallowSize;
+    }
+
+    /**
+     * @return the estimated bytes counted so far.
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return false if the walk stopped because it reached maxObjects.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    private void push(Object object) {
+        if (object == null || isShared(object) || visited.containsKey(object)) {
+            return;
+        }
+        if (visited.size() >= maxObjects) {
+            complete = false;
+            return;
+        }
+        visited.put(object, Boolean.TRUE);
+        pending.add(object);
+    }
+
+    private static boolean isShared(Object object) {
+        return object instanceof Class || object instanceof ClassLoader || object instanceof Thread
+                || object instanceof ThreadGroup || object instanceof Namespace || object instanceof Var
+                || object instanceof Keyword;
+    }
+
+    private void visit(Object object) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            visitArray(object, type.getComponentType());
+        } else if (object instanceof String) {
+            bytes += align(layout(type).shallowSize) + align(ARRAY_HEADER + ((String) object).length());
+        } else if (isJdkClass(type)) {
+            visitJdkObject(object, type);
+        } else {
+            Layout layout = layout(type);
+            bytes += layout.shallowSize;
+            for (Field field : layout.references) {
+                try {
+                    push(field.get(object));
+                } catch (IllegalAccessException e) {
+                    // Skipped when the layout was built
+                }
+            }
+        }
+    }
+
+    private void visitArray(Object array, Class<?> componentType) {
+        int length = Array.getLength(array);
+        bytes += align(ARRAY_HEADER + (long) length * sizeOf(componentType));
+        if (!componentType.isPrimitive()) {
+            Object[] elements = (Object[]) array;
+            for (Object element : elements) {
+                push(element);
+            }
+        }
+    }
+
+    private void visitJdkObject(Object object, Class<?> type) {
+        bytes += layout(type).shallowSize;
+        try {
+            if (object instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) object;
+                bytes += (long) map.size() * MAP_ENTRY;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    push(entry.getKey());
+                    push(entry.getValue());
+                }
+            } else if (object instanceof Collection) {
+                Collection<?> collection = (Collection<?>) object;
+                bytes += (long) collection.size() * REFERENCE;
+                for (Object element : collection) {
+                    push(element);
+                }
+            } else if (object instanceof AtomicReference) {
+                push(((AtomicReference<?>) object).get());
+            }
+        } catch (ConcurrentModificationException e) {
+            // Changed under us; keep what was counted
+        }
+    }
+
+    private static boolean isJdkClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("jdk.");
+    }
+
+    private Layout layout(Class<?> type) {
+        Layout layout = layouts.get(type);
+        if (layout == null) {
+            layout = new Layout(type);
+            layouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /*
+     * A class's shallow size and the reference fields the walk can follow.
+     */
+    private static final class Layout {
+        final long shallowSize;
+        final List<Field> references = new ArrayList<Field>();
+
+        Layout(Class<?> type) {
+            long size = OBJECT_HEADER;
+            boolean jdk = isJdkClass(type);
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    size += sizeOf(field.getType());
+                    if (!jdk && !field.getType().isPrimitive() && !isJdkClass(c) && open(field)) {
+                        references.add(field);
+                    }
+                }
+            }
+            shallowSize = align(size);
+        }
+
+        private static boolean open(Field field) {
+            try {
+                field.setAccessible(true);
+                return true;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+    }
+}
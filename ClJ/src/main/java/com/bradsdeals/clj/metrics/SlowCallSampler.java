@@ -0,0 +1,201 @@
+package com.bradsdeals.clj.metrics;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.bradsdeals.clj.ISlowCallSampler;
+import com.bradsdeals.clj.SlowCall;
+
+import clojure.lang.Counted;
+import clojure.lang.Seqable;
+
+/**
+ * The {@link ISlowCallSampler} for one ClJ runtime.  Callers check {@link #isEnabled()} before
+ * timing a call and {@link #isSlow(long)} before building a record, so nothing is allocated
+ * unless a call is actually going to be sampled.
+ */
+public class SlowCallSampler implements ISlowCallSampler {
+    /**
+     * The system property that sets the ring buffer capacity.  Defaults to {@value #DEFAULT_CAPACITY}.
+     */
+    public static final String CAPACITY_PROPERTY = "clj.slowcalls.capacity";
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<SlowCall> samples;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean enabled = false;
+    private volatile long thresholdNanos = Long.MAX_VALUE;
+    private volatile int maxSamplesPerSecond;
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger windowSamples = new AtomicInteger();
+
+    /**
+     * Construct a disabled sampler whose capacity comes from {@link #CAPACITY_PROPERTY}.
+     */
+    public SlowCallSampler() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Construct a disabled sampler.
+     *
+     * @param capacity The number of samples to keep.
+     */
+    public SlowCallSampler(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Slow call sampler capacity must be positive: " + capacity);
+        }
+        samples = new AtomicReferenceArray<SlowCall>(capacity);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#enable(long, java.util.concurrent.TimeUnit, int)
+     */
+    public void enable(long threshold, TimeUnit unit, int maxSamplesPerSecond) {
+        if (maxSamplesPerSecond < 1) {
+            throw new IllegalArgumentException("maxSamplesPerSecond must be positive: " + maxSamplesPerSecond);
+        }
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.maxSamplesPerSecond = maxSamplesPerSecond;
+        this.enabled = true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#disable()
+     */
+    public void disable() {
+        enabled = false;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#isEnabled()
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Return true if a call that took elapsedNanos should be sampled.
+     *
+     * @param elapsedNanos How long the call took.
+     * @return true if the call is over the threshold.
+     */
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /**
+     * Record a slow call unless this second's sample budget is used up.
+     *
+     * @param functionName The function's name.
+     * @param args The arguments the function was called with.
+     * @param elapsedNanos How long the call took.
+     * @param failed true if the call threw.
+     */
+    public void record(String functionName, Object[] args, long elapsedNanos, boolean failed) {
+        if (!tryAcquire()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int argCount = args == null ? 0 : args.length;
+        String[] shapes = new String[argCount];
+        for (int i = 0; i < argCount; i++) {
+            shapes[i] = shapeOf(args[i]);
+        }
+        SlowCall sample = new SlowCall(functionName, shapes, Thread.currentThread().getName(),
+                elapsedNanos, System.currentTimeMillis(), failed);
+        samples.set((int) (next.getAndIncrement() % samples.length()), sample);
+    }
+
+    /*
+     * A fixed one-second window.  Racing threads may let a sample or two through as the window
+     * rolls over, which is fine for a diagnostic rate limit.
+     */
+    private boolean tryAcquire() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= ONE_SECOND && windowStart.compareAndSet(start, now)) {
+            windowSamples.set(0);
+        }
+        return windowSamples.incrementAndGet() <= maxSamplesPerSecond;
+    }
+
+    /*
+     * Only O(1) sizes are reported.  Clojure's seqs implement java.util.List, but size() walks
+     * them, which realizes lazy seqs and never returns for infinite ones, so Clojure collections
+     * report a size only when they are Counted.
+     */
+    static String shapeOf(Object arg) {
+        if (arg == null) {
+            return "nil";
+        }
+        String type = arg.getClass().getSimpleName();
+        if (arg instanceof CharSequence) {
+            return type + "(" + ((CharSequence) arg).length() + ")";
+        } else if (arg.getClass().isArray()) {
+            String componentType = arg.getClass().getComponentType().getSimpleName();
+            return componentType + "[" + Array.getLength(arg) + "]";
+        } else if (arg instanceof Counted) {
+            return type + "[" + ((Counted) arg).count() + "]";
+        } else if (arg instanceof Seqable) {
+            return type;
+        } else if (arg instanceof Collection) {
+            return type + "[" + ((Collection<?>) arg).size() + "]";
+        } else if (arg instanceof Map) {
+            return type + "[" + ((Map<?, ?>) arg).size() + "]";
+        }
+        return type;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#samples()
+     */
+    public List<SlowCall> samples() {
+        long end = next.get();
+        long start = Math.max(0, end - samples.length());
+        List<SlowCall> result = new ArrayList<SlowCall>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            SlowCall sample = samples.get((int) (i % samples.length()));
+            if (sample != null) {
+                result.add(sample);
+            }
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#droppedSamples()
+     */
+    public long droppedSamples() {
+        return dropped.get();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#capacity()
+     */
+    public int capacity() {
+        return samples.length();
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.ISlowCallSampler#clear()
+     */
+    public void clear() {
+        for (int i = 0; i < samples.length(); i++) {
+            samples.set(i, null);
+        }
+        dropped.set(0);
+    }
+}
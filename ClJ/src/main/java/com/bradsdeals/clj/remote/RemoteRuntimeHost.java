@@ -0,0 +1,335 @@
+package com.bradsdeals.clj.remote;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import clojure.lang.IExceptionInfo;
+import clojure.lang.IPersistentVector;
+
+import com.bradsdeals.clj.ClJ;
+import com.bradsdeals.clj.ClJException;
+import com.bradsdeals.clj.ClJTimeoutException;
+import com.bradsdeals.clj.FunctionStats;
+import com.bradsdeals.clj.IClJMetrics;
+import com.bradsdeals.clj.ISlowCallSampler;
+import com.bradsdeals.clj.MemoStats;
+import com.bradsdeals.clj.NamespaceLoadReport;
+import com.bradsdeals.clj.RuntimeFootprint;
+import com.bradsdeals.clj.SlowCall;
+import com.bradsdeals.clj.transfer.BinaryDataReader;
+import com.bradsdeals.clj.transfer.BinaryDataWriter;
+import com.bradsdeals.clj.transfer.DataWalker;
+import com.bradsdeals.clj.transfer.JavaDataWalker;
+import com.bradsdeals.clj.transfer.TransientDataBuilder;
+
+/**
+ * The main class of a child JVM started by {@link RemoteClJ}.  Serves the requests described by
+ * {@link RemoteProtocol} against a Clojure runtime on this JVM's classpath, one at a time, until
+ * it is asked to close or its parent exits.  Not for use by clients.
+ */
+public final class RemoteRuntimeHost {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final SharedMemoryChannel channel;
+    private final ClJ clj;
+
+    private RemoteRuntimeHost(SharedMemoryChannel channel, ClJ clj) {
+        this.channel = channel;
+        this.clj = clj;
+    }
+
+    /**
+     * Serve requests until the parent closes the runtime or exits, then exit this JVM.  Output
+     * goes to the parent's log file for this runtime.
+     *
+     * @param args The channel file and the parent's process id.
+     */
+    public static void main(String[] args) {
+        int status = 1;
+        try {
+            SharedMemoryChannel channel = SharedMemoryChannel.open(new File(args[0]));
+            try {
+                new RemoteRuntimeHost(channel, new ClJ()).serve(parent(Long.parseLong(args[1])));
+                status = 0;
+            } finally {
+                channel.close();
+            }
+        } catch (Throwable e) {
+            // Nobody is left to answer; leave a trace in the log
+            e.printStackTrace();
+        } finally {
+            // Agent and timeout threads would otherwise keep this JVM alive
+            System.exit(status);
+        }
+    }
+
+    private static SharedMemoryChannel.Peer parent(final long pid) {
+        final ProcessHandle parent = ProcessHandle.of(pid).orElse(null);
+        return new SharedMemoryChannel.Peer() {
+            public void checkAlive() {
+                if (parent == null || !parent.isAlive()) {
+                    throw new IllegalStateException("Parent process " + pid + " exited");
+                }
+            }
+        };
+    }
+
+    /*
+     * Every failure of a request is answered, Errors such as a failed :pre assertion or a stack
+     * overflow included.  Only running out of memory ends the JVM.
+     */
+    private void serve(SharedMemoryChannel.Peer parent) throws InterruptedException {
+        channel.markReady();
+        boolean open = true;
+        while (open) {
+            ByteBuffer message = channel.receive(parent);
+            BinaryDataWriter response;
+            long op = -1;
+            try {
+                TransientDataBuilder builder = new TransientDataBuilder();
+                BinaryDataReader.read(message, builder);
+                IPersistentVector request = (IPersistentVector) builder.result();
+                op = ((Number) request.nth(0)).longValue();
+                response = handle(op, request);
+            } catch (ClJTimeoutException e) {
+                response = new BinaryDataWriter();
+                response.beginVector(3);
+                response.value(RemoteProtocol.TIMEOUT);
+                response.value(e.getFunctionName());
+                response.value(e.getTimeoutNanos());
+                response.endVector();
+            } catch (OutOfMemoryError e) {
+                throw e;
+            } catch (Throwable e) {
+                response = error(e);
+            }
+            channel.send(response.toByteArray(), parent);
+            open = op != RemoteProtocol.CLOSE;
+        }
+    }
+
+    private BinaryDataWriter handle(long op, IPersistentVector request) throws Exception {
+        if (op == RemoteProtocol.INVOKE) {
+            final String fn = (String) request.nth(1);
+            final Object[] args = args(request.nth(2));
+            final long timeoutNanos = ((Number) request.nth(3)).longValue();
+            return ok(withBindings(request.nth(4), new Callable<Object>() {
+                public Object call() {
+                    return timeoutNanos < 0
+                            ? clj.invoke(fn, args)
+                            : clj.invokeWithTimeout(timeoutNanos, TimeUnit.NANOSECONDS, clj.var(fn), args);
+                }
+            }));
+        } else if (op == RemoteProtocol.INVOKE_WITH_OUTPUT) {
+            final StringWriter out = new StringWriter();
+            final StringWriter err = new StringWriter();
+            final Object fn = clj.var((String) request.nth(1));
+            final Object[] args = args(request.nth(2));
+            Object result = withBindings(request.nth(3), new Callable<Object>() {
+                public Object call() {
+                    return clj.invokeWithOutput(out, err, fn, args);
+                }
+            });
+            BinaryDataWriter response = okHeader();
+            response.beginVector(3);
+            DataWalker.walk(result, response);
+            response.value(out.toString());
+            response.value(err.toString());
+            response.endVector();
+            response.endVector();
+            return response;
+        } else if (op == RemoteProtocol.LOAD) {
+            return report(clj.loadNamespaces(strings(request.nth(1)), strings(request.nth(2))));
+        } else if (op == RemoteProtocol.REQUIRE) {
+            return report(clj.require(strings(request.nth(1))));
+        } else if (op == RemoteProtocol.RELOAD) {
+            clj.reload(strings(request.nth(1)));
+            return ok(null);
+        } else if (op == RemoteProtocol.FOOTPRINT) {
+            return footprint(clj.footprint());
+        } else if (op == RemoteProtocol.METRICS) {
+            return okData(metrics((String) request.nth(1), request));
+        } else if (op == RemoteProtocol.SLOW_CALLS) {
+            return okData(slowCalls((String) request.nth(1), request));
+        } else if (op == RemoteProtocol.CLOSE) {
+            clj.close();
+            return ok(null);
+        }
+        throw new IllegalArgumentException("Unknown remote operation " + op);
+    }
+
+    private Object withBindings(Object bindings, Callable<Object> call) throws Exception {
+        return bindings == null ? call.call() : clj.withBindings((Map<?, ?>) bindings, call);
+    }
+
+    /*
+     * Statistics are sent as vectors of numbers in the order of their classes' constructors.
+     */
+    private Object metrics(String method, IPersistentVector request) {
+        IClJMetrics metrics = clj.metrics();
+        if (method.equals("isEnabled")) {
+            return metrics.isEnabled();
+        } else if (method.equals("setEnabled")) {
+            metrics.setEnabled((Boolean) request.nth(2));
+            return null;
+        } else if (method.equals("functionStats")) {
+            Map<String, List<Long>> result = new LinkedHashMap<String, List<Long>>();
+            for (FunctionStats stats : metrics.functionStats().values()) {
+                result.put(stats.getName(), Arrays.asList(stats.getCalls(), stats.getErrors(), stats.getTotalNanos(),
+                        stats.getMaxNanos(), stats.getP50Nanos(), stats.getP90Nanos(), stats.getP99Nanos(), stats.getP999Nanos()));
+            }
+            return result;
+        } else if (method.equals("namespaceLoadTimesNanos")) {
+            return metrics.namespaceLoadTimesNanos();
+        } else if (method.equals("lastNamespaceLoadReport")) {
+            NamespaceLoadReport report = metrics.lastNamespaceLoadReport();
+            return report == null ? null
+                    : Arrays.asList(report.getLoadTimesNanos(), report.getWallNanos(), (long) report.getThreads());
+        } else if (method.equals("varCacheHits")) {
+            return metrics.varCacheHits();
+        } else if (method.equals("varCacheMisses")) {
+            return metrics.varCacheMisses();
+        } else if (method.equals("memoStats")) {
+            Map<String, List<Long>> result = new LinkedHashMap<String, List<Long>>();
+            for (MemoStats stats : metrics.memoStats().values()) {
+                result.put(stats.getName(), Arrays.asList(stats.getHits(), stats.getMisses(), stats.getEvictions(),
+                        stats.getExpirations(), stats.getSize(), stats.getWeight()));
+            }
+            return result;
+        } else if (method.equals("abandonedCalls")) {
+            return metrics.abandonedCalls();
+        } else if (method.equals("runningAbandonedCalls")) {
+            return (long) metrics.runningAbandonedCalls();
+        } else if (method.equals("reset")) {
+            metrics.reset();
+            return null;
+        }
+        throw new IllegalArgumentException("Unknown metrics operation " + method);
+    }
+
+    private Object slowCalls(String method, IPersistentVector request) {
+        ISlowCallSampler slowCalls = clj.slowCalls();
+        if (method.equals("enable")) {
+            slowCalls.enable(((Number) request.nth(2)).longValue(), TimeUnit.NANOSECONDS, ((Number) request.nth(3)).intValue());
+            return null;
+        } else if (method.equals("disable")) {
+            slowCalls.disable();
+            return null;
+        } else if (method.equals("isEnabled")) {
+            return slowCalls.isEnabled();
+        } else if (method.equals("samples")) {
+            List<Object> result = new ArrayList<Object>();
+            for (SlowCall sample : slowCalls.samples()) {
+                result.add(Arrays.asList(sample.getFunctionName(), sample.getArgumentShapes(), sample.getThreadName(),
+                        sample.getElapsedNanos(), sample.getTimestampMillis(), sample.isFailed()));
+            }
+            return result;
+        } else if (method.equals("droppedSamples")) {
+            return slowCalls.droppedSamples();
+        } else if (method.equals("capacity")) {
+            return (long) slowCalls.capacity();
+        } else if (method.equals("clear")) {
+            slowCalls.clear();
+            return null;
+        }
+        throw new IllegalArgumentException("Unknown slow call sampler operation " + method);
+    }
+
+    private static Object[] args(Object args) {
+        return args == null ? NO_ARGS : ((List<?>) args).toArray();
+    }
+
+    private static String[] strings(Object values) {
+        List<?> list = (List<?>) values;
+        return list.toArray(new String[list.size()]);
+    }
+
+    private static BinaryDataWriter okHeader() {
+        BinaryDataWriter response = new BinaryDataWriter();
+        response.beginVector(2);
+        response.value(RemoteProtocol.OK);
+        return response;
+    }
+
+    private static BinaryDataWriter ok(Object value) {
+        BinaryDataWriter response = okHeader();
+        DataWalker.walk(value, response);
+        response.endVector();
+        return response;
+    }
+
+    // For results made of Java collections rather than Clojure data
+    private static BinaryDataWriter okData(Object value) {
+        BinaryDataWriter response = okHeader();
+        JavaDataWalker.walk(value, response);
+        response.endVector();
+        return response;
+    }
+
+    private static BinaryDataWriter report(NamespaceLoadReport report) {
+        BinaryDataWriter response = okHeader();
+        response.beginVector(3);
+        response.beginMap(report.getLoadTimesNanos().size());
+        for (Map.Entry<String, Long> load : report.getLoadTimesNanos().entrySet()) {
+            response.value(load.getKey());
+            response.value(load.getValue());
+        }
+        response.endMap();
+        response.value(report.getWallNanos());
+        response.value((long) report.getThreads());
+        response.endVector();
+        response.endVector();
+        return response;
+    }
+
+    private static BinaryDataWriter footprint(RuntimeFootprint footprint) {
+        BinaryDataWriter response = okHeader();
+        response.beginVector(8);
+        response.value((long) footprint.getDefinedClasses());
+        response.value((long) footprint.getDynamicClasses());
+        response.value((long) footprint.getNamespaces());
+        response.value((long) footprint.getVars());
+        response.value(footprint.getNamespaceHeapBytes());
+        response.value(footprint.isNamespaceHeapComplete());
+        response.value((long) footprint.getThreadsWithBindings());
+        response.value(footprint.getMeasureNanos());
+        response.endVector();
+        response.endVector();
+        return response;
+    }
+
+    /*
+     * ex-info errors send their data, unless it holds something that cannot be encoded; other
+     * errors send the class of the exception Clojure threw.
+     */
+    private static BinaryDataWriter error(Throwable e) {
+        Throwable thrown = e instanceof ClJException && e.getCause() != null ? e.getCause() : e;
+        String type = e instanceof ClJException ? ((ClJException) e).getType() : null;
+        Object data = thrown instanceof IExceptionInfo ? ((IExceptionInfo) thrown).getData() : null;
+        try {
+            return error(thrown, type, data);
+        } catch (IllegalArgumentException unencodable) {
+            return error(thrown, type, null);
+        }
+    }
+
+    private static BinaryDataWriter error(Throwable thrown, String type, Object data) {
+        BinaryDataWriter response = new BinaryDataWriter();
+        response.beginVector(5);
+        response.value(RemoteProtocol.ERROR);
+        response.value(thrown.getMessage());
+        response.value(thrown.getClass().getName());
+        response.value(type);
+        DataWalker.walk(data, response);
+        response.endVector();
+        return response;
+    }
+}
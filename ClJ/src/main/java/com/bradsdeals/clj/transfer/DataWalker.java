@@ -0,0 +1,100 @@
+package com.bradsdeals.clj.transfer;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.bradsdeals.clj.wrappers.IClojureIterable;
+
+import clojure.lang.BigInt;
+import clojure.lang.DynamicClassLoader;
+import clojure.lang.IFn;
+import clojure.lang.IPersistentMap;
+import clojure.lang.IPersistentSet;
+import clojure.lang.IPersistentVector;
+import clojure.lang.ISeq;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+import clojure.lang.Ratio;
+import clojure.lang.Sequential;
+import clojure.lang.Symbol;
+
+/**
+ * Walks a Clojure value of the runtime that loaded this class and describes it to a
+ * {@link DataVisitor}.<p>
+ *
+ * Maps (including records), vectors, sets and sequential collections are described structurally.
+ * Lazy sequences are realized, so they must be finite.  Sorted collections arrive as hash
+ * collections and metadata is dropped.  Functions, reference types and other objects defined by
+ * a Clojure runtime cannot be transferred; any other Java object is passed by identity.
+ */
+public final class DataWalker {
+    private DataWalker() {
+        // Static utility
+    }
+
+    /**
+     * Describe value to visitor.
+     *
+     * @param value The value to walk.  Values wrapped as {@link IClojureIterable} are unwrapped.
+     * @param visitor The visitor.
+     * @throws IllegalArgumentException if value contains something that cannot be transferred.
+     */
+    public static void walk(Object value, DataVisitor visitor) {
+        if (value instanceof IClojureIterable) {
+            value = ((IClojureIterable<?>) value).toClojure();
+        }
+        if (value == null || value instanceof String || value instanceof Long || value instanceof Double
+                || value instanceof Boolean) {
+            visitor.value(value);
+        } else if (value instanceof Keyword) {
+            Symbol sym = ((Keyword) value).sym;
+            visitor.keyword(sym.getNamespace(), sym.getName());
+        } else if (value instanceof IPersistentMap) {
+            IPersistentMap map = (IPersistentMap) value;
+            visitor.beginMap(map.count());
+            for (Object entry : map) {
+                walk(((Map.Entry<?, ?>) entry).getKey(), visitor);
+                walk(((Map.Entry<?, ?>) entry).getValue(), visitor);
+            }
+            visitor.endMap();
+        } else if (value instanceof IPersistentVector) {
+            visitor.beginVector(((IPersistentVector) value).count());
+            walkElements(value, visitor);
+            visitor.endVector();
+        } else if (value instanceof IPersistentSet) {
+            visitor.beginSet(((IPersistentSet) value).count());
+            walkElements(value, visitor);
+            visitor.endSet();
+        } else if (value instanceof Sequential) {
+            ISeq seq = RT.seq(value);
+            visitor.beginList(RT.count(seq));
+            for (; seq != null; seq = seq.next()) {
+                walk(seq.first(), visitor);
+            }
+            visitor.endList();
+        } else if (value instanceof Symbol) {
+            Symbol sym = (Symbol) value;
+            visitor.symbol(sym.getNamespace(), sym.getName());
+        } else if (value instanceof BigInt) {
+            visitor.bigInt(((BigInt) value).toBigInteger());
+        } else if (value instanceof Ratio) {
+            visitor.ratio(((Ratio) value).numerator, ((Ratio) value).denominator);
+        } else if (isRuntimeObject(value)) {
+            throw new IllegalArgumentException("Cannot transfer a " + value.getClass().getName() + " between runtimes");
+        } else {
+            visitor.value(value);
+        }
+    }
+
+    private static void walkElements(Object coll, DataVisitor visitor) {
+        for (Iterator<?> elements = RT.iter(coll); elements.hasNext();) {
+            walk(elements.next(), visitor);
+        }
+    }
+
+    private static boolean isRuntimeObject(Object value) {
+        Class<?> type = value.getClass();
+        return value instanceof IFn || type.getName().startsWith("clojure.")
+                || type.getClassLoader() instanceof DynamicClassLoader;
+    }
+}
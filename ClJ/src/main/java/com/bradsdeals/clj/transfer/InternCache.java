@@ -0,0 +1,75 @@
+package com.bradsdeals.clj.transfer;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import clojure.lang.Keyword;
+import clojure.lang.Symbol;
+
+/*
+ * Keywords and symbols by name, so rebuilding data does not pay for Keyword.intern and
+ * Symbol.intern, which intern both name Strings, on every key.  Names arriving from another
+ * runtime in this JVM are already-interned Strings, so lookups usually succeed on identity.  The
+ * caches stop growing at MAX_ENTRIES; later names are interned every time.
+ */
+final class InternCache {
+    static final int MAX_ENTRIES = 1 << 16;
+
+    private static final ConcurrentHashMap<Object, Keyword> KEYWORDS = new ConcurrentHashMap<Object, Keyword>();
+    private static final ConcurrentHashMap<Object, Symbol> SYMBOLS = new ConcurrentHashMap<Object, Symbol>();
+
+    private InternCache() {
+        // Static utility
+    }
+
+    static Keyword keyword(String ns, String name) {
+        Object key = key(ns, name);
+        Keyword keyword = KEYWORDS.get(key);
+        if (keyword == null) {
+            keyword = Keyword.intern(ns, name);
+            if (KEYWORDS.size() < MAX_ENTRIES) {
+                KEYWORDS.putIfAbsent(key, keyword);
+            }
+        }
+        return keyword;
+    }
+
+    static Symbol symbol(String ns, String name) {
+        Object key = key(ns, name);
+        Symbol symbol = SYMBOLS.get(key);
+        if (symbol == null) {
+            symbol = Symbol.intern(ns, name);
+            if (SYMBOLS.size() < MAX_ENTRIES) {
+                SYMBOLS.putIfAbsent(key, symbol);
+            }
+        }
+        return symbol;
+    }
+
+    private static Object key(String ns, String name) {
+        return ns == null ? name : new QualifiedName(ns, name);
+    }
+
+    private static final class QualifiedName {
+        private final String ns;
+        private final String name;
+
+        QualifiedName(String ns, String name) {
+            this.ns = ns;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof QualifiedName)) {
+                return false;
+            }
+            QualifiedName that = (QualifiedName) other;
+            return ns.equals(that.ns) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ns.hashCode() + name.hashCode();
+        }
+    }
+}
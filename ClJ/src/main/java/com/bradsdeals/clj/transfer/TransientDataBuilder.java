@@ -0,0 +1,231 @@
+package com.bradsdeals.clj.transfer;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+import clojure.lang.BigInt;
+import clojure.lang.ITransientMap;
+import clojure.lang.ITransientSet;
+import clojure.lang.ITransientVector;
+import clojure.lang.PersistentArrayMap;
+import clojure.lang.PersistentHashMap;
+import clojure.lang.PersistentHashSet;
+import clojure.lang.PersistentList;
+import clojure.lang.PersistentVector;
+import clojure.lang.Ratio;
+
+/**
+ * Builds a value of the runtime that loaded this class, filling each collection through a
+ * transient and making it persistent once it is complete.  Keywords and symbols are interned
+ * through a cache; everything passed to {@link #value(Object)} is used as it is.
+ */
+public final class TransientDataBuilder implements DataBuilder {
+    private static final int ARRAY_MAP_MAX_SIZE = 8;
+
+    private final ArrayList<Frame> stack = new ArrayList<Frame>();
+    private Object result;
+    private boolean complete;
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#value(java.lang.Object)
+     */
+    public void value(Object value) {
+        add(value);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#keyword(java.lang.String, java.lang.String)
+     */
+    public void keyword(String ns, String name) {
+        add(InternCache.keyword(ns, name));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#symbol(java.lang.String, java.lang.String)
+     */
+    public void symbol(String ns, String name) {
+        add(InternCache.symbol(ns, name));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#bigInt(java.math.BigInteger)
+     */
+    public void bigInt(BigInteger value) {
+        add(BigInt.fromBigInteger(value));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#ratio(java.math.BigInteger, java.math.BigInteger)
+     */
+    public void ratio(BigInteger numerator, BigInteger denominator) {
+        add(new Ratio(numerator, denominator));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginMap(int)
+     */
+    public void beginMap(int size) {
+        stack.add(new MapFrame(size));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endMap()
+     */
+    public void endMap() {
+        end(MapFrame.class);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginVector(int)
+     */
+    public void beginVector(int size) {
+        stack.add(new VectorFrame());
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endVector()
+     */
+    public void endVector() {
+        end(VectorFrame.class);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginSet(int)
+     */
+    public void beginSet(int size) {
+        stack.add(new SetFrame());
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endSet()
+     */
+    public void endSet() {
+        end(SetFrame.class);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#beginList(int)
+     */
+    public void beginList(int size) {
+        stack.add(new ListFrame(size));
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataVisitor#endList()
+     */
+    public void endList() {
+        end(ListFrame.class);
+    }
+
+    /* (non-Javadoc)
+     * @see com.bradsdeals.clj.transfer.DataBuilder#result()
+     */
+    public Object result() {
+        if (!complete || !stack.isEmpty()) {
+            throw new IllegalStateException("No complete value has been built");
+        }
+        return result;
+    }
+
+    private void add(Object value) {
+        if (!stack.isEmpty()) {
+            stack.get(stack.size() - 1).add(value);
+        } else if (complete) {
+            throw new IllegalStateException("A builder receives a single value");
+        } else {
+            result = value;
+            complete = true;
+        }
+    }
+
+    private void end(Class<? extends Frame> expected) {
+        if (stack.isEmpty() || stack.get(stack.size() - 1).getClass() != expected) {
+            throw new IllegalStateException("Unbalanced end of " + expected.getSimpleName());
+        }
+        add(stack.remove(stack.size() - 1).build());
+    }
+
+    /*
+     * A collection being filled.
+     */
+    private abstract static class Frame {
+        abstract void add(Object value);
+
+        abstract Object build();
+    }
+
+    private static final class MapFrame extends Frame {
+        private ITransientMap map;
+        private Object key;
+        private boolean haveKey;
+
+        MapFrame(int size) {
+            map = size <= ARRAY_MAP_MAX_SIZE
+                    ? PersistentArrayMap.EMPTY.asTransient()
+                    : PersistentHashMap.EMPTY.asTransient();
+        }
+
+        @Override
+        void add(Object value) {
+            if (haveKey) {
+                map = map.assoc(key, value);
+                key = null;
+                haveKey = false;
+            } else {
+                key = value;
+                haveKey = true;
+            }
+        }
+
+        @Override
+        Object build() {
+            return map.persistent();
+        }
+    }
+
+    private static final class VectorFrame extends Frame {
+        private ITransientVector vector = PersistentVector.EMPTY.asTransient();
+
+        @Override
+        void add(Object value) {
+            vector = (ITransientVector) vector.conj(value);
+        }
+
+        @Override
+        Object build() {
+            return vector.persistent();
+        }
+    }
+
+    private static final class SetFrame extends Frame {
+        private ITransientSet set = (ITransientSet) PersistentHashSet.EMPTY.asTransient();
+
+        @Override
+        void add(Object value) {
+            set = (ITransientSet) set.conj(value);
+        }
+
+        @Override
+        Object build() {
+            return set.persistent();
+        }
+    }
+
+    private static final class ListFrame extends Frame {
+        private final ArrayList<Object> elements;
+
+        ListFrame(int size) {
+            elements = new ArrayList<Object>(size);
+        }
+
+        @Override
+        void add(Object value) {
+            elements.add(value);
+        }
+
+        @Override
+        Object build() {
+            return elements.isEmpty() ? PersistentList.EMPTY : PersistentList.create(elements);
+        }
+    }
+}
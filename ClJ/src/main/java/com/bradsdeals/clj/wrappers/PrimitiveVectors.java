@@ -0,0 +1,197 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import clojure.core.ArrayManager;
+import clojure.core.Vec;
+import clojure.core.VecNode;
+import clojure.lang.Keyword;
+import clojure.lang.RT;
+
+/**
+ * Converts between Java primitive arrays and Clojure's primitive vectors (the
+ * vectors created by <code>(vector-of :long)</code> and <code>(vector-of :double)</code>).<p>
+ *
+ * Primitive vectors store their elements in 32-element primitive arrays, so
+ * conversions are done by copying whole 32-element blocks with {@link System#arraycopy}
+ * rather than by boxing each element.
+ */
+public final class PrimitiveVectors {
+
+    private static final int BRANCH_BITS = 5;
+    private static final int BRANCH_SIZE = 1 << BRANCH_BITS;
+
+    private static volatile ArrayManager longs;
+    private static volatile ArrayManager doubles;
+
+    private PrimitiveVectors() {
+        // Utility class
+    }
+
+    /**
+     * Return a <code>(vector-of :long)</code> containing a copy of values.
+     *
+     * @param values The values to copy.
+     * @return A Clojure primitive vector containing values.
+     */
+    public static Object longVector(long[] values) {
+        if (longs == null) {
+            longs = arrayManager("long");
+        }
+        int cnt = values.length;
+        int tailoff = tailoff(cnt);
+        Object[] leaves = new Object[tailoff >>> BRANCH_BITS];
+        for (int i = 0; i < leaves.length; i++) {
+            long[] leaf = new long[BRANCH_SIZE];
+            System.arraycopy(values, i << BRANCH_BITS, leaf, 0, BRANCH_SIZE);
+            leaves[i] = new VecNode(null, leaf);
+        }
+        long[] tail = new long[cnt - tailoff];
+        System.arraycopy(values, tailoff, tail, 0, tail.length);
+        return vector(longs, cnt, leaves, tail);
+    }
+
+    /**
+     * Return a <code>(vector-of :double)</code> containing a copy of values.
+     *
+     * @param values The values to copy.
+     * @return A Clojure primitive vector containing values.
+     */
+    public static Object doubleVector(double[] values) {
+        if (doubles == null) {
+            doubles = arrayManager("double");
+        }
+        int cnt = values.length;
+        int tailoff = tailoff(cnt);
+        Object[] leaves = new Object[tailoff >>> BRANCH_BITS];
+        for (int i = 0; i < leaves.length; i++) {
+            double[] leaf = new double[BRANCH_SIZE];
+            System.arraycopy(values, i << BRANCH_BITS, leaf, 0, BRANCH_SIZE);
+            leaves[i] = new VecNode(null, leaf);
+        }
+        double[] tail = new double[cnt - tailoff];
+        System.arraycopy(values, tailoff, tail, 0, tail.length);
+        return vector(doubles, cnt, leaves, tail);
+    }
+
+    /**
+     * Convert a Clojure collection of numbers into a long[].  Primitive long vectors are
+     * copied block-by-block; other collections are copied element-by-element.
+     *
+     * @param coll A long[], a (possibly wrapped) Clojure collection of numbers, or null.
+     * @return A long[] containing coll's elements or null if coll is null.
+     */
+    public static long[] toLongArray(Object coll) {
+        if (coll instanceof IClojureIterable) {
+            coll = ((IClojureIterable<?>) coll).toClojure();
+        }
+        if (coll == null || coll instanceof long[]) {
+            return (long[]) coll;
+        }
+        if (coll instanceof Vec) {
+            Vec vec = (Vec) coll;
+            long[] result = new long[vec.cnt];
+            for (int i = 0; i < vec.cnt; i += BRANCH_SIZE) {
+                Object block = vec.arrayFor(i);
+                if (!(block instanceof long[])) {
+                    return toLongArray((Collection<?>) vec);
+                }
+                System.arraycopy(block, 0, result, i, Math.min(BRANCH_SIZE, vec.cnt - i));
+            }
+            return result;
+        }
+        return toLongArray(asCollection(coll, "long[]"));
+    }
+
+    /**
+     * Convert a Clojure collection of numbers into a double[].  Primitive double vectors are
+     * copied block-by-block; other collections are copied element-by-element.
+     *
+     * @param coll A double[], a (possibly wrapped) Clojure collection of numbers, or null.
+     * @return A double[] containing coll's elements or null if coll is null.
+     */
+    public static double[] toDoubleArray(Object coll) {
+        if (coll instanceof IClojureIterable) {
+            coll = ((IClojureIterable<?>) coll).toClojure();
+        }
+        if (coll == null || coll instanceof double[]) {
+            return (double[]) coll;
+        }
+        if (coll instanceof Vec) {
+            Vec vec = (Vec) coll;
+            double[] result = new double[vec.cnt];
+            for (int i = 0; i < vec.cnt; i += BRANCH_SIZE) {
+                Object block = vec.arrayFor(i);
+                if (!(block instanceof double[])) {
+                    return toDoubleArray((Collection<?>) vec);
+                }
+                System.arraycopy(block, 0, result, i, Math.min(BRANCH_SIZE, vec.cnt - i));
+            }
+            return result;
+        }
+        return toDoubleArray(asCollection(coll, "double[]"));
+    }
+
+    private static long[] toLongArray(Collection<?> coll) {
+        long[] result = new long[coll.size()];
+        Iterator<?> values = coll.iterator();
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((Number) values.next()).longValue();
+        }
+        return result;
+    }
+
+    private static double[] toDoubleArray(Collection<?> coll) {
+        double[] result = new double[coll.size()];
+        Iterator<?> values = coll.iterator();
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((Number) values.next()).doubleValue();
+        }
+        return result;
+    }
+
+    private static Collection<?> asCollection(Object coll, String targetType) {
+        if (coll instanceof Collection) {
+            return (Collection<?>) coll;
+        }
+        throw new IllegalArgumentException("Cannot convert a " + coll.getClass().getName() + " to " + targetType);
+    }
+
+    /*
+     * The tail holds the last 1-32 elements; everything before it lives in full 32-element leaves.
+     */
+    private static int tailoff(int cnt) {
+        if (cnt < BRANCH_SIZE) {
+            return 0;
+        }
+        return ((cnt - 1) >>> BRANCH_BITS) << BRANCH_BITS;
+    }
+
+    /*
+     * Build the trie bottom-up from full leaves, the same shape that repeated conj would produce.
+     */
+    private static Vec vector(ArrayManager am, int cnt, Object[] leaves, Object tail) {
+        int shift = BRANCH_BITS;
+        Object[] nodes = leaves;
+        while (nodes.length > BRANCH_SIZE) {
+            Object[] parents = new Object[(nodes.length + BRANCH_SIZE - 1) >>> BRANCH_BITS];
+            for (int i = 0; i < parents.length; i++) {
+                Object[] children = new Object[BRANCH_SIZE];
+                int start = i << BRANCH_BITS;
+                System.arraycopy(nodes, start, children, 0, Math.min(BRANCH_SIZE, nodes.length - start));
+                parents[i] = new VecNode(null, children);
+            }
+            nodes = parents;
+            shift += BRANCH_BITS;
+        }
+        Object[] rootChildren = new Object[BRANCH_SIZE];
+        System.arraycopy(nodes, 0, rootChildren, 0, nodes.length);
+        return new Vec(am, cnt, shift, new VecNode(null, rootChildren), tail, null);
+    }
+
+    private static ArrayManager arrayManager(String type) {
+        Vec empty = (Vec) RT.var("clojure.core", "vector-of").invoke(Keyword.intern(type));
+        return (ArrayManager) empty.am;
+    }
+}
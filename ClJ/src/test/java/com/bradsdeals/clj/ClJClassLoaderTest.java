@@ -0,0 +1,222 @@
+package com.bradsdeals.clj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import junit.framework.TestCase;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+public class ClJClassLoaderTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("cljloader", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testIndexesOuterAndNestedJars() throws Exception {
+        byte[] nested = jar("rules/tax.clj", "(ns rules.tax)", "rules/shared.clj", "nested");
+        File bundle = new File(directory, "bundle.jar");
+        writeJar(bundle, "rules/shared.clj", "outer".getBytes("UTF-8"), "lib/rules.jar", nested);
+
+        ClJClassLoader loader = new ClJClassLoader(getClass().getClassLoader(), bundle);
+        try {
+            assertEquals("(ns rules.tax)", read(loader.getResourceAsStream("rules/tax.clj")));
+            assertEquals("outer", read(loader.getResourceAsStream("rules/shared.clj")));
+            assertEquals("outer", read(loader.getResource("rules/shared.clj").openStream()));
+
+            List<URL> shared = Collections.list(loader.getResources("rules/shared.clj"));
+            assertEquals(2, shared.size());
+            assertEquals("nested", read(shared.get(1).openStream()));
+
+            assertNull(loader.getResource("rules/missing.clj"));
+            assertNull(loader.getResourceAsStream("rules/missing.clj"));
+        } finally {
+            loader.close();
+        }
+    }
+
+    public static class Greeting implements Callable<String> {
+        public String call() {
+            return "hello from " + getClass().getClassLoader().getClass().getSimpleName();
+        }
+    }
+
+    public void testDefinesClassesAndTheirPackages() throws Exception {
+        String path = Greeting.class.getName().replace('.', '/') + ".class";
+        byte[] greeting = readBytes(getClass().getClassLoader().getResourceAsStream(path));
+        File classes = new File(directory, "classes.jar");
+        writeJar(classes, "META-INF/", new byte[0], path, greeting);
+
+        ClJClassLoader loader = new ClJClassLoader(ClassLoader.getPlatformClassLoader(), classes);
+        try {
+            Class<?> loaded = loader.loadClass(Greeting.class.getName());
+            assertNotSame(Greeting.class, loaded);
+            assertSame(loader, loaded.getClassLoader());
+            assertSame(loaded, loader.loadClass(Greeting.class.getName()));
+            assertEquals(1, loader.definedClasses());
+            assertEquals(Greeting.class.getPackage().getName(), loaded.getPackage().getName());
+
+            Callable<?> instance = (Callable<?>) loaded.getDeclaredConstructor().newInstance();
+            assertEquals("hello from ClJClassLoader", instance.call());
+
+            try {
+                loader.loadClass("com.bradsdeals.clj.Missing");
+                fail("Expected ClassNotFoundException");
+            } catch (ClassNotFoundException e) {
+                // Expected
+            }
+        } finally {
+            loader.close();
+        }
+    }
+
+    public void testClosesJarsWhenTheClasspathCannotBeIndexed() throws Exception {
+        File corrupt = new File(directory, "corrupt.jar");
+        FileOutputStream out = new FileOutputStream(corrupt);
+        out.write("not a jar".getBytes("UTF-8"));
+        out.close();
+
+        long openFiles = openFiles();
+        for (int i = 0; i < 50; i++) {
+            // Open jars are shared per file, so each attempt needs its own
+            File good = new File(directory, "good-" + i + ".jar");
+            writeJar(good, "a.clj", "a".getBytes("UTF-8"), "b.clj", "b".getBytes("UTF-8"));
+            try {
+                new ClJClassLoader(getClass().getClassLoader(), good, corrupt);
+                fail("Expected IOException");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+        if (openFiles >= 0) {
+            assertTrue("Leaked jar files", openFiles() - openFiles < 50);
+        }
+    }
+
+    private static long openFiles() {
+        Object os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof UnixOperatingSystemMXBean ? ((UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount() : -1;
+    }
+
+    public void testStartsAPrivateRuntimeOverAClasspath() throws Exception {
+        URLClassLoader api = new URLClassLoader(new URL[] { PrivateRuntimes.codeSource(IClJ.class).toURI().toURL() },
+                ClassLoader.getPlatformClassLoader());
+        try {
+            // Only the API is visible to the loader, so ClJ and Clojure must come from the classpath
+            Class<?> loaderClass = api.loadClass(ClJLoader.class.getName());
+            Object clj = loaderClass.getMethod("clj", File[].class).invoke(null, (Object) PrivateRuntimes.runtimeClasspath());
+            Class<?> iclj = api.loadClass(IClJ.class.getName());
+            try {
+                assertEquals(ClJClassLoader.class.getName(), clj.getClass().getClassLoader().getClass().getName());
+                Method invoke = iclj.getMethod("invoke", String.class, Object[].class);
+                assertEquals(3L, invoke.invoke(clj, "clojure.core/+", new Object[] { 1L, 2L }));
+            } finally {
+                iclj.getMethod("close").invoke(clj);
+            }
+        } finally {
+            api.close();
+        }
+    }
+
+    public void testClosesTheClassLoaderWhenTheRuntimeCannotStart() throws Exception {
+        File bundle = new File(directory, "bundle.jar");
+        writeJar(bundle, "rules/shared.clj", "outer".getBytes("UTF-8"), "lib/rules.jar", jar("rules/tax.clj", "(ns rules.tax)"));
+        Set<String> extractions = extractions();
+
+        URLClassLoader api = new URLClassLoader(new URL[] { PrivateRuntimes.codeSource(IClJ.class).toURI().toURL() },
+                ClassLoader.getPlatformClassLoader());
+        try {
+            Method clj = api.loadClass(ClJLoader.class.getName()).getMethod("clj", File[].class);
+            try {
+                // Neither ClJ nor Clojure is on the classpath
+                clj.invoke(null, (Object) new File[] { bundle });
+                fail("Expected IllegalStateException");
+            } catch (InvocationTargetException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            api.close();
+        }
+        assertEquals(extractions, extractions());
+    }
+
+    private static Set<String> extractions() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith("clj-classpath");
+            }
+        });
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    private byte[] jar(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JarOutputStream out = new JarOutputStream(bytes);
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            out.putNextEntry(new JarEntry(namesAndContents[i]));
+            out.write(namesAndContents[i + 1].getBytes("UTF-8"));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void writeJar(File file, String name1, byte[] content1, String name2, byte[] content2) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new JarEntry(name1));
+            out.write(content1);
+            out.putNextEntry(new JarEntry(name2));
+            out.write(content2);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        return new String(readBytes(in), "UTF-8");
+    }
+
+    private static byte[] readBytes(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                result.write(buffer, 0, read);
+            }
+            return result.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
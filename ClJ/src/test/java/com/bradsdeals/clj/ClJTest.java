@@ -3,17 +3,61 @@ package com.bradsdeals.clj;
 import static com.bradsdeals.clj.ClJDSL.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import com.bradsdeals.clj.ClJAnnotations.ExpectedErrors;
+import com.bradsdeals.clj.ClJAnnotations.Memoize;
 import com.bradsdeals.clj.ClJAnnotations.Ns;
 import com.bradsdeals.clj.ClJAnnotations.Pt;
 import com.bradsdeals.clj.ClJAnnotations.Require;
+import com.bradsdeals.clj.ClJAnnotations.Timeout;
+import com.bradsdeals.clj.internal.dsl.ClojureFn;
+import com.bradsdeals.clj.internal.dsl.ClojurePlan;
+import com.bradsdeals.clj.remote.RemoteClJ;
+import com.bradsdeals.clj.transfer.BinaryDataReader;
+import com.bradsdeals.clj.transfer.BinaryDataWriter;
+import com.bradsdeals.clj.wrappers.IClojureIterable;
+import com.bradsdeals.clj.wrappers.MappedFile;
 import com.bradsdeals.clj.wrappers.StringBufferOutputStream;
+import com.bradsdeals.clj.wrappers.StringOutputStream;
 
 import junit.framework.TestCase;
 
@@ -34,6 +78,119 @@ public class ClJTest extends TestCase {
 
     private ClojureCalls clojure = c.define(ClojureCalls.class);
 
+    @Require({ "clojure.core :as core" })
+    interface PrimitiveCalls {
+        @Ns("core")
+        long[] conj(long[] values, long value);
+
+        @Ns("core")
+        double[] conj(double[] values, double value);
+
+        @Ns("core")
+        long nth(long[] values, int index);
+
+        @Ns("core")
+        Object type(double[] values);
+    }
+
+    private PrimitiveCalls primitives = c.define(PrimitiveCalls.class);
+
+    @Require({ "cljtest.reloadable :as rules" })
+    interface ReloadableCalls {
+        @Ns("rules")
+        String version();
+    }
+
+    @Require({ "cljtest.midreload :as rules" })
+    interface MidReloadCalls {
+        @Ns("rules")
+        String version();
+    }
+
+    @Require({ "cljtest.redefined :as rules" })
+    interface RedefinedCalls {
+        @Ns("rules")
+        String version();
+    }
+
+    // Counted down and awaited by cljtest.midreload while it is being reloaded
+    public static final CountDownLatch RELOAD_STARTED = new CountDownLatch(1);
+    public static final CountDownLatch RELOAD_RELEASED = new CountDownLatch(1);
+
+    @Require({ "clojure.core :as core" })
+    interface MemoizedCalls {
+        @Ns("core")
+        @Memoize(maxSize = 4)
+        String str(String first, String second);
+
+        @Ns("core")
+        @Memoize(maxSize = 4)
+        long[] vec(long[] values);
+    }
+
+    @Require({ "clojure.core :as core" })
+    interface TypedCalls {
+        @Ns("core")
+        int inc(long value);
+
+        @Ns("core")
+        List<String> keys(Object map);
+
+        @Ns("core")
+        Map<String, Integer> frequencies(Object coll);
+
+        @Ns("core")
+        Set<Object> set(Object coll);
+
+        @Ns("core")
+        int[] range(long end);
+
+        @Ns("core")
+        Optional<String> first(Object coll);
+
+        @Ns("core")
+        void vector(Object value);
+    }
+
+    @Require({ "clojure.core :as core" })
+    interface TimedCalls {
+        @Ns("core")
+        @Timeout(50)
+        Object deref(Object ref);
+    }
+
+    @Require({ "cljtest.errors :as errors", "clojure.java.io :as io" })
+    interface ValidationCalls {
+        @Ns("errors")
+        @ExpectedErrors("validation/rejected")
+        String validate(String input);
+
+        @Ns("errors")
+        String check(String input);
+
+        @Ns("io")
+        void copy(@Pt({ File.class }) Object input, @Pt({ Writer.class }) Object output) throws IOException;
+    }
+
+    // Proxies in a private runtime's classloader can only implement public interfaces
+    @Require({ "clojure.string :as str" })
+    public interface PrivateRuntimeCalls {
+        @Ns("str")
+        String replace(String source, Pattern match, String replacement);
+    }
+
+    @Require({ "clojure.string :as str" })
+    interface RemoteCalls {
+        @Ns("str")
+        String join(String separator, List<String> parts);
+
+        int count(Object coll);
+
+        long[] range(long end);
+
+        Optional<Object> first(Object coll);
+    }
+
     private static final String INPUT = "I see because I C";
 
     public void testClJ_replace() throws Exception {
@@ -41,6 +198,7 @@ public class ClJTest extends TestCase {
         assertEquals("I see because I see", result);
     }
 
+    @SuppressWarnings("deprecation")
     public void testClJ_copy() throws Exception {
         byte[] input = INPUT.getBytes();
         final StringBufferOutputStream output = new StringBufferOutputStream();
@@ -48,6 +206,40 @@ public class ClJTest extends TestCase {
         assertEquals(INPUT, output.toString());
     }
 
+    public void testClJ_copyUtf8() throws Exception {
+        String input = "I see \u00e7 because I \u00c7 \u2713";
+        final StringOutputStream output = new StringOutputStream();
+        clojure.copy(input.getBytes("UTF-8"), output);
+        assertEquals(input, output.toString());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testClJ_copyDirectByteBuffer() throws Exception {
+        byte[] bytes = INPUT.getBytes();
+        ByteBuffer input = ByteBuffer.allocateDirect(bytes.length);
+        input.put(bytes).flip();
+        final StringBufferOutputStream output = new StringBufferOutputStream();
+        clojure.copy(input, output);
+        assertEquals(INPUT, output.toString());
+        assertEquals(0, input.position());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testClJ_copyMappedFile() throws Exception {
+        File file = File.createTempFile("ClJTest", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(INPUT.getBytes());
+            out.close();
+
+            final StringBufferOutputStream output = new StringBufferOutputStream();
+            clojure.copy(new MappedFile(file, 4), output);
+            assertEquals(INPUT, output.toString());
+        } finally {
+            file.delete();
+        }
+    }
+
     public void testInvalidParameter_IllegalArgumentException() throws Exception {
         try {
             clojure.replace("source", "invalidInput".getBytes(), "replacement");
@@ -57,6 +249,911 @@ public class ClJTest extends TestCase {
         }
     }
 
+    public void testPrimitiveArrays_roundTrip() throws Exception {
+        int[] sizes = { 0, 1, 31, 32, 33, 1024, 1055, 1056, 1057, 40000 };
+        for (int size : sizes) {
+            long[] longs = new long[size];
+            double[] doubles = new double[size];
+            for (int i = 0; i < size; i++) {
+                longs[i] = i * 3L;
+                doubles[i] = i / 2.0;
+            }
+
+            long[] longResult = primitives.conj(longs, -1L);
+            assertEquals(size + 1, longResult.length);
+            for (int i = 0; i < size; i++) {
+                assertEquals(longs[i], longResult[i]);
+            }
+            assertEquals(-1L, longResult[size]);
+
+            double[] doubleResult = primitives.conj(doubles, -1.0);
+            assertEquals(size + 1, doubleResult.length);
+            for (int i = 0; i < size; i++) {
+                assertEquals(doubles[i], doubleResult[i], 0.0);
+            }
+            assertEquals(-1.0, doubleResult[size], 0.0);
+
+            if (size > 0) {
+                assertEquals(longs[size - 1], primitives.nth(longs, size - 1));
+            }
+        }
+    }
+
+    public void testPrimitiveArrays_passedAsPrimitiveVector() throws Exception {
+        assertEquals("clojure.core.Vec", ((Class<?>) primitives.type(new double[] { 1.0 })).getName());
+    }
+
+    public void testInvokeWithOutput_capturesOnlyThisCall() throws Exception {
+        StringWriter out = new StringWriter();
+        StringWriter err = new StringWriter();
+        Object println = c.var("clojure.core/println");
+        Object globalOut = c.invoke("clojure.core/deref", c.var("clojure.core/*out*"));
+
+        c.invokeWithOutput(out, err, println, "Hello", "world");
+        c.invokeWithOutput(out, err, println, "again");
+
+        assertEquals("Hello world\nagain\n", out.toString());
+        assertEquals("", err.toString());
+        assertSame(globalOut, c.invoke("clojure.core/deref", c.var("clojure.core/*out*")));
+    }
+
+    public void testInvokeWithOutput_writesStreamsWithoutFlushing() throws Exception {
+        final AtomicInteger flushes = new AtomicInteger();
+        StringOutputStream out = new StringOutputStream() {
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+        StringOutputStream err = new StringOutputStream();
+        Object print = c.var("clojure.core/print");
+
+        c.invokeWithOutput(out, err, print, "I see \u00e7");
+        c.invokeWithOutput(out, err, print, " \u2713");
+
+        assertEquals("I see \u00e7 \u2713", out.toString());
+        assertEquals("", err.toString());
+        assertEquals(0, flushes.get());
+    }
+
+    public void testMetrics_recordsCallsAndPublishesMBean() throws Exception {
+        IClJMetrics metrics = c.metrics();
+        FunctionStats before = metrics.functionStats().get("clojure.string/replace");
+        long callsBefore = before == null ? 0 : before.getCalls();
+        long hitsBefore = metrics.varCacheHits();
+
+        clojure.replace(INPUT, Pattern.compile("C"), "see");
+        clojure.replace(INPUT, Pattern.compile("C"), "see");
+
+        FunctionStats after = metrics.functionStats().get("clojure.string/replace");
+        assertEquals(callsBefore + 2, after.getCalls());
+        assertTrue(after.getMaxNanos() > 0);
+        assertTrue(after.getP99Nanos() >= after.getP50Nanos());
+        assertTrue(metrics.varCacheHits() > hitsBefore);
+
+        ObjectName name = new ObjectName("com.bradsdeals.clj:type=ClJ,name=\"public\"");
+        Long jmxCalls = (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "TotalCalls");
+        assertTrue(jmxCalls >= after.getCalls());
+    }
+
+    public void testReload_publishesNewDefinitions() throws Exception {
+        File root = File.createTempFile("cljreload", "");
+        root.delete();
+        File source = new File(root, "cljtest/reloadable.clj");
+        source.getParentFile().mkdirs();
+        writeSource(source, "(ns cljtest.reloadable) (defn version [] \"v1\")");
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[] {root.toURI().toURL()}, originalLoader));
+        try {
+            ReloadableCalls rules = c.define(ReloadableCalls.class, "/cljtest/reloadable");
+            Object versionVar = c.var("cljtest.reloadable/version");
+            assertEquals("v1", rules.version());
+
+            writeSource(source, "(ns cljtest.reloadable) (defn version [] \"v2\")");
+            c.reload("cljtest.reloadable");
+
+            assertEquals("v2", rules.version());
+            assertEquals("v2", c.invoke(versionVar));
+        } finally {
+            thread.setContextClassLoader(originalLoader);
+            source.delete();
+            source.getParentFile().delete();
+            root.delete();
+        }
+    }
+
+    public void testReload_servesPreviousDefinitionsWhileReloading() throws Exception {
+        File root = File.createTempFile("cljreload", "");
+        root.delete();
+        File source = new File(root, "cljtest/midreload.clj");
+        source.getParentFile().mkdirs();
+        writeSource(source, "(ns cljtest.midreload) (defn version [] \"v1\")");
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[] {root.toURI().toURL()}, originalLoader));
+        try {
+            MidReloadCalls rules = c.define(MidReloadCalls.class, "/cljtest/midreload");
+            assertEquals("v1", rules.version());
+
+            writeSource(source, "(ns cljtest.midreload) (defn version [] \"v2\")"
+                    + " (.countDown com.bradsdeals.clj.ClJTest/RELOAD_STARTED)"
+                    + " (.await com.bradsdeals.clj.ClJTest/RELOAD_RELEASED)");
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread reloader = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        c.reload("cljtest.midreload");
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+            reloader.start();
+            try {
+                assertTrue(RELOAD_STARTED.await(10, TimeUnit.SECONDS));
+                // version is already redefined, but the reload has not finished
+                assertEquals("v1", rules.version());
+            } finally {
+                RELOAD_RELEASED.countDown();
+                reloader.join();
+            }
+            assertNull(failure.get());
+            assertEquals("v2", rules.version());
+        } finally {
+            thread.setContextClassLoader(originalLoader);
+            source.delete();
+            source.getParentFile().delete();
+            root.delete();
+        }
+    }
+
+    public void testDefine_seesFunctionsRedefinedOutsideReload() throws Exception {
+        File root = File.createTempFile("cljredef", "");
+        root.delete();
+        writeNamespace(root, "cljtest.redefined", "(ns cljtest.redefined) (defn version [] \"v1\")");
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[] {root.toURI().toURL()}, originalLoader));
+        try {
+            RedefinedCalls rules = c.define(RedefinedCalls.class, "/cljtest/redefined");
+            assertEquals("v1", rules.version());
+
+            c.invoke("clojure.core/load-string",
+                    "(alter-var-root #'cljtest.redefined/version (constantly (fn [] \"v2\"))) nil");
+            assertEquals("v2", rules.version());
+
+            c.invoke("clojure.core/load-string",
+                    "(binding [*ns* (the-ns 'cljtest.redefined)] (eval '(defn version [] \"v3\"))) nil");
+            assertEquals("v3", rules.version());
+        } finally {
+            thread.setContextClassLoader(originalLoader);
+        }
+    }
+
+    public void testRequire_loadsIndependentNamespacesInParallel() throws Exception {
+        File root = File.createTempFile("cljgraph", "");
+        root.delete();
+        String[] children = { "cljtest.graph.a", "cljtest.graph.b", "cljtest.graph.c", "cljtest.graph.d" };
+        for (String child : children) {
+            writeNamespace(root, child, "(ns " + child + " (:require [cljtest.graph.leaf :as leaf])) (Thread/sleep 200)");
+        }
+        writeNamespace(root, "cljtest.graph.leaf", "(ns cljtest.graph.leaf) (def loads (atom 0)) (swap! loads inc)");
+        writeNamespace(root, "cljtest.graph.root",
+                "(ns cljtest.graph.root (:require (cljtest.graph a b) [cljtest.graph.c] cljtest.graph.d))");
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[] {root.toURI().toURL()}, originalLoader));
+        try {
+            NamespaceLoadReport report = c.require("cljtest.graph.root");
+
+            List<String> loaded = new ArrayList<String>(report.getLoadTimesNanos().keySet());
+            assertEquals(6, loaded.size());
+            assertEquals("cljtest.graph.leaf", loaded.get(0));
+            assertEquals("cljtest.graph.root", loaded.get(5));
+            Object loadCounter = c.invoke("clojure.core/deref", c.var("cljtest.graph.leaf/loads"));
+            Long leafLoads = c.invoke("clojure.core/deref", loadCounter);
+            assertEquals(1L, leafLoads.longValue());
+            assertSame(report, c.metrics().lastNamespaceLoadReport());
+            if (Runtime.getRuntime().availableProcessors() > 1) {
+                assertTrue(report.toString(), report.getThreads() > 1);
+                assertTrue(report.toString(), report.getWallNanos() < report.getCumulativeNanos());
+            }
+        } finally {
+            thread.setContextClassLoader(originalLoader);
+        }
+    }
+
+    public void testRequire_loadsSequentiallyWhenNamespacesRequireOutsideTheirNsForm() throws Exception {
+        File root = File.createTempFile("cljgraph", "");
+        root.delete();
+        for (String child : new String[] { "cljtest.toplevel.a", "cljtest.toplevel.b" }) {
+            writeNamespace(root, child, "(ns " + child + ") (Thread/sleep 100) (require 'cljtest.toplevel.shared)");
+        }
+        writeNamespace(root, "cljtest.toplevel.shared",
+                "(ns cljtest.toplevel.shared) (def loads (atom 0)) (swap! loads inc) (Thread/sleep 200)");
+        writeNamespace(root, "cljtest.toplevel.root", "(ns cljtest.toplevel.root (:require cljtest.toplevel.a cljtest.toplevel.b))");
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[] {root.toURI().toURL()}, originalLoader));
+        try {
+            NamespaceLoadReport report = c.require("cljtest.toplevel.root");
+
+            assertEquals(report.toString(), 1, report.getThreads());
+            Object loadCounter = c.invoke("clojure.core/deref", c.var("cljtest.toplevel.shared/loads"));
+            Long sharedLoads = c.invoke("clojure.core/deref", loadCounter);
+            assertEquals(1L, sharedLoads.longValue());
+        } finally {
+            thread.setContextClassLoader(originalLoader);
+        }
+    }
+
+    private static void writeNamespace(File root, String namespace, String source) throws IOException {
+        File file = new File(root, namespace.replace('.', '/') + ".clj");
+        file.getParentFile().mkdirs();
+        file.deleteOnExit();
+        writeSource(file, source);
+    }
+
+    private static void writeSource(File file, String source) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(source);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testReturnCoercion_followsDeclaredReturnType() throws Exception {
+        TypedCalls calls = c.define(TypedCalls.class);
+        Object a = c.invoke("clojure.core/keyword", "a");
+        Object b = c.invoke("clojure.core/keyword", "b");
+
+        assertEquals(42, calls.inc(41L));
+        try {
+            calls.inc(Integer.MAX_VALUE);
+            fail("Expected an out of range int");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put(a, 1L);
+        map.put(b, 2L);
+        assertEquals(Arrays.asList("a", "b"), calls.keys(map));
+        assertTrue(calls.keys(null).isEmpty());
+
+        Map<String, Integer> frequencies = calls.frequencies(Arrays.asList(a, b, a));
+        assertEquals(Integer.valueOf(2), frequencies.get("a"));
+        assertEquals(Integer.valueOf(1), frequencies.get("b"));
+
+        Set<Object> set = calls.set(Arrays.asList("x", "y", "x"));
+        assertTrue(set instanceof clojure.lang.IPersistentSet);
+        assertEquals(new HashSet<Object>(Arrays.asList("x", "y")), set);
+
+        assertTrue(Arrays.equals(new int[] { 0, 1, 2, 3 }, calls.range(4L)));
+        assertEquals("a", calls.first(Arrays.asList(a)).get());
+        assertFalse(calls.first(Collections.emptyList()).isPresent());
+        calls.vector("ignored");
+    }
+
+    public void testExInfo_translatedToClJExceptionWithData() throws Exception {
+        c.invoke("clojure.core/load-string", "(ns cljtest.errors)"
+                + " (defn validate [s] (if (= s \"ok\") s (throw (ex-info \"Rejected\" {:type :validation/rejected :field \"email\" :code 7}))))"
+                + " (def check validate)");
+        ValidationCalls calls = c.define(ValidationCalls.class);
+        assertEquals("ok", calls.validate("ok"));
+
+        try {
+            calls.validate("bad");
+            fail("Expected a ClJException");
+        } catch (ClJException e) {
+            assertEquals("Rejected", e.getMessage());
+            assertEquals("validation/rejected", e.getType());
+            assertEquals("email", e.getData().get("field"));
+            assertEquals(7L, e.getData().get("code"));
+            assertEquals("validation/rejected", e.getData().get("type"));
+            assertEquals(0, e.getStackTrace().length);
+            assertTrue(e.getCause() instanceof clojure.lang.ExceptionInfo);
+        }
+
+        try {
+            calls.check("bad");
+            fail("Expected a ClJException");
+        } catch (ClJException e) {
+            assertEquals("validation/rejected", e.getType());
+            assertTrue(e.getStackTrace().length > 0);
+        }
+
+        try {
+            Object thrower = c.invoke("clojure.core/load-string", "(fn [] (throw (IllegalStateException. \"unwrapped\")))");
+            c.invoke(thrower);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("unwrapped", e.getMessage());
+        }
+
+        try {
+            calls.copy(new File("/nonexistent/cljtest"), new StringWriter());
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Declared checked exceptions are thrown as themselves
+        }
+    }
+
+    public void testFootprint_growsWithNamespaceState() throws Exception {
+        RuntimeFootprint before = c.footprint();
+
+        c.invoke("clojure.core/load-string", "(ns cljtest.footprint) (def big (vec (range 100000))) (defn f [] big)");
+
+        RuntimeFootprint after = c.footprint();
+        assertEquals(after.toString(), before.getNamespaces() + 1, after.getNamespaces());
+        assertEquals(after.toString(), before.getVars() + 2, after.getVars());
+        assertTrue(after.toString(), after.getDynamicClasses() > before.getDynamicClasses());
+        assertTrue(after.toString(), after.getNamespaceHeapBytes() - before.getNamespaceHeapBytes() > 100000 * 16);
+        assertEquals(-1, after.getDefinedClasses());
+    }
+
+    public void testClose_privateClassloadersAreCollected() throws Exception {
+        File[] runtimeClasspath = PrivateRuntimes.runtimeClasspath();
+        ClassLoader shared = PrivateRuntimes.sharedClassesOnly();
+
+        List<WeakReference<ClassLoader>> loaders = new ArrayList<WeakReference<ClassLoader>>();
+        for (int i = 0; i < 100; i++) {
+            ClJClassLoader loader = new ClJClassLoader(shared, runtimeClasspath);
+            loaders.add(new WeakReference<ClassLoader>(loader));
+            final IClJ clj = ClJLoader.clj(loader);
+            final PrivateRuntimeCalls calls = clj.define(PrivateRuntimeCalls.class);
+            assertEquals("I see because I see", calls.replace(INPUT, Pattern.compile("C"), "see"));
+            Object agent = clj.invoke("clojure.core/agent", 0L);
+            clj.invoke("clojure.core/send", agent, clj.var("clojure.core/inc"));
+            clj.invoke("clojure.core/await", agent);
+            Object future = clj.invoke("clojure.core/future-call", clj.var("clojure.core/vector"));
+            clj.invoke("clojure.core/deref", future);
+            clj.invokeWithTimeout(10, TimeUnit.SECONDS, clj.var("clojure.core/+"), 1L, 2L);
+            clj.pinnedExecutor().submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return calls.replace(INPUT, Pattern.compile("C"), "see");
+                }
+            }).get(10, TimeUnit.SECONDS);
+            clj.close();
+        }
+
+        int live = loaders.size();
+        for (int attempt = 0; attempt < 100 && live > 0; attempt++) {
+            System.gc();
+            Thread.sleep(100);
+            live = 0;
+            for (WeakReference<ClassLoader> loader : loaders) {
+                live += loader.get() == null ? 0 : 1;
+            }
+        }
+        assertEquals(0, live);
+    }
+
+    public void testTransfer_rebuildsDataInAnotherRuntime() throws Exception {
+        String literal = "{:id 42 :name \"Ada\" :tags #{:math :ns/qualified} :scores [1.5 2N 1/3]"
+                + " :history (\"a\" b nil true) :nested {\"k\" [[] {} #{}]}}";
+        Object value = unwrap(c.invoke("clojure.core/read-string", literal));
+        Object name = c.invoke("clojure.core/get", value, c.invoke("clojure.core/keyword", "name"));
+
+        IClJ other = ClJLoader.clj(new ClJClassLoader(PrivateRuntimes.sharedClassesOnly(), PrivateRuntimes.runtimeClasspath()));
+        try {
+            Object copy = c.transfer(value, other);
+            assertNotSame(value.getClass().getClassLoader(), copy.getClass().getClassLoader());
+            assertEquals(Boolean.TRUE, other.invoke("clojure.core/map?", copy));
+            assertEquals(Boolean.TRUE, other.invoke("clojure.core/=", copy, unwrap(other.invoke("clojure.core/read-string", literal))));
+            Object copiedName = other.invoke("clojure.core/get", copy, other.invoke("clojure.core/keyword", "name"));
+            assertSame(name, copiedName);
+            Object tags = other.invoke("clojure.core/keyword", "tags");
+            Object math = other.invoke("clojure.core/keyword", "math");
+            assertSame(math, other.invoke("clojure.core/get-in", copy, Arrays.asList(tags, math)));
+
+            Object back = other.transfer(copy, c);
+            assertEquals(Boolean.TRUE, c.invoke("clojure.core/=", value, back));
+
+            byte[] encoded = other.encode(copy);
+            assertEquals(Boolean.TRUE, c.invoke("clojure.core/=", value, c.decode(encoded)));
+        } finally {
+            other.close();
+        }
+
+        try {
+            c.encode(c.var("clojure.core/inc"));
+            fail("Functions are not data");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testDecode_rejectsDataNestedTooDeep() throws Exception {
+        Object deepest = c.decode(nestedVectors(BinaryDataReader.MAX_DEPTH));
+        assertEquals(Boolean.TRUE, c.invoke("clojure.core/vector?", deepest));
+        try {
+            c.decode(nestedVectors(BinaryDataReader.MAX_DEPTH + 1));
+            fail("Decoding should stop at the depth limit");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] nestedVectors(int depth) {
+        BinaryDataWriter writer = new BinaryDataWriter();
+        for (int i = 0; i < depth; i++) {
+            writer.beginVector(1);
+        }
+        writer.value(null);
+        for (int i = 0; i < depth; i++) {
+            writer.endVector();
+        }
+        return writer.toByteArray();
+    }
+
+    public void testRemoteRuntime_callsAcrossProcesses() throws Exception {
+        RemoteClJ remote = (RemoteClJ) ClJLoader.remoteClj(new String[] { "-Xmx64m" }, PrivateRuntimes.remoteClasspath());
+        try {
+            Map<String, Object> order = new LinkedHashMap<String, Object>();
+            order.put("sku", "A-1");
+            order.put("quantity", 3L);
+            Object paid = remote.invoke("clojure.core/assoc", order, "paid", true);
+            order.put("paid", true);
+            assertEquals(order, paid);
+            Object sum = remote.invoke("clojure.core/+", 1L, 2L, 3L);
+            assertEquals(6L, sum);
+
+            RemoteCalls calls = remote.define(RemoteCalls.class);
+            assertEquals("a,b", calls.join(",", Arrays.asList("a", "b")));
+            assertEquals(3, calls.count(Arrays.asList(1L, 2L, 3L)));
+            assertTrue(Arrays.equals(new long[] { 0, 1, 2 }, calls.range(3)));
+            assertEquals(Optional.empty(), calls.first(Collections.emptyList()));
+
+            remote.invoke("clojure.core/load-string", "(ns remote.orders)"
+                    + " (defn reject [field] (throw (ex-info \"Rejected\" {:type :validation/rejected :field field})))"
+                    + " (defn quantity [n] {:pre [(pos? n)]} n) nil");
+            try {
+                remote.invoke("remote.orders/reject", "email");
+                fail("ex-info should arrive as a ClJException");
+            } catch (ClJException e) {
+                assertEquals("validation/rejected", e.getType());
+                assertEquals("email", e.getData().get("field"));
+            }
+            // Errors are answered too, and leave the child serving
+            try {
+                remote.invoke("remote.orders/quantity", -1L);
+                fail("The :pre condition should have failed");
+            } catch (ClJException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(AssertionError.class.getName()));
+            }
+            Object quantity = remote.invoke("remote.orders/quantity", 2L);
+            assertEquals(2L, quantity);
+            try {
+                remote.invokeWithTimeout(50, TimeUnit.MILLISECONDS, "clojure.core/load-string", "(Thread/sleep 10000)");
+                fail("The child should have timed the call out");
+            } catch (ClJTimeoutException e) {
+                // Expected
+            }
+
+            // Exhausting the child's heap ends the child, not this JVM
+            try {
+                remote.invoke("clojure.core/load-string", "(count (vec (range 100000000)))");
+                fail("The child should have run out of memory");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        } finally {
+            remote.close();
+        }
+        String log = new String(Files.readAllBytes(remote.getLogFile().toPath()), "UTF-8");
+        assertTrue(log, log.contains("OutOfMemoryError"));
+        remote.getLogFile().delete();
+    }
+
+    public void testRemoteRuntime_bindingsMetricsAndSlowCalls() throws Exception {
+        final IClJ remote = ClJLoader.remoteClj(PrivateRuntimes.remoteClasspath());
+        try {
+            remote.invoke("clojure.core/load-string", "(ns remote.context) (def ^:dynamic *tenant* nil) (defn tenant [] *tenant*) nil");
+            final Callable<String> tenant = new Callable<String>() {
+                public String call() throws Exception {
+                    return remote.invoke("remote.context/tenant");
+                }
+            };
+            ClojureBindings acme = remote.bindings(Collections.singletonMap("remote.context/*tenant*", "acme"));
+            assertEquals("acme", remote.withBindings(acme, tenant));
+            assertNull(tenant.call());
+            // Pinned tasks run in this JVM, without the submitting thread's bindings
+            String fromTask = remote.withBindings(acme, new Callable<String>() {
+                public String call() throws Exception {
+                    return remote.pinnedExecutor().submit(tenant).get(10, TimeUnit.SECONDS);
+                }
+            });
+            assertNull(fromTask);
+
+            FunctionStats stats = remote.metrics().functionStats().get("remote.context/tenant");
+            assertEquals(3, stats.getCalls());
+            assertEquals(0, remote.metrics().runningAbandonedCalls());
+
+            remote.slowCalls().enable(100, TimeUnit.MILLISECONDS, 100);
+            try {
+                remote.invoke("clojure.core/load-string", "(Thread/sleep 200)");
+                List<SlowCall> samples = remote.slowCalls().samples();
+                assertEquals(1, samples.size());
+                assertEquals("clojure.core/load-string", samples.get(0).getFunctionName());
+                assertTrue(samples.get(0).getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+            } finally {
+                remote.slowCalls().disable();
+            }
+        } finally {
+            remote.close();
+        }
+    }
+
+    public void testRemoteRuntime_interruptedCallersStopWaiting() throws Exception {
+        IClJ remote = ClJLoader.remoteClj(PrivateRuntimes.remoteClasspath());
+        try {
+            final Thread caller = Thread.currentThread();
+            Thread interrupter = new Thread() {
+                public void run() {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    caller.interrupt();
+                }
+            };
+            interrupter.start();
+            long start = System.nanoTime();
+            try {
+                remote.invoke("clojure.core/load-string", "(Thread/sleep 3000) :late");
+                fail("The call should have been interrupted");
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof InterruptedException);
+                assertTrue(Thread.interrupted());
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+            // The late answer to the abandoned call is skipped
+            Object sum = remote.invoke("clojure.core/+", 1L, 2L);
+            assertEquals(3L, sum);
+        } finally {
+            remote.close();
+        }
+    }
+
+    public void testRemoteRuntime_stopsChildrenThatMissTheDeadline() throws Exception {
+        RemoteClJ remote;
+        System.setProperty(RemoteClJ.DEADLINE_PROPERTY, "1");
+        try {
+            remote = (RemoteClJ) ClJLoader.remoteClj(PrivateRuntimes.remoteClasspath());
+        } finally {
+            System.clearProperty(RemoteClJ.DEADLINE_PROPERTY);
+        }
+        try {
+            Object sum = remote.invokeWithTimeout(10, TimeUnit.SECONDS, "clojure.core/load-string", "(Thread/sleep 1500) (+ 1 2)");
+            assertEquals(3L, sum);
+            try {
+                remote.invoke("clojure.core/load-string", "(Thread/sleep 60000)");
+                fail("The child should have missed the deadline");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            assertFalse(remote.getProcess().isAlive());
+        } finally {
+            remote.close();
+        }
+    }
+
+    public void testRemoteRuntime_removesItsFilesWhenTheChildCannotStart() throws Exception {
+        Set<String> files = remoteRuntimeFiles();
+        String javaHome = System.getProperty("java.home");
+        File missing = File.createTempFile("cljnojava", "");
+        missing.delete();
+        System.setProperty("java.home", missing.getPath());
+        try {
+            ClJLoader.remoteClj(PrivateRuntimes.remoteClasspath());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // There is no java executable to start
+        } finally {
+            System.setProperty("java.home", javaHome);
+        }
+        assertEquals(files, remoteRuntimeFiles());
+    }
+
+    private static Set<String> remoteRuntimeFiles() {
+        Set<String> result = new HashSet<String>();
+        for (String directory : new String[] { "/dev/shm", System.getProperty("java.io.tmpdir") }) {
+            String[] names = new File(directory).list();
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".channel") || name.startsWith("clj-remote-")) {
+                        result.add(directory + "/" + name);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public void testRemoteRuntime_childExitsWhileItsAgentsAreBusy() throws Exception {
+        RemoteClJ remote = (RemoteClJ) ClJLoader.remoteClj(PrivateRuntimes.remoteClasspath());
+        try {
+            remote.invoke("clojure.core/load-string", "(ns remote.zombie) (defn positive [n] {:pre [(pos? n)]} n)"
+                    + " (send-off (agent nil) (fn [_] (Thread/sleep 60000))) nil");
+            // An Error that escaped the request loop used to leave the child running without answering
+            try {
+                remote.invoke("remote.zombie/positive", -1L);
+                fail("The assertion should have failed");
+            } catch (ClJException e) {
+                // Expected
+            }
+        } finally {
+            remote.close();
+        }
+        // The agent's thread would keep the child running; a child that had to be killed exits non-zero
+        assertEquals(0, remote.getProcess().exitValue());
+    }
+
+    private static Object unwrap(Object result) {
+        return ((IClojureIterable<?>) result).toClojure();
+    }
+
+    public void testMemoize_servesRepeatedCallsFromBoundedCache() throws Exception {
+        MemoizedCalls memoized = c.define(MemoizedCalls.class);
+        String name = MemoizedCalls.class.getName() + "#str";
+        MemoStats before = c.metrics().memoStats().get(name);
+
+        assertEquals("ab", memoized.str("a", "b"));
+        assertEquals("ab", memoized.str("a", "b"));
+        MemoStats stats = c.metrics().memoStats().get(name);
+        assertEquals(before.getMisses() + 1, stats.getMisses());
+        assertEquals(before.getHits() + 1, stats.getHits());
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("x" + i, memoized.str("x", Integer.toString(i)));
+        }
+        stats = c.metrics().memoStats().get(name);
+        assertTrue(stats.getSize() <= 4);
+        assertTrue(stats.getEvictions() >= 17);
+    }
+
+    public void testMemoize_copiesMutableArgumentsAndResults() throws Exception {
+        MemoizedCalls memoized = c.define(MemoizedCalls.class);
+        String name = MemoizedCalls.class.getName() + "#vec";
+        long[] values = {1, 2, 3};
+
+        long[] first = memoized.vec(values);
+        first[0] = 99;
+        values[1] = 99;
+        long[] second = memoized.vec(new long[] {1, 2, 3});
+
+        assertTrue(Arrays.toString(second), Arrays.equals(new long[] {1, 2, 3}, second));
+        assertNotSame(first, second);
+        assertEquals(1, c.metrics().memoStats().get(name).getHits());
+    }
+
+    public void testTimeout_releasesCallerWhenClojureRunsAway() throws Exception {
+        Object sleepy = c.invoke("clojure.core/load-string", "(fn [] (Thread/sleep 60000) :done)");
+        long start = System.nanoTime();
+        try {
+            c.invokeWithTimeout(50, TimeUnit.MILLISECONDS, sleepy);
+            fail("Expected a timeout");
+        } catch (ClJTimeoutException e) {
+            assertTrue(e.getFunctionName().length() > 0);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+
+        Long sum = c.invokeWithTimeout(1, TimeUnit.SECONDS, c.var("clojure.core/+"), 1L, 2L);
+        assertEquals(3L, sum.longValue());
+
+        TimedCalls timed = c.define(TimedCalls.class);
+        try {
+            timed.deref(c.invoke("clojure.core/promise"));
+            fail("Expected a timeout");
+        } catch (ClJTimeoutException e) {
+            assertEquals("clojure.core/deref", e.getFunctionName());
+        }
+    }
+
+    public void testTimeout_failsFastWhenAbandonedCallsHoldEveryThread() throws Exception {
+        String previous = System.setProperty(ClJ.TIMEOUT_THREADS_PROPERTY, "1");
+        IClJ clj = ClJLoader.clj(new ClJClassLoader(PrivateRuntimes.sharedClassesOnly(), PrivateRuntimes.runtimeClasspath()));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Object stubborn = clj.invoke("clojure.core/load-string",
+                    "(fn [^java.util.concurrent.CountDownLatch release]"
+                    + "  (loop [] (when-not (try (.await release) true (catch InterruptedException e false)) (recur))))");
+            try {
+                clj.invokeWithTimeout(200, TimeUnit.MILLISECONDS, stubborn, release);
+                fail("Expected a timeout");
+            } catch (ClJTimeoutException e) {
+                // Expected
+            }
+            assertEquals(1, clj.metrics().abandonedCalls());
+            assertEquals(1, clj.metrics().runningAbandonedCalls());
+
+            try {
+                clj.invokeWithTimeout(1, TimeUnit.SECONDS, clj.var("clojure.core/+"), 1L, 2L);
+                fail("The only timeout thread is still running the abandoned call");
+            } catch (RejectedExecutionException e) {
+                // Expected
+            }
+
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (clj.metrics().runningAbandonedCalls() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, clj.metrics().runningAbandonedCalls());
+            Long sum = clj.invokeWithTimeout(1, TimeUnit.SECONDS, clj.var("clojure.core/+"), 1L, 2L);
+            assertEquals(3L, sum.longValue());
+        } finally {
+            release.countDown();
+            clj.close();
+            if (previous == null) {
+                System.clearProperty(ClJ.TIMEOUT_THREADS_PROPERTY);
+            } else {
+                System.setProperty(ClJ.TIMEOUT_THREADS_PROPERTY, previous);
+            }
+        }
+    }
+
+    public void testPinnedExecutor_runsCallsOnRuntimeThreads() throws Exception {
+        Future<String> result = c.pinnedExecutor().submit(new Callable<String>() {
+            public String call() throws Exception {
+                return Thread.currentThread().getName() + ":" + clojure.replace(INPUT, Pattern.compile("C"), "see");
+            }
+        });
+        String value = result.get(10, TimeUnit.SECONDS);
+        assertTrue(value, value.startsWith("clj-pinned-public-"));
+        assertTrue(value, value.endsWith(":I see because I see"));
+    }
+
+    public void testPinnedExecutor_privateRuntimeThreadsDropBindingsBetweenTasks() throws Exception {
+        String previous = System.setProperty(ClJ.PINNED_THREADS_PROPERTY, "1");
+        final IClJ clj = ClJLoader.clj(new ClJClassLoader(PrivateRuntimes.sharedClassesOnly(), PrivateRuntimes.runtimeClasspath()));
+        try {
+            final List<Integer> digits = Arrays.asList(1, 2, 3, 4);
+            final ClojureBindings printTwo = clj.bindings(Collections.singletonMap("clojure.core/*print-length*", 2));
+            String bound = clj.pinnedExecutor().submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return clj.withBindings(printTwo, new Callable<String>() {
+                        public String call() throws Exception {
+                            return Thread.currentThread().getName() + ":" + clj.invoke("clojure.core/pr-str", digits);
+                        }
+                    });
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(bound, bound.startsWith("clj-pinned-ClJClassLoader@"));
+            assertTrue(bound, bound.endsWith(":[1 2 ...]"));
+
+            // The pool's only thread ran the task above and keeps its Clojure thread state
+            String unbound = clj.pinnedExecutor().submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return Thread.currentThread().getName() + ":" + clj.invoke("clojure.core/pr-str", digits)
+                            + ":" + clj.<IClojureIterable<?>>invoke("clojure.core/get-thread-bindings").size();
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals(bound.substring(0, bound.indexOf(':')) + ":[1 2 3 4]:0", unbound);
+        } finally {
+            clj.close();
+            if (previous == null) {
+                System.clearProperty(ClJ.PINNED_THREADS_PROPERTY);
+            } else {
+                System.setProperty(ClJ.PINNED_THREADS_PROPERTY, previous);
+            }
+        }
+    }
+
+    public void testWithBindings_reusablePreparedFrameNests() throws Exception {
+        final List<Integer> digits = Arrays.asList(1, 2, 3, 4);
+        final ClojureBindings printTwo = c.bindings(Collections.singletonMap("clojure.core/*print-length*", 2));
+        final ClojureBindings printThree = c.bindings(Collections.singletonMap(c.var("clojure.core/*print-length*"), 3));
+
+        for (int i = 0; i < 2; i++) {
+            String printed = c.withBindings(printTwo, new Callable<String>() {
+                public String call() throws Exception {
+                    String inner = c.withBindings(printThree, new Callable<String>() {
+                        public String call() throws Exception {
+                            return c.invoke("clojure.core/pr-str", digits);
+                        }
+                    });
+                    assertEquals("[1 2 3 ...]", inner);
+                    return c.invoke("clojure.core/pr-str", digits);
+                }
+            });
+            assertEquals("[1 2 ...]", printed);
+        }
+        assertEquals("[1 2 3 4]", c.invoke("clojure.core/pr-str", digits));
+
+        try {
+            c.bindings(Collections.singletonMap("clojure.core/str", "x"));
+            fail("Expected non-dynamic Var to be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testSlowCallSampler_capturesArgumentShapes() throws Exception {
+        ISlowCallSampler sampler = c.slowCalls();
+        sampler.enable(0, TimeUnit.NANOSECONDS, 1000);
+        try {
+            c.invoke("clojure.core/count", Arrays.asList("a", "b", "c"));
+            primitives.nth(new long[] {4, 5}, 1);
+        } finally {
+            sampler.disable();
+        }
+
+        List<SlowCall> samples = sampler.samples();
+        SlowCall count = null;
+        SlowCall nth = null;
+        for (SlowCall sample : samples) {
+            if ("clojure.core/count".equals(sample.getFunctionName())) {
+                count = sample;
+            } else if ("clojure.core/nth".equals(sample.getFunctionName())) {
+                nth = sample;
+            }
+        }
+        assertEquals(Arrays.asList("ArrayList[3]"), count.getArgumentShapes());
+        assertEquals(Arrays.asList("Vec[2]", "Integer"), nth.getArgumentShapes());
+        assertEquals(Thread.currentThread().getName(), nth.getThreadName());
+    }
+
+    public void testSlowCallSampler_doesNotRealizeLazySeqs() throws Exception {
+        Object naturals = unwrap(c.invoke("clojure.core/iterate", c.var("clojure.core/inc"), 0L));
+        ISlowCallSampler sampler = c.slowCalls();
+        sampler.clear();
+        sampler.enable(0, TimeUnit.NANOSECONDS, 1000);
+        try {
+            assertEquals(Arrays.asList(0L, 1L, 2L), unwrap(c.invoke("clojure.core/take", 3, naturals)));
+        } finally {
+            sampler.disable();
+        }
+
+        SlowCall take = null;
+        for (SlowCall sample : sampler.samples()) {
+            if ("clojure.core/take".equals(sample.getFunctionName())) {
+                take = sample;
+            }
+        }
+        assertEquals(Arrays.asList("Integer", naturals.getClass().getSimpleName()), take.getArgumentShapes());
+    }
+
+    public void testFlightRecorder_emitsInvocationAndNamespaceLoadEvents() throws Exception {
+        Recording recording = new Recording();
+        File dump = File.createTempFile("ClJTest", ".jfr");
+        try {
+            recording.enable("com.bradsdeals.clj.Invocation").withoutThreshold();
+            recording.enable("com.bradsdeals.clj.NamespaceLoad").withoutThreshold();
+            recording.start();
+
+            c.define(ClojureCalls.class, "/clojure/data");
+            clojure.replace(INPUT, Pattern.compile("C"), "see");
+
+            recording.stop();
+            recording.dump(dump.toPath());
+            Set<String> loaded = new HashSet<String>();
+            boolean invoked = false;
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+                String type = event.getEventType().getName();
+                if ("com.bradsdeals.clj.NamespaceLoad".equals(type)) {
+                    loaded.add(event.getString("namespace"));
+                } else if ("com.bradsdeals.clj.Invocation".equals(type)) {
+                    invoked |= "clojure.string/replace".equals(event.getString("function"));
+                }
+            }
+            assertTrue(invoked);
+            assertTrue(loaded.contains("/clojure/data"));
+        } finally {
+            recording.close();
+            dump.delete();
+        }
+    }
+
     // DSL test --------------------------------------------------------------------------------------------------
 
 
@@ -66,6 +1163,7 @@ public class ClJTest extends TestCase {
         assertEquals("I see because I see", result);
     }
 
+    @SuppressWarnings("deprecation")
     public void testDoTwo() throws Exception {
         byte[] input = INPUT.getBytes();
         final StringBufferOutputStream output = new StringBufferOutputStream();
@@ -79,6 +1177,7 @@ public class ClJTest extends TestCase {
         assertEquals("I see because I see", result);
     }
 
+    @SuppressWarnings("deprecation")
     public void testDoWithLet() throws Exception {
         byte[] input = INPUT.getBytes();
         final StringBufferOutputStream output = new StringBufferOutputStream();
@@ -94,6 +1193,7 @@ public class ClJTest extends TestCase {
         assertEquals("I see because I see because I see because I see", result);
     }
 
+    @SuppressWarnings("deprecation")
     public void testDoWithSubLetAndShadowing() throws Exception {
         byte[] input = INPUT.getBytes();
         final StringBufferOutputStream output = new StringBufferOutputStream();
@@ -112,6 +1212,133 @@ public class ClJTest extends TestCase {
         assertEquals("I C because I C", result);
     }
 
+    private static final ClojureFn[] SHARED_BLOCK = {
+        let(vars("see", $("str/replace", INPUT, Pattern.compile("C"), "see")),
+                $("core/str", "see", " because ", "see"))
+    };
+
+    public void testDoAll_sharedBlockRunsConcurrently() throws Exception {
+        final IClJ clj = c;
+        final String expected = "I see because I see because I see because I see";
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            String result = doAll(clj, require("clojure.string :as str", "clojure.core :as core"),
+                                    SHARED_BLOCK);
+                            assertEquals(expected, result);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+    }
+
+    public void testPar_bindsIndependentResults() throws Exception {
+        final AtomicInteger submitted = new AtomicInteger();
+        Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                new Thread(command).start();
+            }
+        };
+
+        String result = doAll(c, require("clojure.string :as str", "clojure.core :as core"),
+                par(executor, vars("see", $("str/replace", INPUT, Pattern.compile("C"), "see"),
+                                   "upper", $("str/upper-case", INPUT),
+                                   "lower", $("str/lower-case", INPUT)),
+                        $("core/str", "see", "|", "upper", "|", "lower")));
+
+        assertEquals("I see because I see|I SEE BECAUSE I C|i see because i c", result);
+        assertEquals(2, submitted.get());
+    }
+
+    private static final ClojureFn[] SHARED_PAR_BLOCK = {
+        par(vars("upper", $("str/upper-case", INPUT),
+                 "lower", $("str/lower-case", INPUT)),
+                $("core/str", "upper", "|", "lower"))
+    };
+
+    public void testPar_usesDefaultExecutorWhenRun() throws Exception {
+        final AtomicInteger submitted = new AtomicInteger();
+        Executor previous = getDefaultExecutor();
+        setDefaultExecutor(new Executor() {
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                new Thread(command).start();
+            }
+        });
+        try {
+            String result = doAll(c, require("clojure.string :as str", "clojure.core :as core"), SHARED_PAR_BLOCK);
+            assertEquals("I SEE BECAUSE I C|i see because i c", result);
+            assertEquals(1, submitted.get());
+        } finally {
+            setDefaultExecutor(previous);
+        }
+    }
+
+    public void testDoAllAsync() throws Exception {
+        CompletableFuture<String> result = doAllAsync(c, require("clojure.string :as str"),
+                $("str/replace", INPUT, Pattern.compile("C"), "see"));
+        assertEquals("I see because I see", result.get(10, TimeUnit.SECONDS));
+    }
+
+    public void testDoAllCompiled_subLetAndShadowing() throws Exception {
+        for (String input : new String[] { INPUT, "C" }) {
+            byte[] bytes = input.getBytes();
+            final StringOutputStream output = new StringOutputStream();
+
+            String result =
+                    doAllCompiled(c, require("clojure.string :as str",
+                                             "clojure.java.io :as io",
+                                             "clojure.core :as core"),
+                        let(vars("see", $("str/replace", input, Pattern.compile("C"), "see")),
+                                $("io/copy", bytes, output),
+                                $("core/str", "see", " because ", "see"),
+                                let(vars("see", input),
+                                        $("core/str", "see", " because ", "see"))));
+
+            assertEquals(input, output.toString());
+            assertEquals(input + " because " + input, result);
+        }
+    }
+
+    public void testDoAllCompiled_fnLiteralAndNestedCalls() throws Exception {
+        Object result = doAllCompiled(c, require("clojure.core :as c"),
+                $("c/apply", fn("c/str"), $("c/list", "a", "b", $("c/inc", 1L))));
+        assertEquals("ab2", result);
+    }
+
+    public void testCompiledPlan_executesWithNewInputs() throws Exception {
+        ClojurePlan plan = compile(c, require("clojure.string :as str",
+                                              "clojure.core :as core"),
+                let(vars("see", $("str/replace", arg(0), Pattern.compile("C"), "see")),
+                        $("core/str", "see", " because ", "see"),
+                        let(vars("see", arg(1)),
+                                $("core/str", "see", " because ", "see"))));
+
+        assertEquals(2, plan.arity());
+        assertEquals("I C because I C", plan.execute(INPUT, "I C"));
+        assertEquals("C because C", plan.execute("unused", "C"));
+    }
+
+    public void testCompiledPlan_passesFnLiterals() throws Exception {
+        ClojurePlan plan = compile(c, require("clojure.core :as c"),
+                $("c/apply", fn("c/str"), arg(0)));
+
+        assertEquals("abc", plan.execute(Arrays.asList("a", "b", "c")));
+    }
+
     public void testDo_fncallInArgList_success() throws Exception {
         doAll(c, require("clojure.core :as c"),
                 $("c/println",
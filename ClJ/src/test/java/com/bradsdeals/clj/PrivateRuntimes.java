@@ -0,0 +1,86 @@
+package com.bradsdeals.clj;
+
+import java.io.File;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Classpaths and parent classloaders for the tests and benchmarks that start private or remote
+ * runtimes from the test classpath.
+ */
+public final class PrivateRuntimes {
+    private PrivateRuntimes() {
+    }
+
+    /**
+     * @return The jars or directories holding ClJ, Clojure and possible-monad, for a private
+     *     runtime whose parent classloader supplies the ClJ API.
+     */
+    public static File[] runtimeClasspath() throws Exception {
+        return new File[] { codeSource(ClJ.class), codeSource(clojure.lang.RT.class),
+                codeSource(com.coconut_palm_software.possible.Possible.class) };
+    }
+
+    /**
+     * @return The {@link #runtimeClasspath()} preceded by the ClJ API, for a child JVM.
+     */
+    public static File[] remoteClasspath() throws Exception {
+        File[] runtime = runtimeClasspath();
+        File[] result = new File[runtime.length + 1];
+        result[0] = codeSource(IClJ.class);
+        System.arraycopy(runtime, 0, result, 1, runtime.length);
+        return result;
+    }
+
+    /**
+     * @return A parent classloader for private runtimes that only shares the ClJ API and the test
+     *     classes, as a container would, so each runtime loads its own Clojure and ClJ.
+     */
+    public static ClassLoader sharedClassesOnly() throws Exception {
+        return new SharedClassesOnly(PrivateRuntimes.class.getClassLoader(),
+                codeSource(IClJ.class).toURI().toURL(), codeSource(PrivateRuntimes.class).toURI().toURL());
+    }
+
+    /**
+     * @param type A class on the test classpath.
+     * @return The jar or directory the class was loaded from.
+     */
+    public static File codeSource(Class<?> type) throws Exception {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static class SharedClassesOnly extends ClassLoader {
+        private final Set<URL> sharedLocations;
+
+        SharedClassesOnly(ClassLoader parent, URL... sharedLocations) {
+            super(parent);
+            this.sharedLocations = new HashSet<URL>(Arrays.asList(sharedLocations));
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            Class<?> result = super.loadClass(name, resolve);
+            CodeSource source = result.getProtectionDomain().getCodeSource();
+            if (source != null && !"jrt".equals(source.getLocation().getProtocol())
+                    && !sharedLocations.contains(source.getLocation())) {
+                throw new ClassNotFoundException(name);
+            }
+            return result;
+        }
+
+        @Override
+        public URL getResource(String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) {
+            return Collections.enumeration(Collections.<URL>emptyList());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.bradsdeals.clj.cds;
+
+import java.lang.management.ManagementFactory;
+import java.util.regex.Pattern;
+
+import com.bradsdeals.clj.ClJ;
+import com.bradsdeals.clj.ClJAnnotations.Ns;
+import com.bradsdeals.clj.ClJAnnotations.Pt;
+import com.bradsdeals.clj.ClJAnnotations.Require;
+
+/**
+ * The process {@link StartupBenchmark} times: start a ClJ runtime, make one call and print the
+ * milliseconds since JVM start.
+ */
+public class FirstCall {
+    @Require({ "clojure.string :as str" })
+    interface Calls {
+        @Ns("str")
+        String replace(String source, @Pt({ String.class, Pattern.class }) Object match, String replacement);
+    }
+
+    public static void main(String[] args) {
+        Calls calls = new ClJ().define(Calls.class);
+        if (!"I see".equals(calls.replace("I C", "C", "see"))) {
+            throw new IllegalStateException("Unexpected result");
+        }
+        System.out.println(System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+}
@@ -0,0 +1,80 @@
+package com.bradsdeals.clj.cds;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares time-to-first-call of a fresh JVM running {@link FirstCall} with and without a CDS
+ * archive produced by {@link CdsTraining}.  Runs and measures alternate so both see the same
+ * machine conditions, and the median of each is reported.<p>
+ *
+ * Not run as part of the test suite.  Run by <code>mvn -Pcds package</code>, or directly with the
+ * jars the archive was trained with, followed by the test classes, e.g.:
+ * <code>
+ *   java -cp target/ClJ-0.6.8.jar:...:target/test-classes com.bradsdeals.clj.cds.StartupBenchmark target/clj.jsa [runs]
+ * </code>
+ */
+public class StartupBenchmark {
+    private static final int DEFAULT_RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: StartupBenchmark <archive.jsa> [runs]");
+            System.exit(1);
+        }
+        File archive = new File(args[0]);
+        if (!archive.isFile()) {
+            throw new IllegalArgumentException("No CDS archive at " + archive + "; run CdsTraining first");
+        }
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+
+        // One untimed run of each to warm the OS file cache
+        run(null);
+        run(archive);
+
+        List<Long> without = new ArrayList<Long>();
+        List<Long> with = new ArrayList<Long>();
+        for (int i = 0; i < runs; i++) {
+            without.add(run(null));
+            with.add(run(archive));
+        }
+        long medianWithout = median(without);
+        long medianWith = median(with);
+        System.out.println("Time to first ClJ call over " + runs + " runs (median):");
+        System.out.println("  without CDS archive: " + medianWithout + "ms  " + without);
+        System.out.println("  with CDS archive:    " + medianWith + "ms  " + with);
+        System.out.printf("  speedup:             %.2fx%n", (double) medianWithout / medianWith);
+    }
+
+    private static long run(File archive) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+            command.add("-Xshare:on");
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), FirstCall.class.getName()));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String last = null;
+        for (String line = out.readLine(); line != null; line = out.readLine()) {
+            last = line;
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("FirstCall failed: " + last);
+        }
+        return Long.parseLong(last.trim());
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -0,0 +1,101 @@
+package com.bradsdeals.clj.remote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.bradsdeals.clj.ClJLoader;
+import com.bradsdeals.clj.IClJ;
+import com.bradsdeals.clj.PrivateRuntimes;
+
+/**
+ * Measures the round-trip latency and throughput of calls into a {@link RemoteClJ} against the
+ * same calls into an in-process runtime, for a small call, a call returning a hundred Strings and
+ * a call sending ten thousand numbers.  Latency percentiles are per call; throughput is calls
+ * made back to back from one thread.  Both processes poll the channel, so results depend on
+ * having a spare core for the child.<p>
+ *
+ * Not run as part of the test suite.  Run the main method from the test classpath, optionally
+ * passing the number of measured calls, e.g.:
+ * <code>
+ *   java -cp target/classes:target/test-classes:... com.bradsdeals.clj.remote.RemoteCallBenchmark 100000
+ * </code>
+ */
+public class RemoteCallBenchmark {
+    private static final int WARMUP_CALLS = 20000;
+
+    private interface Workload {
+        Object call(IClJ clj);
+        String name();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        final List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            strings.add("item-" + i);
+        }
+        final long[] numbers = new long[10000];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = i;
+        }
+
+        Workload inc = new Workload() {
+            public Object call(IClJ clj) {
+                return clj.invoke("clojure.core/inc", 41L);
+            }
+            public String name() {
+                return "inc";
+            }
+        };
+        Workload vec = new Workload() {
+            public Object call(IClJ clj) {
+                return clj.invoke("clojure.core/vec", strings);
+            }
+            public String name() {
+                return "vec of 100 Strings";
+            }
+        };
+        Workload count = new Workload() {
+            public Object call(IClJ clj) {
+                return clj.invoke("clojure.core/count", numbers);
+            }
+            public String name() {
+                return "count of 10000 longs";
+            }
+        };
+
+        IClJ local = ClJLoader.clj();
+        IClJ remote = ClJLoader.remoteClj(PrivateRuntimes.remoteClasspath());
+        try {
+            for (Workload workload : new Workload[] { inc, vec, count }) {
+                measure(workload, "in-process", local, calls);
+                measure(workload, "remote", remote, calls);
+            }
+        } finally {
+            remote.close();
+        }
+    }
+
+    private static void measure(Workload workload, String runtime, IClJ clj, int calls) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            workload.call(clj);
+        }
+        long[] latencies = new long[calls];
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            long callStart = System.nanoTime();
+            workload.call(clj);
+            latencies[i] = System.nanoTime() - callStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("%-22s %-10s p50 %8.1f us  p99 %8.1f us  p99.9 %8.1f us  %10.0f calls/s%n",
+                workload.name(), runtime, percentile(latencies, 0.5), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), calls / (elapsed / 1e9));
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e3;
+    }
+}
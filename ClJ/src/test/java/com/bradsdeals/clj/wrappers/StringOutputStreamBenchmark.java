@@ -0,0 +1,82 @@
+package com.bradsdeals.clj.wrappers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compares {@link StringOutputStream} with the deprecated {@link StringBufferOutputStream}
+ * when capturing output the way clojure.java.io/copy and *out* write it: a mix of
+ * buffer-sized bulk writes and single bytes.<p>
+ *
+ * Not run as part of the test suite.  Run the main method from the test classpath, e.g.:
+ * <code>
+ *   java -cp target/classes:target/test-classes:... com.bradsdeals.clj.wrappers.StringOutputStreamBenchmark
+ * </code>
+ */
+@SuppressWarnings("deprecation")
+public class StringOutputStreamBenchmark {
+    private static final int OUTPUT_BYTES = 4 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 1024;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private interface SinkFactory {
+        OutputStream create();
+        String name();
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) ('a' + i % 26);
+        }
+
+        SinkFactory legacy = new SinkFactory() {
+            public OutputStream create() {
+                return new StringBufferOutputStream();
+            }
+            public String name() {
+                return "StringBufferOutputStream";
+            }
+        };
+        SinkFactory replacement = new SinkFactory() {
+            public OutputStream create() {
+                return new StringOutputStream();
+            }
+            public String name() {
+                return "StringOutputStream";
+            }
+        };
+
+        for (SinkFactory factory : new SinkFactory[] { legacy, replacement }) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(factory, chunk);
+            }
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long elapsed = run(factory, chunk);
+                best = Math.min(best, elapsed);
+                total += elapsed;
+            }
+            System.out.printf("%-26s best %8.2f ms  mean %8.2f ms  (%d MB/s best)%n",
+                    factory.name(), best / 1e6, total / 1e6 / MEASURED_ROUNDS,
+                    (long) (OUTPUT_BYTES / (best / 1e9) / (1024 * 1024)));
+        }
+    }
+
+    private static long run(SinkFactory factory, byte[] chunk) throws IOException {
+        long start = System.nanoTime();
+        OutputStream sink = factory.create();
+        int written = 0;
+        while (written < OUTPUT_BYTES) {
+            sink.write(chunk, 0, chunk.length);
+            sink.write('\n');
+            written += chunk.length + 1;
+        }
+        if (sink.toString().length() == 0) {
+            throw new IllegalStateException("No output captured");
+        }
+        return System.nanoTime() - start;
+    }
+}